@@ -0,0 +1,97 @@
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Writes a non-string column as fixed-width little-endian values: int64 for INT and
+ * YEAR_MONTH (months since year 0), float64 for DOUBLE
+ */
+public class BinaryColumnWriter implements Closeable {
+    public static final int VALUE_BYTES = 8;
+
+    private final ColumnFileWriter out;
+    private final ColumnType type;
+
+    public BinaryColumnWriter(Path path, ColumnType type, int bufferSize) throws IOException {
+        this(path, type, bufferSize, false);
+    }
+
+    /**
+     * Open a writer that either replaces the file or appends to the values already in it
+     */
+    public BinaryColumnWriter(Path path, ColumnType type, int bufferSize, boolean append) throws IOException {
+        this(new ColumnFileWriter(path, bufferSize, append, false), type);
+    }
+
+    public BinaryColumnWriter(ColumnFileWriter out, ColumnType type) {
+        if (!type.hasBinaryColumn()) {
+            throw new IllegalArgumentException("No binary layout for column type " + type);
+        }
+        this.out = out;
+        this.type = type;
+    }
+
+    public ColumnType getType() {
+        return type;
+    }
+
+    public void writeLong(long value) throws IOException {
+        out.writeLong(value);
+    }
+
+    public void writeDouble(double value) throws IOException {
+        out.writeDouble(value);
+    }
+
+    /**
+     * Write a value whose type is already known from the schema
+     */
+    public void writeValue(String value) throws IOException {
+        switch (type) {
+            case INT:
+                writeLong(Long.parseLong(value));
+                break;
+            case DOUBLE:
+                writeDouble(Double.parseDouble(value));
+                break;
+            default:
+                writeLong(ColumnType.encodeYearMonth(value));
+                break;
+        }
+    }
+
+    /**
+     * Write the tokenizer's current field, parsed straight from its bytes
+     */
+    public void writeField(CSVTokenizer tokenizer, int field) throws IOException {
+        switch (type) {
+            case INT:
+                writeLong(tokenizer.getLong(field));
+                break;
+            case DOUBLE:
+                writeDouble(tokenizer.getDouble(field));
+                break;
+            default:
+                writeLong(tokenizer.getYearMonth(field));
+                break;
+        }
+    }
+
+    /**
+     * Finish the file; closing without committing discards what was written, see ColumnFileWriter
+     */
+    public void commit() throws IOException {
+        out.commit();
+    }
+
+    /**
+     * Undo the writer; see ColumnFileWriter.rollback()
+     */
+    public void rollback() throws IOException {
+        out.rollback();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,157 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Unpacks runs of bit-packed codes, the big-endian bit strings of a .cmp file, into an int[]
+ * in one call. The work is done by a Kernel: the generated UnrolledBitUnpacker by default, which
+ * measures faster than the Vector API one in vector/VectorBitUnpacker.java; that one can be
+ * chosen with -Dunpack.kernel=vector once it has been compiled onto the class path and
+ * jdk.incubator.vector is enabled. The scalar kernel below is the reference and the fallback
+ * when the vector one cannot be loaded; -Dunpack.kernel=scalar selects it outright.
+ *
+ * Run this class to see which kernel is in use and check that it unpacks every width from 1
+ * to 32 exactly like the scalar one. The check is not repeated on every JVM start.
+ */
+public class BitUnpacker {
+    public static final int MAX_BITS = 32;
+
+    /**
+     * One way of unpacking codes
+     */
+    public interface Kernel {
+        /**
+         * Unpack count codes of bitsPerValue bits into codes[0, count), the first code starting
+         * at the top bit of the byte at byteOffset
+         */
+        void unpack(ByteBuffer data, int byteOffset, int bitsPerValue, int[] codes, int count);
+    }
+
+    public static final Kernel SCALAR = BitUnpacker::unpackScalar;
+    private static final Kernel KERNEL = selectKernel();
+
+    public static int[] unpack(ByteBuffer data, int byteOffset, int bitsPerValue, int count) {
+        int[] codes = new int[count];
+        unpack(data, byteOffset, bitsPerValue, codes, count);
+        return codes;
+    }
+
+    public static void unpack(ByteBuffer data, int byteOffset, int bitsPerValue, int[] codes, int count) {
+        KERNEL.unpack(data, byteOffset, bitsPerValue, codes, count);
+    }
+
+    /**
+     * Bytes are shifted into the low end of a 64-bit window and each code is taken from the
+     * top of what has not been used yet, so no code needs a loop over its bits
+     */
+    static void unpackScalar(ByteBuffer data, int byteOffset, int bitsPerValue, int[] codes, int count) {
+        unpackScalar(data, byteOffset, bitsPerValue, codes, 0, count);
+    }
+
+    /**
+     * Scalar unpacking into codes[from, from + count), for the tails the other kernels leave
+     */
+    static void unpackScalar(ByteBuffer data, int byteOffset, int bitsPerValue, int[] codes, int from, int count) {
+        long mask = (1L << bitsPerValue) - 1;
+        long window = 0;
+        int windowBits = 0;
+        int position = byteOffset;
+        for (int i = from; i < from + count; i++) {
+            while (windowBits < bitsPerValue) {
+                window = (window << 8) | (data.get(position++) & 0xFF);
+                windowBits += 8;
+            }
+            windowBits -= bitsPerValue;
+            codes[i] = (int) ((window >>> windowBits) & mask);
+        }
+    }
+
+    private static Kernel selectKernel() {
+        String name = System.getProperty("unpack.kernel", "unrolled");
+        if (name.equals("scalar")) {
+            return SCALAR;
+        }
+        Kernel kernel = new UnrolledBitUnpacker();
+        if (name.equals("vector")) {
+            try {
+                kernel = (Kernel) Class.forName("VectorBitUnpacker").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+                // Not compiled, or the incubator module is not enabled in this JVM
+                System.err.println("Vector unpack kernel unavailable (" + e + "), using the unrolled one");
+            }
+        }
+        return kernel;
+    }
+
+    /**
+     * Widths from 1 to MAX_BITS at which a kernel unpacks differently from the scalar kernel, over
+     * random codes at several counts (around the 64-code cycle of a word) and byte offsets
+     */
+    public static List<Integer> mismatchedWidths(Kernel kernel) {
+        Random random = new Random(42);
+        int[] counts = {0, 1, 7, 63, 64, 65, 800, 1001};
+        List<Integer> mismatched = new ArrayList<>();
+        for (int bits = 1; bits <= MAX_BITS; bits++) {
+            for (int count : counts) {
+                int[] codes = new int[count];
+                for (int i = 0; i < count; i++) {
+                    codes[i] = (int) (random.nextLong() & ((1L << bits) - 1));
+                }
+                boolean same = true;
+                for (int byteOffset : new int[] {0, 3, 8}) {
+                    ByteBuffer data = pack(codes, bits, byteOffset);
+                    int[] expected = new int[count];
+                    int[] actual = new int[count];
+                    SCALAR.unpack(data, byteOffset, bits, expected, count);
+                    kernel.unpack(data, byteOffset, bits, actual, count);
+                    same &= Arrays.equals(expected, codes) && Arrays.equals(actual, codes);
+                }
+                if (!same) {
+                    mismatched.add(bits);
+                    break;
+                }
+            }
+        }
+        return mismatched;
+    }
+
+    /**
+     * Reference packing, one bit at a time, behind byteOffset bytes of padding
+     */
+    static ByteBuffer pack(int[] codes, int bitsPerValue, int byteOffset) {
+        byte[] bytes = new byte[byteOffset + (int) (((long) codes.length * bitsPerValue + 7) / 8)];
+        long bit = (long) byteOffset * 8;
+        for (int code : codes) {
+            for (int b = bitsPerValue - 1; b >= 0; b--, bit++) {
+                if (((code >>> b) & 1) != 0) {
+                    bytes[(int) (bit / 8)] |= (byte) (0x80 >>> (bit % 8));
+                }
+            }
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("Unpack kernel: " + (KERNEL != SCALAR ? KERNEL.getClass().getName() : "scalar"));
+        List<Integer> mismatched = mismatchedWidths(KERNEL);
+        System.out.println(mismatched.isEmpty()
+                ? "Identical to the scalar kernel for every width from 1 to " + MAX_BITS
+                : "Differs from the scalar kernel at widths " + mismatched);
+
+        // Rough throughput on one column-sized run of codes per width
+        int count = 1 << 20;
+        int[] codes = new int[count];
+        Kernel[] kernels = KERNEL != SCALAR ? new Kernel[] {SCALAR, KERNEL} : new Kernel[] {SCALAR};
+        for (int bits : new int[] {3, 5, 9, 13, 17, 32}) {
+            ByteBuffer data = pack(codes, bits, 0);
+            for (Kernel kernel : kernels) {
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < 20; run++) {
+                    long start = System.nanoTime();
+                    kernel.unpack(data, 0, bits, codes, count);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                System.out.println(String.format("%2d bits, %-20s %8.3f ms", bits, kernel == SCALAR ? "scalar" : KERNEL.getClass().getName(), best / 1e6));
+            }
+        }
+    }
+}
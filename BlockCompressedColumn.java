@@ -0,0 +1,378 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Text column stored as blocks of values, each block its newline-separated values compressed
+ * with Deflater on its own. An offset index in front of the blocks lets a reader inflate only
+ * the blocks holding the rows it needs, and the smallest and largest value of every block let
+ * a filter skip the blocks that cannot match without inflating them. The .blk file holds
+ * big-endian ints like the .cmp layouts:
+ *
+ *   int magic, int recordCount, int blockRows, int blockCount,
+ *   long[blockCount + 1] block offsets (the last one is the end of the blocks),
+ *   per block: int uncompressed length, deflated bytes,
+ *   per block: int length, min value bytes, int length, max value bytes (UTF-8)
+ *
+ * Files written before the block ranges were kept end after the blocks; they are read the
+ * same way, with every block taken to possibly hold any value.
+ */
+public class BlockCompressedColumn {
+    public static final String FILE_SUFFIX = ".blk";
+    public static final int BLOCK_ROWS = 4096;
+    private static final int MAGIC = 0x424C4B5A; // "BLKZ"
+    private static final int HEADER_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int recordCount;
+    private final int blockRows;
+    private final int blockCount;
+    // Smallest and largest value of each block, null for a file without block ranges
+    private final String[] blockMin;
+    private final String[] blockMax;
+
+    // Last block inflated by getValue/getValues, so rows in ascending order inflate each block once
+    private List<String> blockValues;
+    private int decodedBlock = -1;
+
+    public BlockCompressedColumn(ByteBuffer buffer) throws IOException {
+        if (!isBlockCompressed(buffer)) {
+            throw new IOException("Column data is not block-compressed");
+        }
+        this.buffer = buffer;
+        this.recordCount = buffer.getInt(4);
+        this.blockRows = buffer.getInt(8);
+        this.blockCount = buffer.getInt(12);
+
+        int position = (int) blockOffset(blockCount);
+        if (position < buffer.limit()) {
+            blockMin = new String[blockCount];
+            blockMax = new String[blockCount];
+            for (int block = 0; block < blockCount; block++) {
+                blockMin[block] = readString(position);
+                position += Integer.BYTES + buffer.getInt(position);
+                blockMax[block] = readString(position);
+                position += Integer.BYTES + buffer.getInt(position);
+            }
+        } else {
+            blockMin = null;
+            blockMax = null;
+        }
+    }
+
+    private String readString(int position) {
+        byte[] bytes = new byte[buffer.getInt(position)];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position + Integer.BYTES);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Whether column data is block-compressed text rather than text lines
+     */
+    public static boolean isBlockCompressed(ByteBuffer data) {
+        return data.limit() >= HEADER_BYTES && data.getInt(0) == MAGIC;
+    }
+
+    /**
+     * Compress the values into blocks laid out like the file
+     */
+    public static byte[] encode(List<String> values) throws IOException {
+        return encode(values, BLOCK_ROWS);
+    }
+
+    public static byte[] encode(List<String> values, int blockRows) throws IOException {
+        int blockCount = (values.size() + blockRows - 1) / blockRows;
+        List<byte[]> blocks = new ArrayList<>(blockCount);
+        List<String[]> ranges = new ArrayList<>(blockCount);
+        Deflater deflater = new Deflater();
+        try {
+            for (int from = 0; from < values.size(); from += blockRows) {
+                List<String> blockValues = values.subList(from, Math.min(from + blockRows, values.size()));
+                blocks.add(compressBlock(deflater, blockValues));
+                ranges.add(valueRange(blockValues));
+            }
+        } finally {
+            deflater.end();
+        }
+        return layout(values.size(), blockRows, blocks, ranges);
+    }
+
+    /**
+     * The column with values added at the end. Full blocks are copied as they are;
+     * only the last, partly filled block is inflated and compressed again with the new values.
+     */
+    public static byte[] append(ByteBuffer data, List<String> newValues) throws IOException {
+        BlockCompressedColumn column = new BlockCompressedColumn(data);
+        int fullBlocks = column.recordCount / column.blockRows;
+        List<byte[]> blocks = new ArrayList<>();
+        List<String[]> ranges = new ArrayList<>();
+        for (int block = 0; block < fullBlocks; block++) {
+            blocks.add(column.blockBytes(block));
+            // A file from before the block ranges has its full blocks inflated once to find them
+            ranges.add(column.blockMin != null
+                    ? new String[] {column.blockMin[block], column.blockMax[block]}
+                    : valueRange(column.decodeBlock(block)));
+        }
+
+        List<String> tail = new ArrayList<>();
+        if (fullBlocks < column.blockCount) {
+            tail.addAll(column.decodeBlock(fullBlocks));
+        }
+        tail.addAll(newValues);
+        Deflater deflater = new Deflater();
+        try {
+            for (int from = 0; from < tail.size(); from += column.blockRows) {
+                List<String> blockValues = tail.subList(from, Math.min(from + column.blockRows, tail.size()));
+                blocks.add(compressBlock(deflater, blockValues));
+                ranges.add(valueRange(blockValues));
+            }
+        } finally {
+            deflater.end();
+        }
+        return layout(column.recordCount + newValues.size(), column.blockRows, blocks, ranges);
+    }
+
+    /**
+     * Smallest and largest of a block's values, in String order
+     */
+    private static String[] valueRange(List<String> values) {
+        String min = values.get(0);
+        String max = min;
+        for (String value : values) {
+            if (value.compareTo(min) < 0) {
+                min = value;
+            } else if (value.compareTo(max) > 0) {
+                max = value;
+            }
+        }
+        return new String[] {min, max};
+    }
+
+    private static byte[] compressBlock(Deflater deflater, List<String> values) {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            text.write(bytes, 0, bytes.length);
+            text.write('\n');
+        }
+        byte[] input = text.toByteArray();
+
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream block = new ByteArrayOutputStream(input.length / 4 + 16);
+        block.write(input.length >>> 24);
+        block.write(input.length >>> 16);
+        block.write(input.length >>> 8);
+        block.write(input.length);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(chunk);
+            block.write(chunk, 0, length);
+        }
+        return block.toByteArray();
+    }
+
+    private static byte[] layout(int recordCount, int blockRows, List<byte[]> blocks, List<String[]> ranges) throws IOException {
+        long size = HEADER_BYTES + (long) (blocks.size() + 1) * Long.BYTES;
+        for (byte[] block : blocks) {
+            size += block.length;
+        }
+        List<byte[]> rangeBytes = new ArrayList<>(ranges.size() * 2);
+        for (String[] range : ranges) {
+            for (String value : range) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                rangeBytes.add(bytes);
+                size += Integer.BYTES + bytes.length;
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Block-compressed column too large: " + size + " bytes");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(recordCount).putInt(blockRows).putInt(blocks.size());
+        long offset = HEADER_BYTES + (long) (blocks.size() + 1) * Long.BYTES;
+        for (byte[] block : blocks) {
+            out.putLong(offset);
+            offset += block.length;
+        }
+        out.putLong(offset);
+        for (byte[] block : blocks) {
+            out.put(block);
+        }
+        for (byte[] bytes : rangeBytes) {
+            out.putInt(bytes.length).put(bytes);
+        }
+        return out.array();
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Whether a block may hold a value from lower to upper, both inclusive (null for no bound).
+     * Always true for a file without block ranges.
+     */
+    public boolean mayContain(int block, String lower, String upper) {
+        if (blockMin == null) {
+            return true;
+        }
+        return (lower == null || blockMax[block].compareTo(lower) >= 0)
+                && (upper == null || blockMin[block].compareTo(upper) <= 0);
+    }
+
+    private long blockOffset(int block) {
+        return buffer.getLong(HEADER_BYTES + block * Long.BYTES);
+    }
+
+    private byte[] blockBytes(int block) {
+        int start = (int) blockOffset(block);
+        byte[] bytes = new byte[(int) (blockOffset(block + 1) - start)];
+        ByteBuffer source = buffer.duplicate();
+        source.position(start);
+        source.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Inflate one block on its own and split it into its values
+     */
+    public List<String> decodeBlock(int block) throws IOException {
+        byte[] compressed = blockBytes(block);
+        int length = ByteBuffer.wrap(compressed).getInt();
+        byte[] text = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, 4, compressed.length - 4);
+            int read = 0;
+            while (read < length) {
+                int inflated = inflater.inflate(text, read, length - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Block " + block + " is truncated");
+                }
+                read += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block " + block + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        int count = Math.min(blockRows, recordCount - block * blockRows);
+        List<String> values = new ArrayList<>(count);
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (text[i] == '\n') {
+                values.add(new String(text, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * One value, inflating only the block that holds it
+     */
+    public String getValue(int row) throws IOException {
+        if (row < 0 || row >= recordCount) {
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
+        }
+        int block = row / blockRows;
+        if (block != decodedBlock) {
+            blockValues = decodeBlock(block);
+            decodedBlock = block;
+        }
+        return blockValues.get(row - block * blockRows);
+    }
+
+    /**
+     * Values at the given rows; ascending rows inflate each block they fall in once
+     */
+    public List<String> getValues(int[] rows) throws IOException {
+        List<String> values = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            values.add(getValue(row));
+        }
+        return values;
+    }
+
+    /**
+     * All values of the column
+     */
+    public List<String> decode() throws IOException {
+        List<String> values = new ArrayList<>(recordCount);
+        for (int block = 0; block < blockCount; block++) {
+            values.addAll(decodeBlock(block));
+        }
+        return values;
+    }
+
+    /**
+     * Checks that values come back unchanged, whole, by row and after appends, and that the
+     * block ranges skip only blocks that hold no value in range
+     */
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(11);
+        List<String> failures = new ArrayList<>();
+        for (int blockRows : new int[] {1, 7, 64, BLOCK_ROWS}) {
+            for (int count : new int[] {0, 1, blockRows, blockRows + 1, 3 * blockRows + 5}) {
+                List<String> values = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    // Short values from a small alphabet, with repeats, empty strings and non-ASCII text
+                    values.add(random.nextInt(10) == 0 ? "" : Integer.toString(random.nextInt(500), 36) + (random.nextInt(20) == 0 ? "\u00e9" : ""));
+                }
+                String name = count + " values in blocks of " + blockRows;
+                byte[] data = encode(values, blockRows);
+                BlockCompressedColumn column = new BlockCompressedColumn(ByteBuffer.wrap(data));
+                if (!column.decode().equals(values)) {
+                    failures.add(name + ": decode");
+                }
+                int[] rows = random.ints(Math.min(count, 50), 0, Math.max(1, count)).sorted().toArray();
+                List<String> expected = new ArrayList<>();
+                for (int row : rows) {
+                    expected.add(values.get(row));
+                }
+                if (count > 0 && !column.getValues(rows).equals(expected)) {
+                    failures.add(name + ": getValues");
+                }
+
+                String lower = Integer.toString(random.nextInt(500), 36);
+                String upper = lower + "z";
+                for (int block = 0; block < column.getBlockCount(); block++) {
+                    boolean holds = values.subList(block * blockRows, Math.min(count, (block + 1) * blockRows)).stream()
+                            .anyMatch(value -> value.compareTo(lower) >= 0 && value.compareTo(upper) <= 0);
+                    if (holds && !column.mayContain(block, lower, upper)) {
+                        failures.add(name + ": block " + block + " skipped");
+                    }
+                }
+
+                // Appending to a file with and without block ranges, as files written before them
+                int split = count / 3;
+                byte[] first = encode(values.subList(0, split), blockRows);
+                ByteBuffer withoutRanges = ByteBuffer.wrap(first, 0, (int) new BlockCompressedColumn(ByteBuffer.wrap(first)).blockOffset(
+                        (split + blockRows - 1) / blockRows)).slice();
+                for (ByteBuffer base : new ByteBuffer[] {ByteBuffer.wrap(first), withoutRanges}) {
+                    if (!Arrays.equals(append(base, values.subList(split, count)), data)) {
+                        failures.add(name + ": append" + (base == withoutRanges ? " without block ranges" : ""));
+                    }
+                }
+            }
+        }
+        System.out.println(failures.isEmpty() ? "Round trips, appends and block ranges all match" : "Mismatches: " + failures);
+    }
+}
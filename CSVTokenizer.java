@@ -0,0 +1,410 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Byte-level CSV tokenizer over a memory-mapped file.
+ * Field boundaries are found in the raw bytes, so no line String or split array is created.
+ * Quoted fields may contain commas, line breaks and doubled quotes ("").
+ * Numeric fields can be parsed straight into primitives without building a String.
+ */
+public class CSVTokenizer implements Closeable {
+    // Size of the mapped window; records crossing the end of a window are re-mapped
+    private static final long WINDOW_BYTES = 256L * 1024 * 1024;
+    // Powers of ten that are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long rangeEnd;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long nextRecordStart;
+
+    // Field boundaries of the current record, relative to the window
+    private int fieldCount;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private boolean[] fieldEscaped = new boolean[16];
+    private int recordStart;
+    private int recordEnd;
+    private byte[] scratch = new byte[256];
+
+    public CSVTokenizer(Path csvPath) throws IOException {
+        this(FileChannel.open(csvPath, StandardOpenOption.READ), 0, -1);
+    }
+
+    /**
+     * Tokenize the byte range [start, end) of the channel; end = -1 means up to the end of the file.
+     * The channel is closed together with the tokenizer.
+     */
+    public CSVTokenizer(FileChannel channel, long start, long end) throws IOException {
+        this.channel = channel;
+        this.rangeEnd = end < 0 ? channel.size() : end;
+        this.nextRecordStart = start;
+        mapWindow(start);
+    }
+
+    public static CSVTokenizer forRange(Path csvPath, long start, long end) throws IOException {
+        return new CSVTokenizer(FileChannel.open(csvPath, StandardOpenOption.READ), start, end);
+    }
+
+    private void mapWindow(long start) throws IOException {
+        long size = Math.min(WINDOW_BYTES, rangeEnd - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+    }
+
+    /**
+     * Advance to the next record. Returns false once the range is exhausted.
+     */
+    public boolean nextRecord() throws IOException {
+        if (nextRecordStart >= rangeEnd) {
+            return false;
+        }
+
+        while (true) {
+            if (nextRecordStart - windowStart >= window.limit()) {
+                mapWindow(nextRecordStart);
+            }
+            if (scanRecord((int) (nextRecordStart - windowStart))) {
+                return true;
+            }
+            // The record runs past the end of the mapped window
+            if (windowStart + window.limit() >= rangeEnd) {
+                return true; // last record without trailing newline
+            }
+            if (nextRecordStart == windowStart) {
+                throw new IOException("CSV record larger than " + WINDOW_BYTES + " bytes at offset " + nextRecordStart);
+            }
+            mapWindow(nextRecordStart);
+        }
+    }
+
+    /**
+     * Locate the fields of the record starting at pos. Returns false if the window ended first.
+     */
+    private boolean scanRecord(int pos) {
+        int limit = window.limit();
+        fieldCount = 0;
+        recordStart = pos;
+
+        while (true) {
+            ensureFieldCapacity();
+            boolean quoted = pos < limit && window.get(pos) == '"';
+            boolean escaped = false;
+            int start;
+            int end;
+
+            if (quoted) {
+                start = ++pos;
+                while (true) {
+                    if (pos >= limit) {
+                        return finishAtWindowEnd(start, pos, true, escaped);
+                    }
+                    byte b = window.get(pos);
+                    if (b == '"') {
+                        if (pos + 1 < limit && window.get(pos + 1) == '"') {
+                            escaped = true;
+                            pos += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    pos++;
+                }
+                end = pos++;
+                // Skip anything between the closing quote and the delimiter
+                while (pos < limit && window.get(pos) != ',' && window.get(pos) != '\n') {
+                    pos++;
+                }
+            } else {
+                start = pos;
+                while (pos < limit && window.get(pos) != ',' && window.get(pos) != '\n') {
+                    pos++;
+                }
+                end = pos;
+            }
+
+            if (pos >= limit) {
+                return finishAtWindowEnd(start, end, quoted, escaped);
+            }
+
+            byte delimiter = window.get(pos);
+            if (delimiter == '\n' && !quoted && end > start && window.get(end - 1) == '\r') {
+                end--;
+            }
+            addField(start, end, escaped);
+            pos++;
+
+            if (delimiter == '\n') {
+                recordEnd = pos - 1;
+                nextRecordStart = windowStart + pos;
+                return true;
+            }
+        }
+    }
+
+    private boolean finishAtWindowEnd(int start, int end, boolean quoted, boolean escaped) {
+        if (windowStart + window.limit() < rangeEnd) {
+            return false;
+        }
+        if (!quoted && end > start && window.get(end - 1) == '\r') {
+            end--;
+        }
+        addField(start, end, escaped);
+        recordEnd = window.limit();
+        nextRecordStart = rangeEnd;
+        return false;
+    }
+
+    private void addField(int start, int end, boolean escaped) {
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldEscaped[fieldCount] = escaped;
+        fieldCount++;
+    }
+
+    private void ensureFieldCapacity() {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = java.util.Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = java.util.Arrays.copyOf(fieldEnd, fieldCount * 2);
+            fieldEscaped = java.util.Arrays.copyOf(fieldEscaped, fieldCount * 2);
+        }
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public int getFieldLength(int field) {
+        return fieldEnd[field] - fieldStart[field];
+    }
+
+    /**
+     * Decode a field as a String, unescaping doubled quotes
+     */
+    public String getString(int field) {
+        byte[] bytes = new byte[getFieldLength(field)];
+        window.get(fieldStart[field], bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        return fieldEscaped[field] ? value.replace("\"\"", "\"") : value;
+    }
+
+    /**
+     * Copy the raw bytes of a field to the output stream without decoding them.
+     * Returns the number of bytes written.
+     */
+    public int copyField(int field, OutputStream out) throws IOException {
+        if (fieldEscaped[field]) {
+            byte[] unescaped = getString(field).getBytes(StandardCharsets.UTF_8);
+            out.write(unescaped);
+            return unescaped.length;
+        }
+        int length = getFieldLength(field);
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        window.get(fieldStart[field], scratch, 0, length);
+        out.write(scratch, 0, length);
+        return length;
+    }
+
+    /**
+     * Copy the raw bytes of the current record, without its line terminator
+     */
+    public void copyRecord(OutputStream out) throws IOException {
+        int length = Math.max(0, recordEnd - recordStart);
+        if (length > 0 && window.get(recordStart + length - 1) == '\r') {
+            length--;
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        window.get(recordStart, scratch, 0, length);
+        out.write(scratch, 0, length);
+    }
+
+    /**
+     * The current record as text, for warnings
+     */
+    public String getRecordString() {
+        byte[] bytes = new byte[Math.max(0, recordEnd - recordStart)];
+        window.get(recordStart, bytes);
+        return new String(bytes, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Parse an integer field directly from its bytes
+     */
+    public long getLong(int field) {
+        int pos = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = false;
+
+        if (pos < end && (window.get(pos) == '-' || window.get(pos) == '+')) {
+            negative = window.get(pos) == '-';
+            pos++;
+        }
+        if (pos >= end) {
+            throw new NumberFormatException("Not an integer: " + getString(field));
+        }
+
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = window.get(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not an integer: " + getString(field));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a decimal field directly from its bytes. Plain decimals with up to 15 significant
+     * digits are exact; anything else (exponents, long mantissas) goes through Double.parseDouble.
+     */
+    public double getDouble(int field) {
+        int pos = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = false;
+
+        if (pos < end && (window.get(pos) == '-' || window.get(pos) == '+')) {
+            negative = window.get(pos) == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+
+        for (; pos < end; pos++) {
+            byte b = window.get(pos);
+            if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else {
+                break;
+            }
+        }
+
+        if (pos == end && digits > 0 && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(getString(field));
+    }
+
+    /**
+     * Check whether a field is an integer without throwing
+     */
+    public boolean isLong(int field) {
+        int pos = fieldStart[field];
+        int end = fieldEnd[field];
+        if (pos < end && (window.get(pos) == '-' || window.get(pos) == '+')) {
+            pos++;
+        }
+        // Up to 18 digits always fit in a long
+        if (pos >= end || end - pos > 18) {
+            return false;
+        }
+        for (; pos < end; pos++) {
+            byte b = window.get(pos);
+            if (b < '0' || b > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a field is a zero-padded "yyyy-MM" year-month
+     */
+    public boolean isYearMonth(int field) {
+        int pos = fieldStart[field];
+        if (getFieldLength(field) != 7 || window.get(pos + 4) != '-') {
+            return false;
+        }
+        for (int i = 0; i < 7; i++) {
+            byte b = window.get(pos + i);
+            if (i != 4 && (b < '0' || b > '9')) {
+                return false;
+            }
+        }
+        int month = (window.get(pos + 5) - '0') * 10 + (window.get(pos + 6) - '0');
+        return month >= 1 && month <= 12;
+    }
+
+    /**
+     * Encode a "yyyy-MM" field as the number of months since year 0
+     */
+    public long getYearMonth(int field) {
+        int pos = fieldStart[field];
+        int year = 0;
+        for (int i = 0; i < 4; i++) {
+            year = year * 10 + (window.get(pos + i) - '0');
+        }
+        int month = (window.get(pos + 5) - '0') * 10 + (window.get(pos + 6) - '0');
+        return year * 12L + (month - 1);
+    }
+
+    /**
+     * Check whether a field is a decimal number (digits, optional point, optional exponent) without throwing
+     */
+    public boolean isDouble(int field) {
+        int pos = fieldStart[field];
+        int end = fieldEnd[field];
+        if (pos < end && (window.get(pos) == '-' || window.get(pos) == '+')) {
+            pos++;
+        }
+
+        int digits = 0;
+        boolean seenPoint = false;
+        for (; pos < end; pos++) {
+            byte b = window.get(pos);
+            if (b >= '0' && b <= '9') {
+                digits++;
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (pos < end && (window.get(pos) == 'e' || window.get(pos) == 'E')) {
+            pos++;
+            if (pos < end && (window.get(pos) == '-' || window.get(pos) == '+')) {
+                pos++;
+            }
+            int exponentDigits = 0;
+            for (; pos < end && window.get(pos) >= '0' && window.get(pos) <= '9'; pos++) {
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return pos == end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
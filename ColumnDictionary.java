@@ -0,0 +1,148 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Memory-mapped dictionary of a compressed column, stored as a binary .dict file.
+ * Codes are the positions of the values in sorted order, so a code maps to its value
+ * through the offsets table and a value maps to its code by binary search, both straight
+ * on the mapped bytes. All integers are little-endian:
+ *
+ *   int magic, int bitsPerValue, int recordCount, int valueCount,
+ *   int[valueCount + 1] offsets into the value bytes, UTF-8 value bytes in code order
+ */
+public class ColumnDictionary {
+    public static final String FILE_SUFFIX = ".dict";
+    private static final int MAGIC = 0x43444943; // "CDIC"
+    private static final int HEADER_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final Comparator<String> order;
+    private final int bitsPerValue;
+    private final int recordCount;
+    private final int valueCount;
+    private final int valuesStart;
+
+    private ColumnDictionary(ByteBuffer buffer, Comparator<String> order) throws IOException {
+        this.buffer = buffer;
+        this.order = order;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary dictionary file");
+        }
+        this.bitsPerValue = buffer.getInt(4);
+        this.recordCount = buffer.getInt(8);
+        this.valueCount = buffer.getInt(12);
+        this.valuesStart = HEADER_BYTES + (valueCount + 1) * Integer.BYTES;
+    }
+
+    public static Path path(String dataDirectory, String columnName) {
+        return Paths.get(dataDirectory, columnName + FILE_SUFFIX);
+    }
+
+    /**
+     * Map a dictionary file whose values were sorted with the given order
+     */
+    public static ColumnDictionary open(Path path, Comparator<String> order) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ColumnDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), order);
+        }
+    }
+
+    /**
+     * Read a dictionary from bytes that are already mapped, such as a slice of a segment file
+     */
+    public static ColumnDictionary wrap(ByteBuffer buffer, Comparator<String> order) throws IOException {
+        return new ColumnDictionary(buffer, order);
+    }
+
+    /**
+     * Write the values, already in code order; the caller commits the file
+     */
+    public static void write(ColumnFileWriter out, List<String> valuesByCode, int bitsPerValue, int recordCount) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(valuesByCode.size());
+        for (String value : valuesByCode) {
+            encoded.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(bitsPerValue);
+        out.writeInt(recordCount);
+        out.writeInt(encoded.size());
+        int offset = 0;
+        out.writeInt(offset);
+        for (byte[] bytes : encoded) {
+            offset += bytes.length;
+            out.writeInt(offset);
+        }
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+    }
+
+    public int getBitsPerValue() {
+        return bitsPerValue;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int size() {
+        return valueCount;
+    }
+
+    public String getValue(int code) {
+        int start = buffer.getInt(HEADER_BYTES + code * Integer.BYTES);
+        int end = buffer.getInt(HEADER_BYTES + (code + 1) * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(valuesStart + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public double getDouble(int code) {
+        return Double.parseDouble(getValue(code));
+    }
+
+    /**
+     * Code of a value, or -1 if the column never holds it
+     */
+    public int getCode(String value) {
+        int code = lowerBound(value);
+        return code < valueCount && order.compare(getValue(code), value) == 0 ? code : -1;
+    }
+
+    /**
+     * Smallest code whose value sorts at or after the given one, or size() if there is none
+     */
+    public int lowerBound(String value) {
+        int low = 0;
+        int high = valueCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (order.compare(getValue(middle), value) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * All values in code order
+     */
+    public List<String> getValues() {
+        List<String> values = new ArrayList<>(valueCount);
+        for (int code = 0; code < valueCount; code++) {
+            values.add(getValue(code));
+        }
+        return values;
+    }
+}
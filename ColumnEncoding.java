@@ -0,0 +1,35 @@
+/**
+ * How a column's values are laid out in its data file. Dictionary-compressed columns lay out
+ * their codes in a .cmp file; integer columns without a dictionary can pack the values themselves,
+ * and text columns without one can compress them in blocks.
+ */
+public enum ColumnEncoding {
+    // Values as they are: fixed-width binary for numbers and year-months, text lines for strings
+    PLAIN,
+    // Every code packed into bitsPerValue bits, see CompressedColumnStore.BitOutputStream
+    BIT_PACKED,
+    // One (code, start row) pair per run of equal codes, see RunLengthColumn
+    RUN_LENGTH,
+    // Codes in 64-bit words, none split across words, blocks starting on a word, see WordPackedColumn
+    WORD_PACKED,
+    // Per-block minimum plus bit-packed offsets from it, see PackedNumericColumn
+    FRAME_OF_REFERENCE,
+    // Per-block first value plus bit-packed differences between neighbours, see PackedNumericColumn
+    DELTA,
+    // Blocks of text lines each compressed with Deflater, see BlockCompressedColumn
+    BLOCK_COMPRESSED;
+
+    /**
+     * Whether this encoding stores the values of an integer column rather than dictionary codes
+     */
+    public boolean isNumeric() {
+        return this == FRAME_OF_REFERENCE || this == DELTA;
+    }
+
+    /**
+     * Whether this encoding stores dictionary codes, with the values in a .dict file
+     */
+    public boolean usesDictionary() {
+        return this == BIT_PACKED || this == RUN_LENGTH || this == WORD_PACKED;
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Writes a column file through a FileChannel, filling a large direct buffer and writing it
+ * in big blocks. A new file is written to a temporary file next to the target and renamed
+ * over it by commit(), so readers never see a half-written column. In append mode the
+ * bytes go straight to the end of the existing file instead, and rollback() cuts the file
+ * back to the length it had when the writer was opened. A writer told to keep the previous
+ * file can be rolled back after commit() as well, until it is closed.
+ *
+ * Closing after writing without committing is an error: the bytes are discarded, as by
+ * rollback(), and close() throws, so no caller loses rows without noticing.
+ */
+public class ColumnFileWriter extends OutputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PREVIOUS_SUFFIX = ".prev";
+
+    private final Path target;
+    private final Path writePath;
+    private final boolean append;
+    private final boolean sync;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    // Length of the file before an append, to cut it back to
+    private final long startSize;
+    private boolean written;
+    private boolean committed;
+    private boolean closed;
+    // Whether commit() keeps the replaced file for rollback(), and where (null if there was none)
+    private boolean keepPrevious;
+    private Path previousPath;
+
+    public ColumnFileWriter(Path target) throws IOException {
+        this(target, DEFAULT_BUFFER_SIZE, false, false);
+    }
+
+    /**
+     * @param append add to the end of the existing file instead of replacing it
+     * @param sync   force the data to disk before the file is committed
+     */
+    public ColumnFileWriter(Path target, int bufferSize, boolean append, boolean sync) throws IOException {
+        this.target = target;
+        this.append = append;
+        this.sync = sync;
+        this.writePath = append ? target : target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        this.channel = append
+                ? FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(writePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.startSize = append ? channel.size() : 0;
+        // Fixed-width values are little-endian, see BinaryColumnWriter
+        this.buffer = ByteBuffer.allocateDirect(Math.max(16, bufferSize)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Keep the file a new file replaces until close(), so that rollback() can put it back even
+     * after commit(). Used when several column files have to change together.
+     */
+    public void setKeepPrevious(boolean keepPrevious) {
+        this.keepPrevious = keepPrevious;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        written = true;
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        written = true;
+        if (length > buffer.remaining()) {
+            flush();
+            if (length > buffer.capacity()) {
+                // Too large to be worth copying into the buffer
+                writeFully(ByteBuffer.wrap(bytes, offset, length));
+                return;
+            }
+        }
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Write the remaining bytes of a buffer, e.g. a mapped range of an existing column file
+     */
+    public void write(ByteBuffer source) throws IOException {
+        written = true;
+        flush();
+        writeFully(source);
+    }
+
+    public void writeInt(int value) throws IOException {
+        written = true;
+        if (buffer.remaining() < Integer.BYTES) {
+            flush();
+        }
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        written = true;
+        if (buffer.remaining() < Long.BYTES) {
+            flush();
+        }
+        buffer.putLong(value);
+    }
+
+    public void writeDouble(double value) throws IOException {
+        written = true;
+        if (buffer.remaining() < Double.BYTES) {
+            flush();
+        }
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Write the buffered bytes to the channel (without forcing them to disk)
+     */
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    /**
+     * Flush, optionally fsync, and move the finished file into place
+     */
+    public void commit() throws IOException {
+        if (closed) {
+            return;
+        }
+        flush();
+        if (sync) {
+            channel.force(true);
+        }
+        channel.close();
+        closed = true;
+
+        if (!append) {
+            if (keepPrevious && Files.exists(target)) {
+                Path previous = target.resolveSibling(target.getFileName() + PREVIOUS_SUFFIX);
+                Files.deleteIfExists(previous);
+                try {
+                    Files.createLink(previous, target);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    Files.copy(target, previous);
+                }
+                previousPath = previous;
+            }
+            moveIntoPlace(writePath, target);
+        }
+        committed = true;
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Undo the writer, before or after commit(): a new file that is not yet committed is
+     * discarded, and an append is cut back to the file's length when the writer was opened.
+     * A committed new file is only undone when the previous file was kept: it is put back, or
+     * the new file deleted when there was none.
+     */
+    public void rollback() throws IOException {
+        if (!closed) {
+            closed = true;
+            channel.close();
+        }
+        if (!append) {
+            if (!committed) {
+                Files.deleteIfExists(writePath);
+            } else if (previousPath != null) {
+                moveIntoPlace(previousPath, target);
+                previousPath = null;
+            } else if (keepPrevious) {
+                Files.deleteIfExists(target);
+            }
+            keepPrevious = false;
+            return;
+        }
+        try (FileChannel file = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            if (file.size() > startSize) {
+                file.truncate(startSize);
+            }
+        }
+    }
+
+    /**
+     * Close a committed writer, or one nothing was written to. Anything written and not
+     * committed is rolled back and reported. A kept previous file is deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            if (previousPath != null) {
+                Files.deleteIfExists(previousPath);
+                previousPath = null;
+            }
+            keepPrevious = false;
+            return;
+        }
+        rollback();
+        if (written) {
+            throw new IOException("Closed " + target + " without commit(); the uncommitted bytes were discarded");
+        }
+    }
+}
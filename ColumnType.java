@@ -0,0 +1,169 @@
+import java.util.Comparator;
+
+/**
+ * Type of a column, decided once by schema inference at load time
+ */
+public enum ColumnType {
+    INT,
+    DOUBLE,
+    YEAR_MONTH,
+    STRING;
+
+    // Longest digit run that is guaranteed to fit in a long
+    private static final int MAX_LONG_DIGITS = 18;
+
+    public boolean isNumeric() {
+        return this == INT || this == DOUBLE;
+    }
+
+    /**
+     * Whether values of this type are also written to a fixed-width binary column file
+     */
+    public boolean hasBinaryColumn() {
+        return this != STRING;
+    }
+
+    /**
+     * The narrowest type that can hold values of both types
+     */
+    public ColumnType widen(ColumnType other) {
+        if (other == null || other == this) {
+            return this;
+        }
+        if (this.isNumeric() && other.isNumeric()) {
+            return DOUBLE;
+        }
+        return STRING;
+    }
+
+    /**
+     * Order values of this type: numerically for numbers, lexicographically otherwise
+     * (year-months are zero padded, so lexicographic order is also chronological).
+     * Equal numbers written differently ("80" and "80.0") are tie-broken by their text.
+     */
+    public Comparator<String> valueComparator() {
+        if (isNumeric()) {
+            return Comparator.<String>comparingDouble(Double::parseDouble).thenComparing(Comparator.naturalOrder());
+        }
+        return Comparator.naturalOrder();
+    }
+
+    /**
+     * Classify a single value without relying on exceptions
+     */
+    public static ColumnType classify(String value) {
+        if (isYearMonth(value)) {
+            return YEAR_MONTH;
+        }
+        if (isLong(value)) {
+            return INT;
+        }
+        if (isDecimal(value)) {
+            return DOUBLE;
+        }
+        return STRING;
+    }
+
+    /**
+     * Classify the current field of a tokenizer straight from its bytes
+     */
+    public static ColumnType classify(CSVTokenizer tokenizer, int field) {
+        if (tokenizer.isYearMonth(field)) {
+            return YEAR_MONTH;
+        }
+        if (tokenizer.isLong(field)) {
+            return INT;
+        }
+        if (tokenizer.isDouble(field)) {
+            return DOUBLE;
+        }
+        return STRING;
+    }
+
+    public static boolean isNumericText(String value) {
+        return isLong(value) || isDecimal(value);
+    }
+
+    private static boolean isYearMonth(String value) {
+        if (value.length() != 7 || value.charAt(4) != '-') {
+            return false;
+        }
+        for (int i = 0; i < 7; i++) {
+            if (i != 4 && (value.charAt(i) < '0' || value.charAt(i) > '9')) {
+                return false;
+            }
+        }
+        int month = (value.charAt(5) - '0') * 10 + (value.charAt(6) - '0');
+        return month >= 1 && month <= 12;
+    }
+
+    private static boolean isLong(String value) {
+        int pos = 0;
+        int end = value.length();
+        if (pos < end && (value.charAt(pos) == '-' || value.charAt(pos) == '+')) {
+            pos++;
+        }
+        if (pos >= end || end - pos > MAX_LONG_DIGITS) {
+            return false;
+        }
+        for (; pos < end; pos++) {
+            if (value.charAt(pos) < '0' || value.charAt(pos) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDecimal(String value) {
+        int pos = 0;
+        int end = value.length();
+        if (pos < end && (value.charAt(pos) == '-' || value.charAt(pos) == '+')) {
+            pos++;
+        }
+
+        int digits = 0;
+        boolean seenPoint = false;
+        for (; pos < end; pos++) {
+            char c = value.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (pos < end && (value.charAt(pos) == 'e' || value.charAt(pos) == 'E')) {
+            pos++;
+            if (pos < end && (value.charAt(pos) == '-' || value.charAt(pos) == '+')) {
+                pos++;
+            }
+            int exponentDigits = 0;
+            for (; pos < end && value.charAt(pos) >= '0' && value.charAt(pos) <= '9'; pos++) {
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return pos == end;
+    }
+
+    /**
+     * Encode "yyyy-MM" as the number of months since year 0
+     */
+    public static long encodeYearMonth(String value) {
+        int year = Integer.parseInt(value.substring(0, 4));
+        int month = Integer.parseInt(value.substring(5, 7));
+        return year * 12L + (month - 1);
+    }
+
+    public static String decodeYearMonth(long encoded) {
+        long year = encoded / 12;
+        long month = encoded % 12 + 1;
+        return String.format("%04d-%02d", year, month);
+    }
+}
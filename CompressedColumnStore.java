@@ -2,16 +2,52 @@ import java.io.*;
 import java.nio.file.*;
 import java.util.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
 
 public class CompressedColumnStore {
     private String dataDirectory;
     private List<String> columnNames;
     private Map<String, Boolean> isCompressed;
+    private TableSchema schema;
+    // Zone maps of the compressed columns, collected while their codes are written
+    private Map<String, List<ZoneMetadata>> loadedZoneMaps = new HashMap<>();
+    private boolean zoneMapsWrittenAtLoad;
+    // Heap shared by the columns being encoded concurrently during a load
+    private long encodeMemoryBudget = Runtime.getRuntime().maxMemory() / 4;
+    // Whether column files are forced to disk before they are moved into place
+    private boolean syncOnWrite;
+    // Packed copy of the store the columns are read from, when opened with loadSegment()
+    private SegmentFile segment;
+    // Binary description of the store it was opened from with loadManifest()
+    private StoreManifest manifest;
+    // Layouts chosen by the caller; other columns get the one the advisor picks
+    private final Map<String, ColumnEncoding> columnEncodings = new ConcurrentHashMap<>();
+    // Layout of every column as recorded in metadata.txt
+    private final Map<String, ColumnEncoding> storedEncodings = new ConcurrentHashMap<>();
+    private EncodingAdvisor encodingAdvisor = new EncodingAdvisor();
+    // Row indexes of the plain text columns, opened on first use and replaced when a column is written
+    private final Map<String, RowOffsetIndex> rowIndexes = new ConcurrentHashMap<>();
+
+    // Number of values covered by one zone of a compressed column's zone map
+    static final int ZONE_SIZE = 800;
+    // Columns the query engine filters on: the advisor only gives them dictionary layouts, so they
+    // always have zone maps and the packed-code filters can read them
+    static final List<String> FILTER_COLUMNS = Arrays.asList("month", "town", "floor_area_sqm");
+    // Approximate heap per unique value across the value set, dictionary map and sorted list
+    private static final long BYTES_PER_DICTIONARY_ENTRY = 160;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
     
     public CompressedColumnStore(String dataDirectory) {
         this.dataDirectory = dataDirectory;
         this.columnNames = new ArrayList<>();
-        this.isCompressed = new HashMap<>();
+        this.isCompressed = new ConcurrentHashMap<>();
         
         // Create the data directory if it doesn't exist
         File dir = new File(dataDirectory);
@@ -28,52 +64,106 @@ public class CompressedColumnStore {
      * Load data directly from a CSV file into the compressed column store
      */
     public void loadFromCSV(String csvFilePath) throws IOException {
+        loadFromCSV(csvFilePath, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Load a CSV, encoding at most parallelism columns at a time; callers that load several
+     * stores at once give each its share of their threads
+     */
+    public void loadFromCSV(String csvFilePath, int parallelism) throws IOException {
         // Step 1: Read CSV and collect all column data
-        Map<String, List<String>> allColumnData = readCSVIntoColumns(csvFilePath);
+        Map<String, CardinalitySketch> sketches = new HashMap<>();
+        Map<String, List<String>> allColumnData = readCSVIntoColumns(csvFilePath, sketches);
+        inferSchema(allColumnData);
         
         // Step 2: Process and store each column (with or without compression)
-        processAndStoreColumns(allColumnData);
+        processAndStoreColumns(allColumnData, sketches, parallelism);
         
         // Step 3: Save metadata about compression
         saveMetadata();
+        saveLoadedZoneMaps();
+        writeManifest(Paths.get(csvFilePath));
+    }
+
+    /**
+     * Load data from a CSV file, parsing it on a ForkJoinPool with the given number of threads
+     */
+    public void loadFromCSVParallel(String csvFilePath, int parallelism) throws IOException {
+        // Step 1: Parse the CSV in parallel, merging chunks back in row order
+        ParallelCSVLoader loader = new ParallelCSVLoader(csvFilePath, parallelism);
+        this.columnNames = loader.getColumnNames();
+        Map<String, CardinalitySketch> sketches = new HashMap<>();
+        Map<String, List<String>> allColumnData = loader.readAllColumns(sketches);
+        inferSchema(allColumnData);
+
+        // Step 2: Process and store each column (with or without compression)
+        processAndStoreColumns(allColumnData, sketches, parallelism);
+
+        // Step 3: Save metadata about compression
+        saveMetadata();
+        saveLoadedZoneMaps();
+        writeManifest(Paths.get(csvFilePath));
+    }
+    
+    /**
+     * Decide every column's type once, so nothing downstream has to re-detect it
+     */
+    private void inferSchema(Map<String, List<String>> allColumnData) throws IOException {
+        schema = TableSchema.inferFromColumns(columnNames, allColumnData);
+        schema.save(dataDirectory);
     }
     
     /**
      * Reads CSV file and organizes data by columns
      */
     private Map<String, List<String>> readCSVIntoColumns(String csvFilePath) throws IOException {
+        return readCSVIntoColumns(csvFilePath, new HashMap<>());
+    }
+    
+    /**
+     * Reads CSV file into columns, feeding every value to its column's distinct-value sketch
+     */
+    private Map<String, List<String>> readCSVIntoColumns(String csvFilePath, Map<String, CardinalitySketch> sketches) 
+        throws IOException {
         Map<String, List<String>> allColumnData = new HashMap<>();
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(csvFilePath))) {
+        try (CSVTokenizer tokenizer = new CSVTokenizer(Paths.get(csvFilePath))) {
             // Read the header to get column names
-            String header = reader.readLine();
-            if (header == null) {
+            if (!tokenizer.nextRecord()) {
                 throw new IOException("CSV file is empty");
             }
             
-            String[] headers = header.split(",");
+            String[] headers = new String[tokenizer.getFieldCount()];
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = tokenizer.getString(i);
+            }
             this.columnNames = Arrays.asList(headers);
             
             // Initialize column data lists
-            for (String columnName : columnNames) {
-                allColumnData.put(columnName, new ArrayList<>());
+            List<List<String>> columnLists = new ArrayList<>();
+            CardinalitySketch[] columnSketches = new CardinalitySketch[columnNames.size()];
+            for (int i = 0; i < columnNames.size(); i++) {
+                List<String> columnList = new ArrayList<>();
+                allColumnData.put(columnNames.get(i), columnList);
+                columnLists.add(columnList);
+                columnSketches[i] = new CardinalitySketch();
+                sketches.put(columnNames.get(i), columnSketches[i]);
             }
             
             // Process each row and collect values
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] values = line.split(",");
-                
+            while (tokenizer.nextRecord()) {
                 // Make sure we have the right number of values
-                if (values.length != columnNames.size()) {
-                    System.err.println("Warning: Row has incorrect number of values: " + line);
+                if (tokenizer.getFieldCount() != columnNames.size()) {
+                    System.err.println("Warning: Row has incorrect number of values: " + tokenizer.getRecordString());
                     continue;
                 }
                 
                 // Add each value to its column's list
-                for (int i = 0; i < values.length; i++) {
-                    String columnName = columnNames.get(i);
-                    allColumnData.get(columnName).add(values[i]);
+                for (int i = 0; i < columnLists.size(); i++) {
+                    String value = tokenizer.getString(i);
+                    columnLists.get(i).add(value);
+                    columnSketches[i].add(value);
                 }
             }
         }
@@ -82,47 +172,208 @@ public class CompressedColumnStore {
     }
     
     /**
-     * Process each column - either compress it or store it directly
+     * Process each column - either compress it or store it directly.
+     * Columns are independent, so they are encoded and written concurrently on a bounded pool;
+     * a column only starts once its estimated working memory fits in the encode memory budget.
      */
-    private void processAndStoreColumns(Map<String, List<String>> allColumnData) throws IOException {
+    private void processAndStoreColumns(Map<String, List<String>> allColumnData, Map<String, CardinalitySketch> sketches,
+                                        int parallelism) throws IOException {
+        loadedZoneMaps = new ConcurrentHashMap<>();
+        long startTime = System.nanoTime();
+        
+        // Budget in KB so it fits in the semaphore's int permits
+        int budgetKB = (int) Math.max(1, Math.min(Integer.MAX_VALUE, encodeMemoryBudget / 1024));
+        Semaphore memoryBudget = new Semaphore(budgetKB);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        
+        // Choose every column's layout before any column is encoded, so each task knows its memory needs
         for (String columnName : columnNames) {
-            List<String> columnData = allColumnData.get(columnName);
-            
-            // Evaluate if this column should be compressed
-            boolean shouldCompress = evaluateForCompression(columnData);
+            ColumnEncoding encoding = chooseColumnEncoding(columnName, allColumnData.get(columnName), sketches.get(columnName));
+            storedEncodings.put(columnName, encoding);
+            isCompressed.put(columnName, encoding.usesDictionary());
+        }
+        
+        try {
+            Map<String, ForkJoinTask<Long>> tasks = new LinkedHashMap<>();
+            for (String columnName : columnNames) {
+                List<String> columnData = allColumnData.get(columnName);
+                CardinalitySketch sketch = sketches.get(columnName);
+                boolean shouldCompress = storedEncodings.get(columnName).usesDictionary();
+                boolean packed = storedEncodings.get(columnName).isNumeric();
+                
+                // A column larger than the whole budget still runs, just on its own
+                int neededKB = (int) Math.min(budgetKB, estimateEncodeMemory(columnData, sketch, shouldCompress, packed) / 1024 + 1);
+                tasks.put(columnName, pool.submit(() -> {
+                    memoryBudget.acquireUninterruptibly(neededKB);
+                    try {
+                        long columnStart = System.nanoTime();
+                        if (shouldCompress) {
+                            compressAndStoreColumn(columnName, columnData);
+                        } else {
+                            storeUncompressedColumn(columnName, columnData);
+                        }
+                        return System.nanoTime() - columnStart;
+                    } finally {
+                        memoryBudget.release(neededKB);
+                    }
+                }));
+            }
             
-            if (shouldCompress) {
-                compressAndStoreColumn(columnName, columnData);
-                isCompressed.put(columnName, true);
-            } else {
-                storeUncompressedColumn(columnName, columnData);
-                isCompressed.put(columnName, false);
+            // Report per-column timings in column order
+            long slowestColumn = 0;
+            for (Map.Entry<String, ForkJoinTask<Long>> entry : tasks.entrySet()) {
+                long columnNanos = joinTask(entry.getValue());
+                slowestColumn = Math.max(slowestColumn, columnNanos);
+                System.out.println(String.format("  %-22s %-18s %8.2f ms", entry.getKey(),
+                        storedEncodings.get(entry.getKey()), columnNanos / 1_000_000.0));
             }
+            System.out.println(String.format("Encoded %d columns in %.2f ms (slowest column %.2f ms)", columnNames.size(),
+                    (System.nanoTime() - startTime) / 1_000_000.0, slowestColumn / 1_000_000.0));
+        } finally {
+            pool.shutdownNow();
         }
     }
     
     /**
-     * Evaluate if a column should be compressed based on cardinality
+     * Rough heap needed while encoding a column: the exact value set, the dictionary and the sorted
+     * unique values for a compressed column, the parsed values for a packed one, or just the write
+     * buffer for a plain one
      */
-    private boolean evaluateForCompression(List<String> columnData) {
-        // Get unique values for this column
-        Set<String> uniqueValues = new HashSet<>(columnData);
-        
-        // Compress if less than 10% of values are unique and there's more than one unique value
-        return (double)uniqueValues.size() / (double)columnData.size() < 0.1 && uniqueValues.size() > 1;
+    private static long estimateEncodeMemory(List<String> columnData, CardinalitySketch sketch, boolean compressed, boolean packed) {
+        long writeBuffer = 64 * 1024;
+        if (packed) {
+            return (long) columnData.size() * Long.BYTES + writeBuffer;
+        }
+        if (!compressed) {
+            return writeBuffer;
+        }
+        // Dictionary entries plus the column's codes, which are collected before choosing their layout
+        return sketch.estimate() * BYTES_PER_DICTIONARY_ENTRY + (long) columnData.size() * Integer.BYTES + writeBuffer;
+    }
+    
+    private static <T> T joinTask(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding columns", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to encode column", e.getCause());
+        }
+    }
+    
+    public void setSyncOnWrite(boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+    }
+    
+    private ColumnFileWriter openColumnFile(String fileName, boolean append) throws IOException {
+        return new ColumnFileWriter(Paths.get(dataDirectory, fileName), ColumnFileWriter.DEFAULT_BUFFER_SIZE, append, syncOnWrite);
+    }
+    
+    /**
+     * Lay out a column the given way instead of asking the encoding advisor when the store is loaded.
+     * FRAME_OF_REFERENCE and DELTA only apply to INT and YEAR_MONTH columns, BLOCK_COMPRESSED
+     * only to text columns.
+     */
+    public void setColumnEncoding(String columnName, ColumnEncoding encoding) {
+        columnEncodings.put(columnName, encoding);
+    }
+    
+    /**
+     * Use an advisor that weighs encoded size against decode speed differently
+     */
+    public void setEncodingAdvisor(EncodingAdvisor encodingAdvisor) {
+        this.encodingAdvisor = encodingAdvisor;
+    }
+    
+    /**
+     * Set the heap budget shared by the columns that are being encoded at the same time
+     */
+    public void setEncodeMemoryBudget(long bytes) {
+        this.encodeMemoryBudget = bytes;
+    }
+    
+    /**
+     * The layout requested for a column, otherwise the one the advisor finds cheapest. The advisor
+     * works from the cardinality estimate, so the exact set of unique values is only built for
+     * columns that get a dictionary.
+     */
+    private ColumnEncoding chooseColumnEncoding(String columnName, List<String> columnData, CardinalitySketch sketch) throws IOException {
+        ColumnType type = schema.getType(columnName);
+        ColumnEncoding requested = columnEncodings.get(columnName);
+        if (requested != null && (!requested.isNumeric() || PackedNumericColumn.canPack(type))
+                && (requested != ColumnEncoding.BLOCK_COMPRESSED || !type.hasBinaryColumn())) {
+            return requested;
+        }
+        return encodingAdvisor.advise(type, columnData, sketch.estimate(), FILTER_COLUMNS.contains(columnName)).getEncoding();
     }
     
     /**
      * Store column data without compression
      */
     private void storeUncompressedColumn(String columnName, List<String> columnData) throws IOException {
-        String columnFilePath = dataDirectory + File.separator + columnName + ".col";
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(columnFilePath))) {
+        ColumnType type = schema.getType(columnName);
+        ColumnEncoding encoding = storedEncodings.getOrDefault(columnName, ColumnEncoding.PLAIN);
+        if (encoding.isNumeric() && PackedNumericColumn.canPack(type)) {
+            long[] values = new long[columnData.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = parseLong(type, columnData.get(i));
+            }
+            writePackedColumn(columnName, values, encoding);
+            return;
+        }
+        if (type.hasBinaryColumn()) {
+            // Numbers and year-months are stored as fixed-width binary values
+            try (BinaryColumnWriter writer = new BinaryColumnWriter(openColumnFile(columnName + ".bin", false), type)) {
+                for (String value : columnData) {
+                    writer.writeValue(value);
+                }
+                writer.commit();
+            }
+            Files.deleteIfExists(packedColumnPath(columnName));
+            return;
+        }
+        if (encoding == ColumnEncoding.BLOCK_COMPRESSED) {
+            try (ColumnFileWriter writer = openColumnFile(columnName + BlockCompressedColumn.FILE_SUFFIX, false)) {
+                writer.write(BlockCompressedColumn.encode(columnData));
+                writer.commit();
+            }
+            // The text lines and their row index of an earlier plain load would be left behind
+            Files.deleteIfExists(textColumnPath(columnName));
+            Files.deleteIfExists(RowOffsetIndex.path(textColumnPath(columnName)));
+            rowIndexes.remove(columnName);
+            return;
+        }
+        Files.deleteIfExists(blockColumnPath(columnName));
+
+        try (ColumnFileWriter writer = openColumnFile(columnName + ".col", false)) {
             for (String value : columnData) {
-                writer.write(value);
-                writer.newLine();
+                writer.write(value.getBytes(StandardCharsets.UTF_8));
+                writer.write(LINE_SEPARATOR);
             }
+            writer.commit();
+        }
+        rowIndexes.put(columnName, RowOffsetIndex.write(textColumnPath(columnName)));
+    }
+    
+    /**
+     * Integer value of an INT or YEAR_MONTH column, as it is stored in binary
+     */
+    static long parseLong(ColumnType type, String value) {
+        return type == ColumnType.INT ? Long.parseLong(value) : ColumnType.encodeYearMonth(value);
+    }
+    
+    /**
+     * Pack an integer column's values with frame-of-reference or delta encoding, in place of its fixed-width binary file
+     */
+    private void writePackedColumn(String columnName, long[] values, ColumnEncoding encoding) throws IOException {
+        try (ColumnFileWriter out = openColumnFile(columnName + PackedNumericColumn.FILE_SUFFIX, false)) {
+            PackedNumericColumn.write(out, values, encoding);
         }
+        Files.deleteIfExists(TableSchema.binaryColumnPath(dataDirectory, columnName));
     }
     
     /**
@@ -145,8 +396,7 @@ public class CompressedColumnStore {
     private void compressColumn(String columnName, List<String> columnData, Set<String> uniqueValues) 
         throws IOException {
         // Calculate bits needed
-        int uniqueCount = uniqueValues.size();
-        int bitsNeeded = (int) Math.ceil(Math.log(uniqueCount) / Math.log(2));
+        int bitsNeeded = bitsNeeded(uniqueValues.size());
         
         // Create dictionary and save it
         Integer recordSize = columnData.size();
@@ -156,56 +406,55 @@ public class CompressedColumnStore {
         writeCompressedColumnData(columnName, columnData, dictionary, bitsNeeded);
     }
 
-    public static boolean allValuesAreDoubles(Collection<String> values) {
-        for (String value : values) {
-            try {
-                Double.parseDouble(value);
-            } catch (NumberFormatException e) {
-                return false; // Found a value that's not a valid double
-            }
-        }
-        return true; // All values are valid doubles
-    }
-    
     /**
      * Create dictionary mapping values to indices and save it to file
      */
     private Map<String, Integer> createAndSaveDictionary(String columnName, Set<String> uniqueValues, int bitsNeeded, int recordSize) 
         throws IOException {
+        Map<String, Integer> dictionary = createDictionary(columnName, uniqueValues);
+        saveDictionary(columnName, dictionary, bitsNeeded, recordSize);
+        return dictionary;
+    }
+
+    /**
+     * Dictionary giving the values codes in their sorted order
+     */
+    private Map<String, Integer> createDictionary(String columnName, Set<String> uniqueValues) {
         // Create a sorted list of unique values
         List<String> sortedUniqueValues = new ArrayList<>(uniqueValues);
-        if (allValuesAreDoubles(uniqueValues)) {
-            Collections.sort(sortedUniqueValues, Comparator.comparingDouble(Double::parseDouble));
-        } else {
-            Collections.sort(sortedUniqueValues); // Fall back to default lexicographic sort
-        }
+        sortedUniqueValues.sort(schema.getType(columnName).valueComparator());
                 
         // Create dictionary: value -> index
         Map<String, Integer> dictionary = new HashMap<>();
         for (int i = 0; i < sortedUniqueValues.size(); i++) {
             dictionary.put(sortedUniqueValues.get(i), i);
         }
-        
-        // Save the dictionary to file
-        String dictionaryPath = dataDirectory + File.separator + columnName + ".dict";
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(dictionaryPath))) {
-            writer.write("# Dictionary for column: " + columnName);
-            writer.newLine();
-            writer.write("# Format: value,index");
-            writer.newLine();
-            writer.write("# Bits used per value: " + bitsNeeded);
-            writer.newLine();
-            writer.write("# Number of records: " + recordSize);
-            writer.newLine();
-            
-            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
-                writer.write(entry.getKey() + "," + entry.getValue());
-                writer.newLine();
-            }
-        }
-        
         return dictionary;
     }
+
+    static int bitsNeeded(int uniqueCount) {
+        return (int) Math.ceil(Math.log(uniqueCount) / Math.log(2));
+    }
+    
+    /**
+     * Save a value -> index dictionary to the column's binary .dict file (see ColumnDictionary)
+     */
+    private void saveDictionary(String columnName, Map<String, Integer> dictionary, int bitsNeeded, int recordSize) 
+        throws IOException {
+        try (ColumnFileWriter out = openColumnFile(columnName + ColumnDictionary.FILE_SUFFIX, false)) {
+            writeDictionary(out, dictionary, bitsNeeded, recordSize);
+            out.commit();
+        }
+    }
+
+    private static void writeDictionary(ColumnFileWriter out, Map<String, Integer> dictionary, int bitsNeeded, int recordSize)
+        throws IOException {
+        String[] valuesByCode = new String[dictionary.size()];
+        for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+            valuesByCode[entry.getValue()] = entry.getKey();
+        }
+        ColumnDictionary.write(out, Arrays.asList(valuesByCode), bitsNeeded, recordSize);
+    }
     
     /**
      * Write compressed column data using the dictionary
@@ -213,25 +462,59 @@ public class CompressedColumnStore {
     private void writeCompressedColumnData(String columnName, List<String> columnData, 
                                            Map<String, Integer> dictionary, int bitsNeeded) 
         throws IOException {
-        BitOutputStream bos = null;
-        try {
-            String compressedFilePath = dataDirectory + File.separator + columnName + ".cmp";
-            bos = new BitOutputStream(new FileOutputStream(compressedFilePath));
+        int[] codes = new int[columnData.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = dictionary.get(columnData.get(i));
+        }
+        
+        try (ColumnFileWriter out = openColumnFile(columnName + ".cmp", false)) {
+            ColumnEncoding encoding = chooseEncoding(columnName, codes, bitsNeeded);
+            if (encoding == ColumnEncoding.RUN_LENGTH) {
+                RunLengthColumn runs = RunLengthColumn.encode(codes, bitsNeeded);
+                runs.write(out);
+                loadedZoneMaps.put(columnName, runs.buildZones(ZONE_SIZE));
+                out.commit();
+                return;
+            }
+            if (encoding == ColumnEncoding.WORD_PACKED) {
+                // One block per zone, so every zone decodes on its own
+                byte[] packed = WordPackedColumn.encode(codes, bitsNeeded, ZONE_SIZE);
+                out.write(packed);
+                loadedZoneMaps.put(columnName, new WordPackedColumn(ByteBuffer.wrap(packed)).buildZones());
+                out.commit();
+                return;
+            }
+            
+            BitOutputStream bos = new BitOutputStream(out);
             
             // Write the number of bits per value and number of values as metadata
             bos.writeInt(bitsNeeded);
-            bos.writeInt(columnData.size());
+            bos.writeInt(codes.length);
             
-            // Write each value's index using the calculated number of bits
-            for (String value : columnData) {
-                int index = dictionary.get(value);
+            // Write each value's index using the calculated number of bits,
+            // collecting the zone map in the same pass (codes start after the 8 byte header)
+            ZoneMapBuilder zones = ZoneMapBuilder.forCodes(bitsNeeded, ZONE_SIZE, 8);
+            for (int index : codes) {
                 bos.writeBits(index, bitsNeeded);
+                zones.addCode(index);
             }
-        } finally {
-            if (bos != null) {
-                bos.close();
-            }
+            loadedZoneMaps.put(columnName, zones.finish());
+            
+            bos.finish();
+            out.commit();
+        }
+    }
+    
+    /**
+     * The code layout chosen for the column, otherwise run-length encoding when it is smaller than bit-packing
+     */
+    private ColumnEncoding chooseEncoding(String columnName, int[] codes, int bitsPerValue) {
+        ColumnEncoding chosen = storedEncodings.get(columnName);
+        if (chosen != null && chosen.usesDictionary()) {
+            return chosen;
         }
+        long packedBytes = 8 + ((long) codes.length * bitsPerValue + 7) / 8;
+        return RunLengthColumn.encodedBytes(RunLengthColumn.countRuns(codes)) < packedBytes ? ColumnEncoding.RUN_LENGTH : ColumnEncoding.BIT_PACKED;
     }
     
     private void saveMetadata() throws IOException {
@@ -239,17 +522,32 @@ public class CompressedColumnStore {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(metadataPath))) {
             writer.write("# Column metadata");
             writer.newLine();
-            writer.write("# Format: column_name,is_compressed");
+            writer.write("# Format: column_name,is_compressed,encoding");
             writer.newLine();
             
             for (String columnName : columnNames) {
-                writer.write(columnName + "," + isCompressed.get(columnName));
+                writer.write(columnName + "," + isCompressed.get(columnName) + "," + getColumnEncoding(columnName));
                 writer.newLine();
             }
         }
     }
 
-    public void generateZoneMapsFromCompressedColumns(int chunkSize) throws IOException {
+    private void saveLoadedZoneMaps() throws IOException {
+        saveColumnMetadata(loadedZoneMaps);
+        zoneMapsWrittenAtLoad = true;
+    }
+
+    /**
+     * Write the zone maps of the compressed columns, ZONE_SIZE codes per zone: word-packed
+     * blocks are laid out one per zone when encoding, so the size is fixed when the store is
+     * written. The loaders already write the maps while encoding, so the .cmp files are only
+     * decoded again for a store opened from disk.
+     */
+    public void generateZoneMapsFromCompressedColumns() throws IOException {
+        if (zoneMapsWrittenAtLoad) {
+            return;
+        }
+
         Map<String, List<ZoneMetadata>> columnZoneMaps = new HashMap<>();
 
         Path columnDir = Paths.get(dataDirectory);
@@ -263,238 +561,1023 @@ public class CompressedColumnStore {
                 byte[] tempCompressedData = loadCompressedData(columnName);
 
                 ByteBuffer buffer = ByteBuffer.wrap(tempCompressedData);
+                if (getColumnEncoding(columnName) == ColumnEncoding.RUN_LENGTH) {
+                    columnZoneMaps.put(columnName, RunLengthColumn.read(buffer).buildZones(ZONE_SIZE));
+                    continue;
+                }
+                if (getColumnEncoding(columnName) == ColumnEncoding.WORD_PACKED) {
+                    columnZoneMaps.put(columnName, new WordPackedColumn(buffer).buildZones());
+                    continue;
+                }
     
                 int valuesPerBit = buffer.getInt();   // Reads first 4 bytes
                 int recordSize   = buffer.getInt();   // Reads next 4 bytes
 
-                List<Integer> compressedData = readCompressedData(Arrays.copyOfRange(tempCompressedData, 8, tempCompressedData.length), valuesPerBit, recordSize);
-
-                int zoneSize = 800;
-                long byteStart = 8; // first 8 bytes is for bitsPerValue and recordSize
-
-                for (int i = 0; i<compressedData.size(); i+=zoneSize) {
-                    int endIndex = Math.min(i + zoneSize, compressedData.size());
-                    List<Integer> zone = compressedData.subList(i, endIndex);
-
-                    int min = zone.stream().min(Integer::compareTo).orElse(0);
-                    int max = zone.stream().max(Integer::compareTo).orElse(0);
-
-                    // if (columnName.equals("month") && i==800) {System.out.println(zone);}
-
-                    int valuesInZone = endIndex - i;
-                    long bitsInZone = (long) valuesInZone * valuesPerBit;
-                    long bytesInZone = (long) Math.ceil(bitsInZone / 8.0); // Round up bits to whole bytes
-
-                    long byteEnd = byteStart + bytesInZone;
+                int[] compressedData = readCompressedData(Arrays.copyOfRange(tempCompressedData, 8, tempCompressedData.length), valuesPerBit, recordSize);
 
-                    zoneMetadataList.add(new ZoneMetadata(min, max, byteStart, byteEnd));
-
-                    byteStart = byteEnd;
-                }
+                // first 8 bytes is for bitsPerValue and recordSize
+                zoneMetadataList.addAll(buildCompressedZones(compressedData, valuesPerBit, 8));
     
                 columnZoneMaps.put(columnName, zoneMetadataList);
             }
         }
     
         saveColumnMetadata(columnZoneMaps);
+        // Which CSV the files came from is not known here, so the manifest records none
+        writeManifest(null);
     }
 
-    public static List<Integer> readCompressedData(byte[] buffer, int bitsPerValue, int expectedCount) {
-        List<Integer> result = new ArrayList<>(expectedCount);
-        int bitLength = buffer.length * 8;
-    
-        int currentBit = 0;
-    
-        for (int i = 0; i < expectedCount; i++) {
-            if (currentBit + bitsPerValue > bitLength) break;
-    
-            int value = 0;
-            for (int bit = 0; bit < bitsPerValue; bit++) {
-                int bitIndex = currentBit + bit;
-                int byteIndex = bitIndex / 8;
-                int bitInByte = 7 - (bitIndex % 8); // Big-endian bit order
-    
-                boolean isSet = ((buffer[byteIndex] >> bitInByte) & 1) == 1;
-                if (isSet) {
-                    value |= (1 << (bitsPerValue - 1 - bit)); // Big-endian within value
-                }
-            }
-    
-            result.add(value);
-            currentBit += bitsPerValue;
-        }
-    
-        return result;
-    }
-    
-    private void saveColumnMetadata(Map<String, List<ZoneMetadata>> columnMetadataMap) throws IOException {
-        for (Map.Entry<String, List<ZoneMetadata>> entry : columnMetadataMap.entrySet()) {
-            String columnName = entry.getKey();
-            Path metadataFile = Paths.get(dataDirectory, columnName + "_zone_map.txt");
-
-            try (BufferedWriter metadataWriter = Files.newBufferedWriter(metadataFile)) {
-                metadataWriter.write(Boolean.toString(true));
-                metadataWriter.newLine();
-                for (ZoneMetadata zone : entry.getValue()) {
-                    metadataWriter.write(zone.toString());
-                    metadataWriter.newLine();
-                }
-            }
-        }
-    }
-    
     /**
-     * Helper method to load compressed data
+     * Split packed codes into zones of ZONE_SIZE values, the first one starting at byteStart
      */
-    private byte[] loadCompressedData(String columnName) {
-        try {
-            String compressedPath = dataDirectory + java.io.File.separator + columnName + ".cmp";
-            return java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(compressedPath));
-        } catch (Exception e) {
-            return null;
+    private static List<ZoneMetadata> buildCompressedZones(int[] compressedData, int valuesPerBit, long byteStart) {
+        ZoneMapBuilder zones = ZoneMapBuilder.forCodes(valuesPerBit, ZONE_SIZE, byteStart);
+        for (int code : compressedData) {
+            zones.addCode(code);
         }
+        return zones.finish();
     }
-    
+
     /**
-     * Load metadata from file when opening an existing compressed column store
+     * Append the rows of a CSV with the same header to an existing store without rebuilding it.
+     * Dictionaries are extended with new codes, packed data is only re-packed when the bit width
+     * grows (or a new value would break the sorted code order), and only the tail zone of each
+     * zone map is recomputed.
      */
-    public void loadMetadata() throws IOException {
-        String metadataPath = dataDirectory + File.separator + "metadata.txt";
-        File metadataFile = new File(metadataPath);
+    public void appendFromCSV(String csvFilePath) throws IOException {
+        if (schema == null) {
+            loadMetadata();
+        }
         
-        if (!metadataFile.exists()) {
-            throw new IOException("Metadata file not found. Is this a valid compressed column store?");
+        List<String> storeColumns = new ArrayList<>(columnNames);
+        Map<String, List<String>> newColumnData = readCSVIntoColumns(csvFilePath);
+        List<String> csvColumns = columnNames;
+        this.columnNames = storeColumns;
+        if (!csvColumns.equals(storeColumns)) {
+            throw new IOException("CSV columns " + csvColumns + " do not match the store columns " + storeColumns);
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(metadataPath))) {
-            String line;
-            columnNames.clear();
-            isCompressed.clear();
-            
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("#")) {
-                    continue;  // Skip comments
-                }
-                
-                String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    String columnName = parts[0];
-                    boolean compressed = Boolean.parseBoolean(parts[1]);
-                    
-                    columnNames.add(columnName);
-                    isCompressed.put(columnName, compressed);
+        // Validate every new value against the schema before touching any file
+        for (String columnName : columnNames) {
+            ColumnType storeType = schema.getType(columnName);
+            for (String value : newColumnData.get(columnName)) {
+                if (ColumnType.classify(value).widen(storeType) != storeType) {
+                    throw new IOException("Value '" + value + "' of column " + columnName + " does not fit type "
+                            + storeType + "; reload the store instead");
                 }
             }
         }
-    }
-    
-    public List<String> getColumnData(String columnName) throws IOException {
-        if (!columnNames.contains(columnName)) {
-            throw new IllegalArgumentException("Column not found: " + columnName);
-        }
         
-        // Check if column is compressed
-        if (isCompressed.getOrDefault(columnName, false)) {
-            return getDecompressedColumnData(columnName);
-        } else {
-            String columnFilePath = dataDirectory + File.separator + columnName + ".col";
-            return Files.readAllLines(Paths.get(columnFilePath));
+        int appendedRows = newColumnData.get(columnNames.get(0)).size();
+        if (appendedRows == 0) {
+            return;
         }
-    }
-    
-    public List<String> getDecompressedColumnData(String columnName) throws IOException {
-        // Load dictionary and get bits per value
-        Map<Integer, String> reverseDictionary = new HashMap<>();
-        int bitsPerValue = loadDictionary(columnName, reverseDictionary);
-        
-        // Now read and decompress the data
-        List<String> compressedData = readAndUncompressCompressedData(columnName, reverseDictionary, bitsPerValue);
-        return compressedData;
-    }
-    
-    /**
-     * Load dictionary for a compressed column
-     */
-    private int loadDictionary(String columnName, Map<Integer, String> reverseDictionary) throws IOException {
-        String dictionaryPath = dataDirectory + File.separator + columnName + ".dict";
-        int bitsPerValue = 0;
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(dictionaryPath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("#")) {
-                    // Parse bits per value from metadata comment
-                    if (line.contains("Bits used per value:")) {
-                        bitsPerValue = Integer.parseInt(line.split(":")[1].trim());
-                    }
-                    continue;
+        // Every file the append changes is written first and committed together with the others,
+        // so a failure part way leaves the store as it was
+        List<ColumnFileWriter> staged = new ArrayList<>();
+        Map<String, Integer> zoneRebuildRows = new HashMap<>();
+        try {
+            for (String columnName : columnNames) {
+                if (isCompressed.getOrDefault(columnName, false)) {
+                    zoneRebuildRows.put(columnName, appendCompressedColumn(columnName, newColumnData.get(columnName), staged));
+                } else {
+                    appendUncompressedColumn(columnName, newColumnData.get(columnName), staged);
                 }
-                
-                String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    // Note: reversed from original - now it's index -> value
-                    reverseDictionary.put(Integer.parseInt(parts[1]), parts[0]);
+            }
+            for (ColumnFileWriter writer : staged) {
+                writer.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Undo every file, including those already committed, so all columns keep the same length
+            for (ColumnFileWriter writer : staged) {
+                try {
+                    writer.rollback();
+                } catch (IOException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
                 }
             }
+            throw e;
+        } finally {
+            for (ColumnFileWriter writer : staged) {
+                writer.close();
+            }
+        }
+        
+        for (String columnName : columnNames) {
+            if (zoneRebuildRows.containsKey(columnName)) {
+                refreshZones(columnName, zoneRebuildRows.get(columnName));
+            } else if (isTextColumn(columnName)) {
+                // Extend the row index from its last checkpoint over the appended lines
+                rowIndexes.put(columnName, RowOffsetIndex.open(textColumnPath(columnName), RowOffsetIndex.map(textColumnPath(columnName))));
+            }
         }
         
-        if (bitsPerValue == 0) {
-            throw new IOException("Invalid dictionary file: missing bits per value metadata");
+        // Keep the packed copy of the store in step with the column files
+        if (Files.exists(Paths.get(dataDirectory, SegmentFile.FILE_NAME))) {
+            writeSegment();
+            if (segment != null) {
+                segment = SegmentFile.open(Paths.get(dataDirectory, SegmentFile.FILE_NAME));
+            }
         }
         
-        return bitsPerValue;
+        // The store no longer matches any single CSV
+        writeManifest(null);
+        
+        System.out.println("Appended " + appendedRows + " rows to " + dataDirectory);
     }
     
     /**
-     * Read compressed data and decompress it using the dictionary
+     * Open a writer for one file of an append; it is committed or rolled back with the others
      */
-    private List<String> readAndUncompressCompressedData(String columnName, Map<Integer, String> reverseDictionary, 
-                                           int bitsPerValue) throws IOException {
-        String compressedFilePath = dataDirectory + File.separator + columnName + ".cmp";
-        List<String> result = new ArrayList<>();
-        
-        BitInputStream bis = null;
-        try {
-            bis = new BitInputStream(new FileInputStream(compressedFilePath));
-            
-            // Read metadata
-            int storedBitsPerValue = bis.readInt();
-            int valueCount = bis.readInt();
+    private ColumnFileWriter stageColumnFile(List<ColumnFileWriter> staged, String fileName, boolean append) throws IOException {
+        ColumnFileWriter writer = openColumnFile(fileName, append);
+        writer.setKeepPrevious(true);
+        staged.add(writer);
+        return writer;
+    }
+    
+    private void appendUncompressedColumn(String columnName, List<String> newValues, List<ColumnFileWriter> staged) throws IOException {
+        ColumnType type = schema.getType(columnName);
+        if (getColumnEncoding(columnName).isNumeric()) {
+            // Blocks are packed as a whole, so the column is packed again with its current encoding
+            PackedNumericColumn packed = (PackedNumericColumn) openNumericColumn(columnName);
+            long[] oldValues = packed.decode();
+            long[] values = Arrays.copyOf(oldValues, oldValues.length + newValues.size());
+            for (int i = 0; i < newValues.size(); i++) {
+                values[oldValues.length + i] = parseLong(type, newValues.get(i));
+            }
+            ColumnFileWriter out = stageColumnFile(staged, columnName + PackedNumericColumn.FILE_SUFFIX, false);
+            out.write(PackedNumericColumn.encode(values, packed.getEncoding()).array());
+            return;
+        }
+        if (type.hasBinaryColumn()) {
+            BinaryColumnWriter writer = new BinaryColumnWriter(stageColumnFile(staged, columnName + ".bin", true), type);
+            for (String value : newValues) {
+                writer.writeValue(value);
+            }
+            return;
+        }
+        if (getColumnEncoding(columnName) == ColumnEncoding.BLOCK_COMPRESSED) {
+            byte[] data = BlockCompressedColumn.append(getColumnBuffer(columnName), newValues);
+            stageColumnFile(staged, columnName + BlockCompressedColumn.FILE_SUFFIX, false).write(data);
+            return;
+        }
+        
+        ColumnFileWriter writer = stageColumnFile(staged, columnName + ".col", true);
+        for (String value : newValues) {
+            writer.write(value.getBytes(StandardCharsets.UTF_8));
+            writer.write(LINE_SEPARATOR);
+        }
+    }
+    
+    /**
+     * Stage the new dictionary and codes of a compressed column, returning the first row whose
+     * zone has to be recomputed once they are committed
+     */
+    private int appendCompressedColumn(String columnName, List<String> newValues, List<ColumnFileWriter> staged) throws IOException {
+        Map<Integer, String> reverseDictionary = new HashMap<>();
+        int oldBits = loadDictionary(columnName, reverseDictionary);
+        int oldCount = readRecordCount(columnName);
+        ColumnEncoding encoding = getColumnEncoding(columnName);
+        
+        Map<String, Integer> dictionary = new HashMap<>();
+        for (Map.Entry<Integer, String> entry : reverseDictionary.entrySet()) {
+            dictionary.put(entry.getValue(), entry.getKey());
+        }
+        
+        // New distinct values in sorted order
+        Comparator<String> order = schema.getType(columnName).valueComparator();
+        TreeSet<String> unseenValues = new TreeSet<>(order);
+        for (String value : newValues) {
+            if (!dictionary.containsKey(value)) {
+                unseenValues.add(value);
+            }
+        }
+        
+        // Codes stay in value order only if every new value sorts after the current largest one
+        String largestValue = reverseDictionary.get(reverseDictionary.size() - 1);
+        boolean orderPreserved = unseenValues.isEmpty() || order.compare(unseenValues.first(), largestValue) > 0;
+        int newCount = oldCount + newValues.size();
+        
+        if (orderPreserved) {
+            for (String value : unseenValues) {
+                dictionary.put(value, dictionary.size());
+            }
+            int newBits = Math.max(oldBits, bitsNeeded(dictionary.size()));
+            writeDictionary(stageColumnFile(staged, columnName + ColumnDictionary.FILE_SUFFIX, false), dictionary, newBits, newCount);
             
-            if (storedBitsPerValue != bitsPerValue) {
-                throw new IOException("Metadata mismatch between dictionary and compressed file");
+            List<Integer> newCodes = new ArrayList<>(newValues.size());
+            for (String value : newValues) {
+                newCodes.add(dictionary.get(value));
             }
             
-            // Read each value
-            for (int i = 0; i < valueCount; i++) {
-                int index = bis.readBits(bitsPerValue);
-                String value = reverseDictionary.get(index);
-                result.add(value);
+            if (newBits == oldBits && encoding == ColumnEncoding.BIT_PACKED) {
+                // Same width: the existing bytes are copied and the new codes packed on after them
+                appendCompressedCodes(stageColumnFile(staged, columnName + ".cmp", false), columnName, newCodes, oldBits, oldCount);
+                return oldCount;
             }
-        } finally {
-            if (bis != null) {
-                bis.close();
+            if (newBits == oldBits && encoding == ColumnEncoding.WORD_PACKED) {
+                appendWordPackedCodes(stageColumnFile(staged, columnName + ".cmp", false), columnName, newCodes, oldCount);
+                return oldCount;
             }
+            
+            // Wider codes or runs: existing codes keep their values but have to be re-encoded
+            List<Integer> allCodes = readAllCodes(columnName);
+            allCodes.addAll(newCodes);
+            writeCompressedCodes(stageColumnFile(staged, columnName + ".cmp", false), allCodes, newBits, encoding);
+            return 0;
+        }
+        
+        // A new value falls between existing ones: re-sort the dictionary and remap every code
+        Set<String> uniqueValues = new HashSet<>(dictionary.keySet());
+        uniqueValues.addAll(unseenValues);
+        int newBits = bitsNeeded(uniqueValues.size());
+        Map<String, Integer> newDictionary = createDictionary(columnName, uniqueValues);
+        writeDictionary(stageColumnFile(staged, columnName + ColumnDictionary.FILE_SUFFIX, false), newDictionary, newBits, newCount);
+        
+        List<Integer> allCodes = readAllCodes(columnName);
+        for (int i = 0; i < allCodes.size(); i++) {
+            allCodes.set(i, newDictionary.get(reverseDictionary.get(allCodes.get(i))));
+        }
+        for (String value : newValues) {
+            allCodes.add(newDictionary.get(value));
+        }
+        writeCompressedCodes(stageColumnFile(staged, columnName + ".cmp", false), allCodes, newBits, encoding);
+        return 0;
+    }
+    
+    private int readRecordCount(String columnName) throws IOException {
+        String compressedFilePath = dataDirectory + File.separator + columnName + ".cmp";
+        try (RandomAccessFile file = new RandomAccessFile(compressedFilePath, "r")) {
+            file.seek(4);
+            return file.readInt();
+        }
+    }
+    
+    private List<Integer> readAllCodes(String columnName) throws IOException {
+        int[] codes = readCodes(columnName);
+        List<Integer> allCodes = new ArrayList<>(codes.length);
+        for (int code : codes) {
+            allCodes.add(code);
+        }
+        return allCodes;
+    }
+    
+    /**
+     * Write a whole .cmp file from its codes, keeping its layout
+     */
+    private static void writeCompressedCodes(ColumnFileWriter out, List<Integer> codes, int bitsPerValue, ColumnEncoding encoding) throws IOException {
+        if (encoding == ColumnEncoding.WORD_PACKED) {
+            out.write(WordPackedColumn.encode(toIntArray(codes), bitsPerValue, ZONE_SIZE));
+            return;
+        }
+        if (encoding == ColumnEncoding.RUN_LENGTH) {
+            RunLengthColumn.encode(toIntArray(codes), bitsPerValue).write(out);
+            return;
         }
         
+        BitOutputStream bos = new BitOutputStream(out);
+        bos.writeInt(bitsPerValue);
+        bos.writeInt(codes.size());
+        for (int code : codes) {
+            bos.writeBits(code, bitsPerValue);
+        }
+        bos.finish();
+    }
+    
+    private static int[] toIntArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+    
+    // Bytes [from, to) of a column's data, without copying them
+    private static ByteBuffer byteRange(ByteBuffer data, long from, long to) {
+        ByteBuffer range = data.duplicate();
+        range.limit((int) to);
+        range.position((int) from);
+        return range;
+    }
+    
+    /**
+     * Write a word-packed .cmp file with more codes: full blocks are copied as they are and the
+     * last partial block is packed again together with the new codes
+     */
+    private void appendWordPackedCodes(ColumnFileWriter out, String columnName, List<Integer> codes, int oldCount) throws IOException {
+        ByteBuffer oldData = getColumnBuffer(columnName);
+        WordPackedColumn column = new WordPackedColumn(oldData);
+        int bitsPerValue = column.getBitsPerValue();
+        int blockRows = column.getBlockRows();
+        int tailBlock = oldCount / blockRows;
+        int tailStartRow = tailBlock * blockRows;
+        
+        int[] tailCodes = Arrays.copyOf(column.decode(tailStartRow, oldCount), oldCount - tailStartRow + codes.size());
+        for (int i = 0; i < codes.size(); i++) {
+            tailCodes[oldCount - tailStartRow + i] = codes.get(i);
+        }
+        long tailOffset = WordPackedColumn.blockOffset(tailBlock, bitsPerValue, blockRows);
+        
+        // The header only changes in its record count
+        out.write(byteRange(oldData, 0, 4));
+        new BitOutputStream(out).writeInt(oldCount + codes.size());
+        out.write(byteRange(oldData, 8, tailOffset));
+        out.write(WordPackedColumn.encodeBlocks(tailCodes, 0, tailCodes.length, bitsPerValue, blockRows));
+    }
+    
+    /**
+     * Write a bit-packed .cmp file with more codes: the existing bytes are copied and the new
+     * codes continue in the last partially used byte
+     */
+    private void appendCompressedCodes(ColumnFileWriter out, String columnName, List<Integer> codes, int bitsPerValue, int oldCount) throws IOException {
+        ByteBuffer oldData = getColumnBuffer(columnName);
+        long usedBits = (long) oldCount * bitsPerValue;
+        long tailOffset = 8 + usedBits / 8;
+        int bitsInTail = (int) (usedBits % 8);
+        
+        BitOutputStream header = new BitOutputStream(out);
+        header.writeInt(bitsPerValue);
+        header.writeInt(oldCount + codes.size());
+        out.write(byteRange(oldData, 8, tailOffset));
+        
+        int tailBits = bitsInTail > 0 ? (oldData.get((int) tailOffset) & 0xFF) >>> (8 - bitsInTail) : 0;
+        BitOutputStream bos = new BitOutputStream(out, tailBits, bitsInTail);
+        for (int code : codes) {
+            bos.writeBits(code, bitsPerValue);
+        }
+        bos.finish();
+    }
+    
+    /**
+     * Recompute the zone map of a compressed column from the zone holding the given row on,
+     * after its .cmp file was rewritten; the zones before it are kept
+     */
+    private void refreshZones(String columnName, int fromRow) throws IOException {
+        Path zoneMapPath = Paths.get(dataDirectory, columnName + "_zone_map.txt");
+        if (!Files.exists(zoneMapPath)) {
+            return; // zone maps were never generated for this store
+        }
+        
+        List<ZoneMetadata> existingZones = ZoneMetadata.readZoneMetadata(columnName, dataDirectory);
+        int keptZones = Math.min(fromRow / ZONE_SIZE, existingZones.size());
+        
+        // Zone files are read back as doubles, keep the codes as ints when writing them again
+        List<ZoneMetadata> zones = new ArrayList<>();
+        for (ZoneMetadata zone : existingZones.subList(0, keptZones)) {
+            zones.add(new ZoneMetadata(((Number) zone.getMinValue()).intValue(), ((Number) zone.getMaxValue()).intValue(),
+                    zone.getStartByte(), zone.getEndByte()));
+        }
+        
+        // Read the file itself: a store opened from a segment still maps the chunk from before the append
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(Paths.get(dataDirectory, columnName + ".cmp"), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ColumnEncoding encoding = getColumnEncoding(columnName);
+        if (encoding == ColumnEncoding.RUN_LENGTH) {
+            List<ZoneMetadata> allZones = RunLengthColumn.read(data).buildZones(ZONE_SIZE);
+            zones.addAll(allZones.subList(keptZones, allZones.size()));
+        } else if (encoding == ColumnEncoding.WORD_PACKED) {
+            // One block per zone
+            zones.addAll(new WordPackedColumn(data).buildZones(keptZones));
+        } else {
+            int bitsPerValue = data.getInt(0);
+            int tailStartRow = keptZones * ZONE_SIZE;
+            long tailStartByte = 8 + (long) tailStartRow * bitsPerValue / 8;
+            int[] tailCodes = BitUnpacker.unpack(data, (int) tailStartByte, bitsPerValue, data.getInt(4) - tailStartRow);
+            zones.addAll(buildCompressedZones(tailCodes, bitsPerValue, tailStartByte));
+        }
+        saveColumnMetadata(Collections.singletonMap(columnName, zones));
+    }
+    
+
+    public static int[] readCompressedData(byte[] buffer, int bitsPerValue, int expectedCount) {
+        // Only as many codes as the buffer holds in full
+        int count = bitsPerValue == 0 ? expectedCount : (int) Math.min(expectedCount, (long) buffer.length * 8 / bitsPerValue);
+        return BitUnpacker.unpack(ByteBuffer.wrap(buffer), 0, bitsPerValue, count);
+    }
+    
+    private void saveColumnMetadata(Map<String, List<ZoneMetadata>> columnMetadataMap) throws IOException {
+        for (Map.Entry<String, List<ZoneMetadata>> entry : columnMetadataMap.entrySet()) {
+            String columnName = entry.getKey();
+            Path metadataFile = Paths.get(dataDirectory, columnName + "_zone_map.txt");
+
+            try (BufferedWriter metadataWriter = Files.newBufferedWriter(metadataFile)) {
+                // Codes are numeric; the zone size follows the flag
+                metadataWriter.write(true + "," + ZONE_SIZE);
+                metadataWriter.newLine();
+                for (ZoneMetadata zone : entry.getValue()) {
+                    metadataWriter.write(zone.toString());
+                    metadataWriter.newLine();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Helper method to load compressed data, or null if it cannot be read
+     */
+    public byte[] loadCompressedData(String columnName) {
+        try {
+            return readColumnBytes(columnName);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Pack the column files, dictionaries and zone maps of the store into a single segment file
+     */
+    public void writeSegment() throws IOException {
+        List<SegmentFile.ColumnSource> sources = new ArrayList<>();
+        for (String columnName : columnNames) {
+            List<ZoneMetadata> zones = savedZoneMap(columnName);
+            Path dictionaryPath = isColumnCompressed(columnName) ? ColumnDictionary.path(dataDirectory, columnName) : null;
+            sources.add(new SegmentFile.ColumnSource(columnName, schema.getType(columnName), columnFile(columnName), dictionaryPath, zones));
+        }
+        
+        try (ColumnFileWriter out = openColumnFile(SegmentFile.FILE_NAME, false)) {
+            SegmentFile.write(out, sources);
+        }
+    }
+    
+    private List<ZoneMetadata> savedZoneMap(String columnName) throws IOException {
+        Path zoneMapPath = Paths.get(dataDirectory, columnName + "_zone_map.txt");
+        return Files.exists(zoneMapPath) ? ZoneMetadata.readZoneMetadata(columnName, dataDirectory) : new ArrayList<>();
+    }
+    
+    /**
+     * Describe the store as it is on disk in its manifest, with the CSV it was loaded from
+     * (null when its rows did not all come from one CSV)
+     */
+    private void writeManifest(Path source) throws IOException {
+        String sourcePath = "";
+        long sourceBytes = -1;
+        long sourceModified = -1;
+        if (source != null) {
+            sourcePath = source.toAbsolutePath().normalize().toString();
+            sourceBytes = Files.size(source);
+            sourceModified = Files.getLastModifiedTime(source).toMillis();
+        }
+        
+        List<StoreManifest.Column> columns = new ArrayList<>();
+        for (String columnName : columnNames) {
+            Path dataFile = columnFile(columnName);
+            ColumnEncoding encoding = getColumnEncoding(columnName);
+            long rowCount;
+            int dictionaryBits = 0;
+            int dictionarySize = 0;
+            if (isColumnCompressed(columnName)) {
+                ColumnDictionary dictionary = openDictionary(columnName);
+                rowCount = dictionary.getRecordCount();
+                dictionaryBits = dictionary.getBitsPerValue();
+                dictionarySize = dictionary.size();
+            } else if (schema.getType(columnName).hasBinaryColumn()) {
+                rowCount = openNumericColumn(columnName).size();
+            } else if (encoding == ColumnEncoding.BLOCK_COMPRESSED) {
+                rowCount = openBlockColumn(columnName).size();
+            } else {
+                rowCount = openRowOffsetIndex(columnName, getColumnBuffer(columnName)).getRowCount();
+            }
+            columns.add(new StoreManifest.Column(columnName, schema.getType(columnName), encoding, isColumnCompressed(columnName),
+                    dataFile.getFileName().toString(), Files.size(dataFile), rowCount, dictionaryBits, dictionarySize,
+                    savedZoneMap(columnName)));
+        }
+        
+        manifest = new StoreManifest(sourcePath, sourceBytes, sourceModified, columns);
+        try (ColumnFileWriter out = openColumnFile(StoreManifest.FILE_NAME, false)) {
+            manifest.write(out);
+        }
+    }
+    
+    /**
+     * Open an existing store from its manifest: one small file is read and checked, and no
+     * column data, dictionary or text metadata is touched until a query needs it
+     */
+    public void loadManifest() throws IOException {
+        openManifest(StoreManifest.read(StoreManifest.path(dataDirectory)));
+    }
+    
+    /**
+     * Open the store from its manifest if it was loaded from this CSV as the CSV is now.
+     * Returns false, leaving the store unopened, when there is no usable manifest or the CSV
+     * has changed since, so the caller loads the CSV instead.
+     */
+    public boolean loadManifestIfCurrent(String csvFilePath) throws IOException {
+        if (!Files.exists(StoreManifest.path(dataDirectory))) {
+            return false;
+        }
+        try {
+            StoreManifest saved = StoreManifest.read(StoreManifest.path(dataDirectory));
+            if (!saved.isLoadedFrom(Paths.get(csvFilePath))) {
+                return false;
+            }
+            openManifest(saved);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Not opening " + dataDirectory + " from its manifest: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private void openManifest(StoreManifest opened) throws IOException {
+        opened.checkFiles(dataDirectory);
+        segment = null;
+        columnNames.clear();
+        isCompressed.clear();
+        storedEncodings.clear();
+        
+        List<ColumnType> types = new ArrayList<>();
+        for (StoreManifest.Column column : opened.getColumns()) {
+            columnNames.add(column.getName());
+            isCompressed.put(column.getName(), column.isCompressed());
+            storedEncodings.put(column.getName(), column.getEncoding());
+            types.add(column.getType());
+        }
+        schema = new TableSchema(columnNames, types);
+        manifest = opened;
+        // The zone maps are in the manifest, current with the column files it was checked against
+        zoneMapsWrittenAtLoad = true;
+    }
+    
+    /**
+     * Open an existing store from its segment file. Unlike loadMetadata() this maps one file
+     * and decodes its footer, and every later read is served from that mapping.
+     */
+    public void loadSegment() throws IOException {
+        segment = SegmentFile.open(Paths.get(dataDirectory, SegmentFile.FILE_NAME));
+        manifest = null;
+        columnNames.clear();
+        isCompressed.clear();
+        storedEncodings.clear();
+        
+        List<ColumnType> types = new ArrayList<>();
+        for (String columnName : segment.getColumnNames()) {
+            SegmentFile.Column column = segment.getColumn(columnName);
+            columnNames.add(columnName);
+            isCompressed.put(columnName, column.isCompressed());
+            types.add(column.getType());
+        }
+        schema = new TableSchema(columnNames, types);
+    }
+    
+    /**
+     * The file holding a column's values: packed codes, packed integers, fixed-width binary values,
+     * compressed text blocks or text lines
+     */
+    private Path columnFile(String columnName) {
+        ColumnEncoding recorded = storedEncodings.get(columnName);
+        if (isColumnCompressed(columnName)) {
+            return Paths.get(dataDirectory, columnName + ".cmp");
+        } else if (recorded != null ? recorded.isNumeric() : Files.exists(packedColumnPath(columnName))) {
+            return packedColumnPath(columnName);
+        } else if (schema.getType(columnName).hasBinaryColumn()) {
+            return TableSchema.binaryColumnPath(dataDirectory, columnName);
+        } else if (recorded != null ? recorded == ColumnEncoding.BLOCK_COMPRESSED : Files.exists(blockColumnPath(columnName))) {
+            return blockColumnPath(columnName);
+        }
+        return textColumnPath(columnName);
+    }
+    
+    private Path textColumnPath(String columnName) {
+        return Paths.get(dataDirectory, columnName + ".col");
+    }
+    
+    private Path packedColumnPath(String columnName) {
+        return Paths.get(dataDirectory, columnName + PackedNumericColumn.FILE_SUFFIX);
+    }
+    
+    private Path blockColumnPath(String columnName) {
+        return Paths.get(dataDirectory, columnName + BlockCompressedColumn.FILE_SUFFIX);
+    }
+    
+    /**
+     * Read-only view of a column's data file, served from the segment when the store was opened from one
+     */
+    public ByteBuffer getColumnBuffer(String columnName) throws IOException {
+        if (segment != null) {
+            return segment.getChunk(columnName);
+        }
+        try (FileChannel channel = FileChannel.open(columnFile(columnName), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+    
+    private byte[] readColumnBytes(String columnName) throws IOException {
+        if (segment == null) {
+            return Files.readAllBytes(columnFile(columnName));
+        }
+        ByteBuffer buffer = segment.getChunk(columnName);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+    
+    /**
+     * Zone map of a compressed column
+     */
+    public List<ZoneMetadata> getZoneMaps(String columnName) throws IOException {
+        if (segment != null) {
+            return segment.getColumn(columnName).getZones();
+        }
+        if (manifest != null) {
+            for (StoreManifest.Column column : manifest.getColumns()) {
+                if (column.getName().equals(columnName)) {
+                    return column.getZones();
+                }
+            }
+        }
+        return ZoneMetadata.readZoneMetadata(columnName, dataDirectory);
+    }
+    
+    /**
+     * Load metadata from file when opening an existing compressed column store
+     */
+    public void loadMetadata() throws IOException {
+        String metadataPath = dataDirectory + File.separator + "metadata.txt";
+        File metadataFile = new File(metadataPath);
+        
+        if (!metadataFile.exists()) {
+            throw new IOException("Metadata file not found. Is this a valid compressed column store?");
+        }
+        
+        segment = null;
+        manifest = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(metadataPath))) {
+            String line;
+            columnNames.clear();
+            isCompressed.clear();
+            storedEncodings.clear();
+            
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;  // Skip comments
+                }
+                
+                String[] parts = line.split(",");
+                if (parts.length >= 2) {
+                    String columnName = parts[0];
+                    boolean compressed = Boolean.parseBoolean(parts[1]);
+                    
+                    columnNames.add(columnName);
+                    isCompressed.put(columnName, compressed);
+                    // Stores written before encodings were recorded have their layout detected on read
+                    if (parts.length >= 3) {
+                        storedEncodings.put(columnName, ColumnEncoding.valueOf(parts[2]));
+                    }
+                }
+            }
+        }
+        
+        schema = TableSchema.load(dataDirectory);
+    }
+    
+    public TableSchema getSchema() {
+        return schema;
+    }
+    
+    public boolean isColumnCompressed(String columnName) {
+        return isCompressed.getOrDefault(columnName, false);
+    }
+    
+    /**
+     * Map an uncompressed numeric column, packed or fixed-width, for reading as primitives
+     */
+    public NumericColumn openNumericColumn(String columnName) throws IOException {
+        if (isColumnCompressed(columnName)) {
+            throw new IOException("Column is dictionary-compressed and has no binary file: " + columnName);
+        }
+        ByteBuffer data = getColumnBuffer(columnName);
+        if (getColumnEncoding(columnName).isNumeric()) {
+            return new PackedNumericColumn(data, schema.getType(columnName));
+        }
+        return new MappedNumericColumn(data, schema.getType(columnName));
+    }
+    
+    /**
+     * Dictionary of a compressed numeric column as one double per code, so aggregates
+     * parse each distinct value once instead of once per row
+     */
+    public double[] loadNumericDictionary(String columnName) throws IOException {
+        ColumnDictionary dictionary = openDictionary(columnName);
+        
+        double[] valueByCode = new double[dictionary.size()];
+        for (int code = 0; code < valueByCode.length; code++) {
+            valueByCode[code] = dictionary.getDouble(code);
+        }
+        return valueByCode;
+    }
+    
+    /**
+     * Whether a compressed column holds its codes as runs rather than bit-packed
+     */
+    public boolean isRunLengthEncoded(String columnName) throws IOException {
+        return getColumnEncoding(columnName) == ColumnEncoding.RUN_LENGTH;
+    }
+    
+    /**
+     * How a column is laid out, as recorded in the metadata, or detected from its data
+     * for a store opened from a segment or written before encodings were recorded
+     */
+    public ColumnEncoding getColumnEncoding(String columnName) throws IOException {
+        ColumnEncoding recorded = storedEncodings.get(columnName);
+        if (recorded != null) {
+            return recorded;
+        }
+        ByteBuffer data = getColumnBuffer(columnName);
+        if (isColumnCompressed(columnName)) {
+            if (WordPackedColumn.isWordPacked(data)) {
+                return ColumnEncoding.WORD_PACKED;
+            }
+            return RunLengthColumn.isRunLength(data) ? ColumnEncoding.RUN_LENGTH : ColumnEncoding.BIT_PACKED;
+        }
+        if (PackedNumericColumn.isPacked(data)) {
+            return new PackedNumericColumn(data, schema.getType(columnName)).getEncoding();
+        }
+        if (BlockCompressedColumn.isBlockCompressed(data)) {
+            return ColumnEncoding.BLOCK_COMPRESSED;
+        }
+        return ColumnEncoding.PLAIN;
+    }
+    
+    /**
+     * Map a block-compressed text column, to inflate only the blocks a reader needs
+     */
+    public BlockCompressedColumn openBlockColumn(String columnName) throws IOException {
+        return new BlockCompressedColumn(getColumnBuffer(columnName));
+    }
+    
+    /**
+     * Map the dictionary of a compressed column
+     */
+    public ColumnDictionary openDictionary(String columnName) throws IOException {
+        if (segment != null) {
+            return segment.getDictionary(columnName, schema.getType(columnName).valueComparator());
+        }
+        return ColumnDictionary.open(ColumnDictionary.path(dataDirectory, columnName), schema.getType(columnName).valueComparator());
+    }
+    
+    /**
+     * Unpack every code of a compressed column into a primitive array
+     */
+    public int[] readCodes(String columnName) throws IOException {
+        return decodeCodes(getColumnBuffer(columnName), getColumnEncoding(columnName));
+    }
+    
+    /**
+     * Unpack every code of compressed column data laid out with the given encoding
+     */
+    static int[] decodeCodes(ByteBuffer data, ColumnEncoding encoding) throws IOException {
+        if (encoding == ColumnEncoding.RUN_LENGTH) {
+            return RunLengthColumn.read(data).decode();
+        }
+        if (encoding == ColumnEncoding.WORD_PACKED) {
+            return new WordPackedColumn(data).decode();
+        }
+        return BitUnpacker.unpack(data, 8, data.getInt(0), data.getInt(4));
+    }
+    
+    /**
+     * Bit-pack codes into the .cmp layout in memory, header included
+     */
+    static byte[] packCodes(int[] codes, int bitsPerValue) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BitOutputStream bos = new BitOutputStream(bytes)) {
+            bos.writeInt(bitsPerValue);
+            bos.writeInt(codes.length);
+            for (int code : codes) {
+                bos.writeBits(code, bitsPerValue);
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+    public List<String> getColumnData(String columnName) throws IOException {
+        if (!columnNames.contains(columnName)) {
+            throw new IllegalArgumentException("Column not found: " + columnName);
+        }
+        
+        // Check if column is compressed
+        if (isCompressed.getOrDefault(columnName, false)) {
+            return getDecompressedColumnData(columnName);
+        } else if (schema.getType(columnName).hasBinaryColumn()) {
+            return readBinaryColumnAsText(columnName);
+        } else if (getColumnEncoding(columnName) == ColumnEncoding.BLOCK_COMPRESSED) {
+            return openBlockColumn(columnName).decode();
+        } else {
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(readColumnBytes(columnName)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        }
+    }
+    
+    /**
+     * Format a fixed-width binary column back into text values
+     */
+    private List<String> readBinaryColumnAsText(String columnName) throws IOException {
+        ColumnType type = schema.getType(columnName);
+        ByteBuffer buffer = getColumnBuffer(columnName).order(ByteOrder.LITTLE_ENDIAN);
+        if (getColumnEncoding(columnName).isNumeric()) {
+            long[] values = new PackedNumericColumn(buffer, type).decode();
+            List<String> result = new ArrayList<>(values.length);
+            for (long value : values) {
+                result.add(type == ColumnType.INT ? Long.toString(value) : ColumnType.decodeYearMonth(value));
+            }
+            return result;
+        }
+        List<String> result = new ArrayList<>(buffer.remaining() / BinaryColumnWriter.VALUE_BYTES);
+        
+        while (buffer.remaining() >= BinaryColumnWriter.VALUE_BYTES) {
+            switch (type) {
+                case INT:
+                    result.add(Long.toString(buffer.getLong()));
+                    break;
+                case DOUBLE:
+                    result.add(Double.toString(buffer.getDouble()));
+                    break;
+                default:
+                    result.add(ColumnType.decodeYearMonth(buffer.getLong()));
+                    break;
+            }
+        }
         return result;
     }
     
+    /**
+     * Every value of a compressed column: its codes unpacked in one call by the kernels of its
+     * layout, then looked up in the dictionary
+     */
+    public List<String> getDecompressedColumnData(String columnName) throws IOException {
+        ColumnDictionary dictionary = openDictionary(columnName);
+        ByteBuffer data = getColumnBuffer(columnName);
+        if (getColumnEncoding(columnName) == ColumnEncoding.BIT_PACKED && data.getInt(0) != dictionary.getBitsPerValue()) {
+            throw new IOException("Metadata mismatch between dictionary and compressed file");
+        }
+        
+        int[] codes = decodeCodes(data, getColumnEncoding(columnName));
+        List<String> values = new ArrayList<>(codes.length);
+        for (int code : codes) {
+            values.add(dictionary.getValue(code));
+        }
+        return values;
+    }
+    
+    /**
+     * Load dictionary for a compressed column
+     */
+    private int loadDictionary(String columnName, Map<Integer, String> reverseDictionary) throws IOException {
+        ColumnDictionary dictionary = openDictionary(columnName);
+        for (int code = 0; code < dictionary.size(); code++) {
+            reverseDictionary.put(code, dictionary.getValue(code));
+        }
+        return dictionary.getBitsPerValue();
+    }
+    
+    /**
+     * One row, read from each column where its layout puts the row: a code at a bit offset,
+     * a run found by binary search, a value in a packed block, one inflated block, or a text
+     * line found through the column's row index
+     */
     public Map<String, String> getRow(int rowIndex) throws IOException {
         Map<String, String> row = new HashMap<>();
         
         for (String columnName : columnNames) {
-            List<String> columnData = getColumnData(columnName);
-            if (rowIndex >= 0 && rowIndex < columnData.size()) {
-                row.put(columnName, columnData.get(rowIndex));
+            row.put(columnName, openValueReader(columnName).read(rowIndex));
+        }
+        
+        return row;
+    }
+    
+    /**
+     * Many rows at once, in the order they are given. Each column is read in one pass over
+     * the rows in ascending order, so packed and compressed blocks are decoded once per batch.
+     */
+    public List<Map<String, String>> getRows(int[] rowIndexes) throws IOException {
+        int[] order = RowOffsetIndex.ascendingOrder(rowIndexes);
+        int[] sortedRows = new int[order.length];
+        List<Map<String, String>> rows = new ArrayList<>(order.length);
+        for (int i = 0; i < order.length; i++) {
+            sortedRows[i] = rowIndexes[order[i]];
+            rows.add(new HashMap<>());
+        }
+        
+        for (String columnName : columnNames) {
+            List<String> values;
+            if (isTextColumn(columnName)) {
+                ByteBuffer columnData = getColumnBuffer(columnName);
+                values = openRowOffsetIndex(columnName, columnData).getValues(columnData, sortedRows);
             } else {
-                throw new IndexOutOfBoundsException("Row index out of bounds: " + rowIndex);
+                ValueReader reader = openValueReader(columnName);
+                values = new ArrayList<>(sortedRows.length);
+                for (int row : sortedRows) {
+                    values.add(reader.read(row));
+                }
+            }
+            for (int i = 0; i < order.length; i++) {
+                rows.get(order[i]).put(columnName, values.get(i));
             }
         }
         
+        return rows;
+    }
+    
+    /**
+     * Reads single values of one column without decoding the rest of it
+     */
+    private interface ValueReader {
+        String read(int row) throws IOException;
+    }
+    
+    private ValueReader openValueReader(String columnName) throws IOException {
+        ColumnEncoding encoding = getColumnEncoding(columnName);
+        if (encoding.usesDictionary()) {
+            ColumnDictionary dictionary = openDictionary(columnName);
+            ByteBuffer data = getColumnBuffer(columnName);
+            if (encoding == ColumnEncoding.RUN_LENGTH) {
+                RunLengthColumn runs = RunLengthColumn.read(data);
+                return row -> dictionary.getValue(runs.getCode(checkRow(row, runs.size())));
+            }
+            if (encoding == ColumnEncoding.WORD_PACKED) {
+                WordPackedColumn words = new WordPackedColumn(data);
+                return row -> dictionary.getValue(words.getCode(checkRow(row, words.size())));
+            }
+            int bitsPerValue = data.getInt(0);
+            int recordCount = data.getInt(4);
+            return row -> dictionary.getValue(codeAt(data, bitsPerValue, checkRow(row, recordCount)));
+        }
+        if (encoding == ColumnEncoding.BLOCK_COMPRESSED) {
+            return openBlockColumn(columnName)::getValue;
+        }
+        if (schema.getType(columnName).hasBinaryColumn()) {
+            NumericColumn column = openNumericColumn(columnName);
+            return row -> binaryValueAsText(column, checkRow(row, column.size()));
+        }
+        ByteBuffer columnData = getColumnBuffer(columnName);
+        RowOffsetIndex index = openRowOffsetIndex(columnName, columnData);
+        return row -> index.getValue(columnData, row);
+    }
+    
+    private boolean isTextColumn(String columnName) throws IOException {
+        return !isColumnCompressed(columnName) && !schema.getType(columnName).hasBinaryColumn()
+                && getColumnEncoding(columnName) == ColumnEncoding.PLAIN;
+    }
+    
+    /**
+     * Row index of a plain text column, kept once opened: the saved .idx file, or for a store
+     * opened from a segment one built from the chunk
+     */
+    private RowOffsetIndex openRowOffsetIndex(String columnName, ByteBuffer columnData) throws IOException {
+        RowOffsetIndex index = rowIndexes.get(columnName);
+        if (index == null || !index.isFor(columnData)) {
+            index = segment == null ? RowOffsetIndex.open(textColumnPath(columnName), columnData) : RowOffsetIndex.build(columnData);
+            rowIndexes.put(columnName, index);
+        }
+        return index;
+    }
+    
+    private static int checkRow(int row, int rowCount) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
+        }
         return row;
     }
     
+    /**
+     * Code of one row of bit-packed column data, read from the bytes its bits fall in
+     */
+    static int codeAt(ByteBuffer data, int bitsPerValue, int row) {
+        long bit = (long) row * bitsPerValue;
+        int position = 8 + (int) (bit >>> 3);
+        int shift = (int) (bit & 7);
+        int byteCount = (shift + bitsPerValue + 7) / 8;
+        long window = 0;
+        for (int i = 0; i < byteCount; i++) {
+            window = (window << 8) | (data.get(position + i) & 0xFF);
+        }
+        return (int) ((window >>> (byteCount * 8 - shift - bitsPerValue)) & ((1L << bitsPerValue) - 1));
+    }
+    
+    /**
+     * One value of a binary column formatted the way readBinaryColumnAsText formats it
+     */
+    private static String binaryValueAsText(NumericColumn column, int row) {
+        switch (column.getType()) {
+            case INT:
+                return Long.toString(column.getLong(row));
+            case DOUBLE:
+                return Double.toString(column.getDouble(row));
+            default:
+                return ColumnType.decodeYearMonth(column.getLong(row));
+        }
+    }
+    
     public List<String> getColumnNames() {
         return columnNames;
     }
@@ -506,16 +1589,21 @@ public class CompressedColumnStore {
         private int bitsInBuffer;
         
         public BitOutputStream(OutputStream out) {
+            this(out, 0, 0);
+        }
+        
+        // Continue a stream whose last byte already holds bitsInBuffer bits
+        public BitOutputStream(OutputStream out, int buffer, int bitsInBuffer) {
             this.out = out;
-            this.buffer = 0;
-            this.bitsInBuffer = 0;
+            this.buffer = buffer;
+            this.bitsInBuffer = bitsInBuffer;
         }
         
         public void writeBits(int value, int numBits) throws IOException {
             if (numBits <= 0) return;
             
             // Make sure value fits in numBits
-            int mask = (1 << numBits) - 1;
+            int mask = -1 >>> (32 - numBits);
             value &= mask;
             
             while (numBits > 0) {
@@ -547,82 +1635,21 @@ public class CompressedColumnStore {
             out.write(value & 0xFF);
         }
         
-        @Override
-        public void close() throws IOException {
-            // Flush any remaining bits
+        // Write out the last, partially filled byte
+        public void finish() throws IOException {
             if (bitsInBuffer > 0) {
                 buffer <<= (8 - bitsInBuffer);
                 out.write(buffer);
+                buffer = 0;
+                bitsInBuffer = 0;
             }
-            out.close();
-        }
-    }
-    
-    // Helper class to read bits from a file
-    private static class BitInputStream implements Closeable {
-        private InputStream in;
-        private int buffer;
-        private int bitsInBuffer;
-        
-        public BitInputStream(InputStream in) {
-            this.in = in;
-            this.buffer = 0;
-            this.bitsInBuffer = 0;
-        }
-        
-        public int readBits(int numBits) throws IOException {
-            if (numBits <= 0) return 0;
-            
-            int result = 0;
-            int bitsStillNeeded = numBits;
-            
-            while (bitsStillNeeded > 0) {
-                // If buffer is empty, fill it
-                if (bitsInBuffer == 0) {
-                    int nextByte = in.read();
-                    if (nextByte == -1) {
-                        throw new EOFException("Unexpected end of file");
-                    }
-                    buffer = nextByte;
-                    bitsInBuffer = 8;
-                }
-                
-                // How many bits we can take from buffer
-                int bitsToTake = Math.min(bitsInBuffer, bitsStillNeeded);
-                
-                // Extract bits from buffer
-                int shift = bitsInBuffer - bitsToTake;
-                int mask = ((1 << bitsToTake) - 1) << shift;
-                int extractedBits = (buffer & mask) >>> shift;
-                
-                // Add to result
-                result = (result << bitsToTake) | extractedBits;
-                
-                // Update state
-                bitsInBuffer -= bitsToTake;
-                bitsStillNeeded -= bitsToTake;
-            }
-            
-            return result;
-        }
-        
-        public int readInt() throws IOException {
-            // Read a 32-bit integer directly from the stream
-            int b1 = in.read();
-            int b2 = in.read();
-            int b3 = in.read();
-            int b4 = in.read();
-            
-            if ((b1 | b2 | b3 | b4) < 0) {
-                throw new EOFException("Unexpected end of file");
-            }
-            
-            return (b1 << 24) | (b2 << 16) | (b3 << 8) | b4;
         }
         
         @Override
         public void close() throws IOException {
-            in.close();
+            // Flush any remaining bits
+            finish();
+            out.close();
         }
     }
 }
\ No newline at end of file
@@ -1,7 +1,11 @@
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.nio.file.*;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
 
 public class CompressedQueryEngine {
     private CompressedColumnStore columnStore;
@@ -10,11 +14,11 @@ public class CompressedQueryEngine {
         this.columnStore = columnStore;
     }
 
-    public List<Integer> getSubsetByMonthAndTown(String yearMonth, String town) throws IOException {
+    public SelectionVector getSubsetByMonthAndTown(String yearMonth, String town) throws IOException {
         List<String> months = columnStore.getColumnData("month");
         List<String> towns = columnStore.getColumnData("town");
         List<String> floor = columnStore.getColumnData("floor_area_sqm");
-        List<Integer> matchingIndices = new ArrayList<>();
+        IntColumnVector matchingIndices = new IntColumnVector();
 
         String nextMonthStr = CompressionTestMain.getNextMonthStr(yearMonth);
         
@@ -24,7 +28,7 @@ public class CompressedQueryEngine {
         for (int i = 0; i < months.size(); i++) {
             String monthValue = months.get(i);
             String townValue = towns.get(i);
-            Double floorValue = Double.parseDouble(floor.get(i));
+            double floorValue = Double.parseDouble(floor.get(i));
             
             // Simple string matching: month equals yearMonth OR month equals nextMonthStr
             if ((monthValue.equals(yearMonth) || monthValue.equals(nextMonthStr)) && 
@@ -35,110 +39,64 @@ public class CompressedQueryEngine {
         }
         
         System.out.println("Found " + matchingIndices.size() + " matching transactions");
-        return matchingIndices;
+        return SelectionVector.fromRows(matchingIndices, months.size());
     }
 
-    public static Integer getFloorAreaSqmIndex(Map<String, Integer> floor_area_sqmDict) {
-        Integer floor_area_sqmIndex = -1;
-        if (floor_area_sqmDict.containsKey("80")) {
-            floor_area_sqmIndex = floor_area_sqmDict.get("80");
-        }
-        else {
-            double target = 80.0;
-        
-            // Sort the keys by their double value
-            List<String> sortedKeys = new ArrayList<>(floor_area_sqmDict.keySet());
-            sortedKeys.sort(Comparator.comparingDouble(key -> {
-                try {
-                    return Double.parseDouble(key);
-                } catch (NumberFormatException e) {
-                    return Double.MAX_VALUE; // Put non-numeric keys at the end
-                }
-            }));
-        
-            // Find the first key > 80
-            for (String key : sortedKeys) {
-                try {
-                    double keyVal = Double.parseDouble(key);
-                    if (keyVal > target) {
-                        floor_area_sqmIndex = floor_area_sqmDict.get(key);
-                        break;
-                    }
-                } catch (NumberFormatException e) {
-                    // Skip non-numeric keys
-                }
-            }
-        }
-        return floor_area_sqmIndex;
+    /**
+     * Smallest floor_area_sqm code whose value is at least 80. The schema types floor_area_sqm
+     * as numeric, so its dictionary codes follow numeric order and a binary search finds it;
+     * when no value qualifies this is the dictionary size, which no code reaches.
+     */
+    public static int getFloorAreaSqmIndex(ColumnDictionary floor_area_sqmDict) {
+        return floor_area_sqmDict.lowerBound("80");
     }
     
     /**
      * Optimized version to get subset when we know month and town are compressed.
-     * This directly uses the dictionary files without fully decompressing the data.
+     * Each column with a dictionary is filtered on its codes in whatever layout they were
+     * stored with, without decoding them; a column without one is tested on its values at
+     * the rows still selected.
      */
-    public List<Integer> getSubsetByMonthAndTownOptimized(String yearMonth, String town) throws IOException {
-        List<Integer> matchingIndices = new ArrayList<>();
-        
+    public SelectionVector getSubsetByMonthAndTownOptimized(String yearMonth, String town) throws IOException {
+
         String nextMonthStr = CompressionTestMain.getNextMonthStr(yearMonth);
         
         System.out.println("Filtering transactions with month = " + yearMonth + " OR month = " + nextMonthStr + " for town: " + town);
 
         try {
-            // Check if we can use the optimized path with compressed dictionaries
-            Map<String, Integer> monthDict = loadDictionary("month");
-            Map<String, Integer> townDict = loadDictionary("town");
-            Map<String, Integer> floor_area_sqmDict = loadDictionary("floor_area_sqm");
-            
-            if (monthDict != null && townDict != null && floor_area_sqmDict != null) {
-                // Get the indices for our target values
-                Integer monthIndex1 = monthDict.get(yearMonth);
-                Integer monthIndex2 = monthDict.get(nextMonthStr);
-                Integer townIndex = townDict.get(town);
-                Integer floor_area_sqmIndex = getFloorAreaSqmIndex(floor_area_sqmDict);
-                
-                // If any value doesn't exist in the dictionary, we can't use this optimization
-                if ((monthIndex1 == null && monthIndex2 == null) || townIndex == null) {
-                    // Return empty List
-                    return matchingIndices;
-                }
-                
-                // Get compressed data
-                byte[] monthData = loadCompressedData("month");
-                byte[] townData = loadCompressedData("town");
-                byte[] floor_area_sqmData = loadCompressedData("floor_area_sqm");
-                
-                if (monthData != null && townData != null) {
-                    int recordCount = monthDict.get("# Number of records");
-                    int monthBits = monthDict.get("# Bits used per value");
-                    int townBits = townDict.get("# Bits used per value");
-                    int floor_area_sqmBits = floor_area_sqmDict.get("# Bits used per value");
-
-                    // Process each record without fully decompressing
-                    BitStreamReader monthReader = new BitStreamReader(monthData, monthBits);
-                    BitStreamReader townReader = new BitStreamReader(townData, townBits);
-                    BitStreamReader floor_area_sqmReader = new BitStreamReader(floor_area_sqmData, floor_area_sqmBits);
-
-                    // Skip metadata in both readers
-                    monthReader.skipMetadata();
-                    townReader.skipMetadata();
-                    floor_area_sqmReader.skipMetadata();
-                    
-                    for (int i = 0; i < recordCount; i++) {
-                        int monthValue = monthReader.readBits();
-                        int townValue = townReader.readBits();
-                        int floor_area_sqmTemp = floor_area_sqmReader.readBits();
-                        
-                        if ((monthValue == monthIndex1 || monthValue == monthIndex2) && 
-                            townValue == townIndex &&
-                            floor_area_sqmTemp >= floor_area_sqmIndex) {
-                                matchingIndices.add(i);
-                        }
-                    }
-
-                    System.out.println("Found " + matchingIndices.size() + " matching transactions (optimized)");
-                    return matchingIndices;
-                }
+            ColumnDictionary monthDict = loadDictionary("month");
+            ColumnDictionary townDict = loadDictionary("town");
+            ColumnDictionary floor_area_sqmDict = loadDictionary("floor_area_sqm");
+            int recordCount = rowCount("month", monthDict);
+
+            // Get the indices for our target values (-1 when the column never holds the value)
+            PackedCodeFilter monthCodes = null;
+            PackedCodeFilter townCodes = null;
+            PackedCodeFilter floor_area_sqmCodes = null;
+            if (monthDict != null) {
+                monthCodes = PackedCodeFilter.in(monthDict.getBitsPerValue(), monthDict.getCode(yearMonth), monthDict.getCode(nextMonthStr));
             }
+            if (townDict != null) {
+                townCodes = PackedCodeFilter.equalTo(townDict.getBitsPerValue(), townDict.getCode(town));
+            }
+            if (floor_area_sqmDict != null) {
+                floor_area_sqmCodes = PackedCodeFilter.atLeast(floor_area_sqmDict.getBitsPerValue(), getFloorAreaSqmIndex(floor_area_sqmDict));
+            }
+            long month1 = ColumnType.encodeYearMonth(yearMonth);
+            long month2 = ColumnType.encodeYearMonth(nextMonthStr);
+
+            // One bitmap per predicate; town and floor area only look at rows that still match
+            long[] matches = columnMatches("month", monthCodes, value -> value == month1 || value == month2,
+                    text -> text.equals(yearMonth) || text.equals(nextMonthStr), yearMonth, nextMonthStr, recordCount, null);
+            matches = columnMatches("town", townCodes, null, text -> text.equals(town), town, town, recordCount, matches);
+            matches = columnMatches("floor_area_sqm", floor_area_sqmCodes, value -> value >= 80,
+                    text -> Double.parseDouble(text) >= 80, null, null, recordCount, matches);
+            SelectionVector selection = SelectionVector.fromBitmap(matches, recordCount);
+
+            long onCodes = Arrays.asList(monthCodes, townCodes, floor_area_sqmCodes).stream().filter(Objects::nonNull).count();
+            System.out.println("Found " + selection.size() + " matching transactions (optimized"
+                    + (onCodes == 3 ? ")" : ", " + onCodes + " of 3 columns on their codes)"));
+            return selection;
         } catch (Exception e) {
             System.err.println("Optimization failed, falling back to regular method: " + e.getMessage());
             // Fall back to regular method
@@ -147,209 +105,186 @@ public class CompressedQueryEngine {
         // If optimization failed or wasn't possible, use the regular method
         return getSubsetByMonthAndTown(yearMonth, town);
     }
-    
+
     /**
-     * Helper method to load a dictionary from disk
+     * Match bitmap of one column's predicate, limited to the candidate rows (all rows when null).
+     * A dictionary-coded column is filtered on its stored codes by codeFilter; any other column
+     * is tested value by value at the candidate rows only. Matching text lies from lowestText to
+     * highestText (null when unknown), so block-compressed blocks outside that range are skipped.
      */
-    private Map<String, Integer> loadDictionary(String columnName) {
-        try {
-            String dictionaryPath = columnStore.getDataDirectory() + java.io.File.separator + columnName + ".dict";
-            java.io.File dictFile = new java.io.File(dictionaryPath);
-            
-            if (!dictFile.exists()) {
-                return null;  // Dictionary doesn't exist
-            }
-            
-            Map<String, Integer> dictionary = new HashMap<>();
-            try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(dictionaryPath))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.startsWith("#")) {
-                        if (line.startsWith("# Bits used per value:")) {
-                            dictionary.put("# Bits used per value", Integer.parseInt(line.split(":")[1].trim()));
-                        }
-                        else if (line.startsWith("# Number of records:")) {
-                            dictionary.put("# Number of records", Integer.parseInt(line.split(":")[1].trim()));
-                        }
-                    continue;
-                    }
-                    
-                    String[] parts = line.split(",");
-                    if (parts.length >= 2) {
-                        dictionary.put(parts[0], Integer.parseInt(parts[1]));
-                    }
-                }
+    private long[] columnMatches(String columnName, PackedCodeFilter codeFilter, DoublePredicate numberMatches,
+                                 Predicate<String> textMatches, String lowestText, String highestText,
+                                 int rowCount, long[] candidates) throws IOException {
+        ColumnEncoding encoding = columnStore.getColumnEncoding(columnName);
+        if (codeFilter != null && encoding.usesDictionary()) {
+            return codeFilter.evaluate(columnStore.getColumnBuffer(columnName), encoding, candidates);
+        }
+        if (encoding == ColumnEncoding.BLOCK_COMPRESSED && (lowestText != null || highestText != null)) {
+            candidates = pruneBlocks(columnStore.openBlockColumn(columnName), lowestText, highestText, rowCount, candidates);
+        }
+        IntPredicate rowMatches = columnPredicate(columnName, numberMatches, textMatches);
+        long[] bitmap = new long[(rowCount + 63) >>> 6];
+        for (int row = 0; row < rowCount; row++) {
+            if ((candidates == null || (candidates[row >>> 6] & (1L << row)) != 0) && rowMatches.test(row)) {
+                bitmap[row >>> 6] |= 1L << row;
             }
-            
-            return dictionary;
-        } catch (Exception e) {
-            return null;  // If any error occurs, return null
         }
+        return bitmap;
     }
-    
-    public List<String> readAndUncompressData(String columnName) throws IOException {
-        try {
-            // Check if we can use the optimized path with compressed dictionaries
-            Map<String, Integer> columnDict = loadDictionary(columnName);
-                
-            // Get compressed data
-            byte[] columnData = loadCompressedData(columnName);
-            
-            int recordCount = columnDict.get("# Number of records");
-            int columnBits = columnDict.get("# Bits used per value");
 
-            // Process each record without fully decompressing
-            BitStreamReader columnReader = new BitStreamReader(columnData, columnBits);
-
-            // Skip metadata in both readers
-            columnReader.skipMetadata();
-            Map<Integer, String> reversedMap = reverseMap(columnDict);
-            
-            List<String> result = new ArrayList<>();
-            for (int i = 0; i < recordCount; i++) {
-                int compressedValue = columnReader.readBits();
-                result.add(reversedMap.get(compressedValue));
+    /**
+     * Candidate rows left once the blocks whose value range misses lowest..highest are dropped
+     */
+    private static long[] pruneBlocks(BlockCompressedColumn column, String lowest, String highest, int rowCount, long[] candidates) {
+        long[] remaining = new long[(rowCount + 63) >>> 6];
+        int blockRows = column.getBlockRows();
+        for (int block = 0; block < column.getBlockCount(); block++) {
+            if (column.mayContain(block, lowest, highest)) {
+                PackedCodeFilter.setRange(remaining, block * blockRows, Math.min(rowCount, (block + 1) * blockRows));
             }
-            return result;
-
-        } catch (Exception e) {
-            System.err.println("Uncompression failed " + e.getMessage());
-            return new ArrayList<>();
         }
-        
+        if (candidates != null) {
+            for (int word = 0; word < remaining.length; word++) {
+                remaining[word] &= candidates[word];
+            }
+        }
+        return remaining;
     }
 
-    public List<Double> readAndUncompressRelevantDoubleData(String columnName, Map<String, List<Integer>> relevantZonesIndices) throws IOException {
-
-        String compressedPath = columnStore.getDataDirectory() + java.io.File.separator + columnName + ".cmp";
-        List<ZoneMetadata> columnZones = ZoneMetadata.readZoneMetadata(columnName, columnStore.getDataDirectory());
-
-        List<Integer> compressedData = ZoneMetadata.readFilteredCompressedZones(Paths.get(compressedPath), columnZones, relevantZonesIndices.get("zones"), relevantZonesIndices.get("indices"), 800);
-
-        try {
-            List<Double> result = new ArrayList<>();
-
-            Map<String, Integer> columnDict = loadDictionary(columnName);
-
-            Map<Integer, String> reversedMap = reverseMap(columnDict);
+    /**
+     * Test of one column's value at a row: on its numbers for a binary column (when numberMatches
+     * is given), and on its text otherwise
+     */
+    private IntPredicate columnPredicate(String columnName, DoublePredicate numberMatches,
+                                         Predicate<String> textMatches) throws IOException {
+        ColumnEncoding encoding = columnStore.getColumnEncoding(columnName);
+        if (numberMatches != null && columnStore.getSchema().getType(columnName).hasBinaryColumn()) {
+            NumericColumn column = columnStore.openNumericColumn(columnName);
+            return row -> numberMatches.test(column.getDouble(row));
+        }
+        if (encoding == ColumnEncoding.BLOCK_COMPRESSED) {
+            // Rows are tested in ascending order, so each block holding a candidate row is inflated once
+            BlockCompressedColumn column = columnStore.openBlockColumn(columnName);
+            return row -> {
+                try {
+                    return textMatches.test(column.getValue(row));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        }
+        List<String> values = columnStore.getColumnData(columnName);
+        return row -> textMatches.test(values.get(row));
+    }
 
-            for (int index : compressedData) {
-                result.add(Double.parseDouble(reversedMap.get(index)));
-            }
-            return result;
-        } catch (Exception e) {
-            System.err.println("Uncompression failed " + e.getMessage());
-            return new ArrayList<>();
+    /**
+     * Number of rows in a column, from its dictionary, its numbers or its text
+     */
+    private int rowCount(String columnName, ColumnDictionary dictionary) throws IOException {
+        if (dictionary != null) {
+            return dictionary.getRecordCount();
+        }
+        if (columnStore.getSchema().getType(columnName).hasBinaryColumn()) {
+            return columnStore.openNumericColumn(columnName).size();
         }
+        if (columnStore.getColumnEncoding(columnName) == ColumnEncoding.BLOCK_COMPRESSED) {
+            return columnStore.openBlockColumn(columnName).size();
+        }
+        return columnStore.getColumnData(columnName).size();
     }
 
     /**
-     * Helper method to load compressed data
+     * Random access to the codes of a column, from its runs, its words or straight from the packed
+     * bits, all read in place from the column's mapped buffer
      */
-    private byte[] loadCompressedData(String columnName) {
-        try {
-            String compressedPath = columnStore.getDataDirectory() + java.io.File.separator + columnName + ".cmp";
-            return java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(compressedPath));
-        } catch (Exception e) {
-            return null;
+    private IntUnaryOperator codeReader(String columnName) throws IOException {
+        if (columnStore.isRunLengthEncoded(columnName)) {
+            return RunLengthColumn.read(columnStore.getColumnBuffer(columnName))::getCode;
+        }
+        if (columnStore.getColumnEncoding(columnName) == ColumnEncoding.WORD_PACKED) {
+            return new WordPackedColumn(columnStore.getColumnBuffer(columnName))::getCode;
         }
+        ByteBuffer columnData = columnStore.getColumnBuffer(columnName);
+        int bitsPerValue = columnData.getInt(0);
+        return row -> CompressedColumnStore.codeAt(columnData, bitsPerValue, row);
     }
     
     /**
-     * Helper class to read bits from a byte array
+     * Helper method to map a column's dictionary, or null if the column is not compressed
      */
-    public class BitStreamReader {
-        private byte[] data;
-        private int bitsPerValue;
-        private int position = 0;
-        private int bitPosition = 0;
-        
-        public BitStreamReader(byte[] data, int bitsPerValue) {
-            this.data = data;
-            this.bitsPerValue = bitsPerValue;
-        }
-        
-        public void skipMetadata() {
-            // Skip past the 8-byte header (bitsPerValue and valueCount as 4-byte ints)
-            position = 8;
-            bitPosition = 0;
+    private ColumnDictionary loadDictionary(String columnName) {
+        try {
+            if (!columnStore.isColumnCompressed(columnName)) {
+                return null;  // Dictionary doesn't exist
+            }
+            return columnStore.openDictionary(columnName);
+        } catch (Exception e) {
+            return null;  // If any error occurs, return null
         }
-        
-        public int readBits() {
-            int result = 0;
-            int bitsRead = 0;
-            
-            while (bitsRead < bitsPerValue) {
-                int bitsAvailable = 8 - bitPosition;
-                int bitsToRead = Math.min(bitsPerValue - bitsRead, bitsAvailable);
-                
-                // Extract bits from current byte
-                int mask = ((1 << bitsToRead) - 1) << (bitsAvailable - bitsToRead);
-                int extractedBits = (data[position] & mask) >>> (bitsAvailable - bitsToRead);
-                
-                // Add to result
-                result = (result << bitsToRead) | extractedBits;
-                
-                // Update positions
-                bitPosition += bitsToRead;
-                bitsRead += bitsToRead;
+    }
+    
+    public List<String> readAndUncompressData(String columnName) throws IOException {
+        try {
+            // Check if we can use the optimized path with compressed dictionaries
+            ColumnDictionary columnDict = loadDictionary(columnName);
                 
-                // Move to next byte if needed
-                if (bitPosition == 8) {
-                    position++;
-                    bitPosition = 0;
-                }
-            }
+            // Get the codes, whether bit-packed or run-length encoded
+            int[] codes = columnStore.readCodes(columnName);
+            List<String> valuesByCode = columnDict.getValues();
             
+            List<String> result = new ArrayList<>(codes.length);
+            for (int code : codes) {
+                result.add(valuesByCode.get(code));
+            }
             return result;
-        }
-    }
 
-    public static Map<Integer, String> reverseMap(Map<String, Integer> originalMap) {
-        Map<Integer, String> reversedMap = new HashMap<>();
-        
-        for (Map.Entry<String, Integer> entry : originalMap.entrySet()) {
-            reversedMap.put(entry.getValue(), entry.getKey());
+        } catch (Exception e) {
+            System.err.println("Uncompression failed " + e.getMessage());
+            return new ArrayList<>();
         }
         
-        return reversedMap;
     }
-    
-    public List<Integer> readFilteredCompressedZones(Path columnCmpPath, List<ZoneMetadata> columnZones, List<Integer> filteredZones, int bitsPerValue, int valuesPerZone) throws IOException {
-        List<Integer> relevantColumnData = new ArrayList<>();
-
-        try (RandomAccessFile file = new RandomAccessFile(columnCmpPath.toFile(), "r")) {
-            for (Integer zoneIndex : filteredZones) {
-                ZoneMetadata zoneMetadata = columnZones.get(zoneIndex);
-
-                long bytesToRead = zoneMetadata.getEndByte() - zoneMetadata.getStartByte();
-                file.seek(zoneMetadata.getStartByte());
 
-                byte[] dataBuffer = new byte[(int) bytesToRead];
-                file.readFully(dataBuffer);
-
-                // Decompress the buffer to get actual values
-                List<Integer> values = CompressedColumnStore.readCompressedData(dataBuffer, bitsPerValue, valuesPerZone);
-
-                relevantColumnData.addAll(values); // optionally filter values based on your predicate here
+    /**
+     * Values of a numeric column at the selected rows only. A dictionary-compressed column is
+     * decoded through a table of one double per code, its codes unpacked in full for a dense
+     * selection and read one selected row at a time for a sparse one; an uncompressed column is
+     * read from its mapped binary file or its frame-of-reference/delta packed blocks.
+     */
+    public double[] readNumericValues(String columnName, SelectionVector selection) throws IOException {
+        int[] rows = selection.toRows();
+        if (!columnStore.isColumnCompressed(columnName)) {
+            // Packed columns decode each block the (ascending) rows fall in once
+            return columnStore.openNumericColumn(columnName).getDoubles(rows);
+        }
+        double[] valueByCode = columnStore.loadNumericDictionary(columnName);
+        double[] values = new double[rows.length];
+        if (selection.isDense()) {
+            int[] codes = columnStore.readCodes(columnName);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = valueByCode[codes[rows[i]]];
+            }
+        } else {
+            IntUnaryOperator codes = codeReader(columnName);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = valueByCode[codes.applyAsInt(rows[i])];
             }
         }
-
-        return relevantColumnData;
+        return values;
     }
 
     /**
      * Query 1: Get minimum resale price for a specific month and town
      */
     public String getMinimumPrice(String yearMonth, String town) throws IOException {
-        List<Integer> subset = getSubsetByMonthAndTownOptimized(yearMonth, town);
+        SelectionVector subset = getSubsetByMonthAndTownOptimized(yearMonth, town);
         if (subset.isEmpty()) {
             return "No result";
         }
-        List<String> prices = readAndUncompressData("resale_price");
-        Double minPrice = Double.MAX_VALUE;
-        for (int i : subset) {
-            minPrice = Math.min(minPrice, Double.parseDouble(prices.get(i)));
+        double[] prices = readNumericValues("resale_price", subset);
+        double minPrice = Double.MAX_VALUE;
+        for (double price : prices) {
+            minPrice = Math.min(minPrice, price);
         }
         return String.valueOf(minPrice);
     }
@@ -358,22 +293,22 @@ public class CompressedQueryEngine {
      * Query 2: Calculate standard deviation of prices for a specific month and town
      */
     public String getStandardDeviationPrice(String yearMonth, String town) throws IOException {
-        List<Integer> subset = getSubsetByMonthAndTownOptimized(yearMonth, town);
+        SelectionVector subset = getSubsetByMonthAndTownOptimized(yearMonth, town);
         if (subset.isEmpty()) {
             return "No result";
         }
-        List<String> prices = readAndUncompressData("resale_price");
+        double[] prices = readNumericValues("resale_price", subset);
                 
         double sum = 0.0;
         double variance = 0.0;
 
-        for (int i : subset) {
-            sum += Double.parseDouble(prices.get(i)); // To calculate mean
+        for (double price : prices) {
+            sum += price; // To calculate mean
         }
         double mean = sum / subset.size();
 
-        for (int i : subset) {
-            variance += Math.pow(Double.parseDouble(prices.get(i)) - mean, 2);
+        for (double price : prices) {
+            variance += Math.pow(price - mean, 2);
         }
         variance /= (subset.size()-1);
         
@@ -385,16 +320,16 @@ public class CompressedQueryEngine {
      * Query 3: Calculate average resale price for a specific month and town
      */
     public String getAveragePrice(String yearMonth, String town) throws IOException {
-        List<Integer> subset = getSubsetByMonthAndTownOptimized(yearMonth, town);
+        SelectionVector subset = getSubsetByMonthAndTownOptimized(yearMonth, town);
         if (subset.isEmpty()) {
             return "No result";
         }
 
-        List<String> prices = readAndUncompressData("resale_price");
+        double[] prices = readNumericValues("resale_price", subset);
                 
         double sum = 0.0;
-        for (int i : subset) {
-            sum += Double.parseDouble(prices.get(i)); // To calculate mean
+        for (double price : prices) {
+            sum += price; // To calculate mean
         }
         return String.valueOf(sum / subset.size());
     }
@@ -403,18 +338,18 @@ public class CompressedQueryEngine {
      * Query 4: Calculate minimum price per square meter for a specific month and town
      */
     public String getMinimumPricePerSquareMeter(String yearMonth, String town) throws IOException {
-        List<Integer> subset = getSubsetByMonthAndTownOptimized(yearMonth, town);
+        SelectionVector subset = getSubsetByMonthAndTownOptimized(yearMonth, town);
         if (subset.isEmpty()) {
             return "No result";
         }
 
-        List<String> prices = readAndUncompressData("resale_price");
-        List<String> areas = readAndUncompressData("floor_area_sqm");
+        double[] prices = readNumericValues("resale_price", subset);
+        double[] areas = readNumericValues("floor_area_sqm", subset);
         
         double minPricePerSqm = Double.MAX_VALUE;
-        for (int index : subset) {
-            double price = Double.parseDouble(prices.get(index));
-            double area = Double.parseDouble(areas.get(index));
+        for (int index = 0; index < prices.length; index++) {
+            double price = prices[index];
+            double area = areas[index];
             double pricePerSqm = price / area;
             
             minPricePerSqm = Math.min(minPricePerSqm, pricePerSqm);
@@ -473,41 +408,53 @@ public class CompressedQueryEngine {
         return resultsAndTimings;
     }
 
-    public Map<String, List<Integer>> getRelevantZonesIndices(String yearMonth, String town) throws IOException {
+    /**
+     * Rows matching the filter, found by reading only the zones whose zone maps allow a match
+     */
+    public SelectionVector getRelevantZonesIndices(String yearMonth, String town) throws IOException {
         String nextMonthStr = CompressionTestMain.getNextMonthStr(yearMonth);
 
+        // Zone maps hold dictionary codes, so without dictionaries the rows are found by a full filter
+        if (!columnStore.isColumnCompressed("month") || !columnStore.isColumnCompressed("town")
+                || !columnStore.isColumnCompressed("floor_area_sqm")) {
+            return getSubsetByMonthAndTownOptimized(yearMonth, town);
+        }
+
         // Check if we can use the optimized path with compressed dictionaries
-        Map<String, Integer> monthDict = loadDictionary("month");
-        Map<String, Integer> townDict = loadDictionary("town");
-        Map<String, Integer> floor_area_sqmDict = loadDictionary("floor_area_sqm");
+        ColumnDictionary monthDict = columnStore.openDictionary("month");
+        ColumnDictionary townDict = columnStore.openDictionary("town");
+        ColumnDictionary floor_area_sqmDict = columnStore.openDictionary("floor_area_sqm");
         
         // Get the indices for our target values
-        Integer monthIndex1 = monthDict.getOrDefault(yearMonth, -1);
-        Integer monthIndex2 = monthDict.getOrDefault(nextMonthStr, -1);
-        Integer townIndex = townDict.get(town);
-        Integer floor_area_sqmIndex = getFloorAreaSqmIndex(floor_area_sqmDict);
-
-        Map<String, List<Integer>> relevantZonesIndices = ZoneMetadata.getCompressedZonesIndicesFromRelevantZones(monthIndex1, monthIndex2, townIndex, floor_area_sqmIndex, columnStore.getDataDirectory());
+        int monthIndex1 = monthDict.getCode(yearMonth);
+        int monthIndex2 = monthDict.getCode(nextMonthStr);
+        int townIndex = townDict.getCode(town);
+        int floor_area_sqmIndex = getFloorAreaSqmIndex(floor_area_sqmDict);
 
-        return relevantZonesIndices;
+        return ZoneMetadata.getCompressedZonesIndicesFromRelevantZones(monthIndex1, monthIndex2, townIndex, floor_area_sqmIndex, columnStore);
     }
 
     public String getMinimumPriceZoneMap(String yearMonth, String town) throws IOException {
-        Map<String, List<Integer>> relevantZonesIndices = getRelevantZonesIndices(yearMonth, town);
+        SelectionVector relevantRows = getRelevantZonesIndices(yearMonth, town);
 
-        if (relevantZonesIndices.get("indices").size() == 0) return "No result";
+        if (relevantRows.isEmpty()) return "No result";
 
-        List<Double> resalePrices = readAndUncompressRelevantDoubleData("resale_price", relevantZonesIndices);
+        double[] resalePrices = readNumericValues("resale_price", relevantRows);
 
-        return String.valueOf(Collections.min(resalePrices));
+        double minPrice = Double.MAX_VALUE;
+        for (double resalePrice : resalePrices) {
+            minPrice = Math.min(minPrice, resalePrice);
+        }
+
+        return String.valueOf(minPrice);
     }
 
     public String getStandardDeviationPriceZoneMap(String yearMonth, String town) throws IOException {
-        Map<String, List<Integer>> relevantZonesIndices = getRelevantZonesIndices(yearMonth, town);
+        SelectionVector relevantRows = getRelevantZonesIndices(yearMonth, town);
 
-        if (relevantZonesIndices.get("indices").size() == 0) return "No result";
+        if (relevantRows.isEmpty()) return "No result";
 
-        List<Double> resalePrices = readAndUncompressRelevantDoubleData("resale_price", relevantZonesIndices);
+        double[] resalePrices = readNumericValues("resale_price", relevantRows);
 
         double sum = 0.0;
         double variance = 0.0;
@@ -515,12 +462,12 @@ public class CompressedQueryEngine {
         for (double i : resalePrices) {
             sum += i; // To calculate mean
         }
-        double mean = sum / resalePrices.size();
+        double mean = sum / resalePrices.length;
 
         for (double i : resalePrices) {
             variance += Math.pow(i - mean, 2);
         }
-        variance /= (resalePrices.size()-1);
+        variance /= (resalePrices.length-1);
         
         // Return standard deviation (square root of variance)
         return String.valueOf(Math.sqrt(variance));
@@ -530,34 +477,34 @@ public class CompressedQueryEngine {
      * Query 3: Calculate average resale price for a specific month and town
      */
     public String getAveragePriceZoneMap(String yearMonth, String town) throws IOException {
-        Map<String, List<Integer>> relevantZonesIndices = getRelevantZonesIndices(yearMonth, town);
+        SelectionVector relevantRows = getRelevantZonesIndices(yearMonth, town);
 
-        if (relevantZonesIndices.get("indices").size() == 0) return "No result";
+        if (relevantRows.isEmpty()) return "No result";
 
-        List<Double> resalePrices = readAndUncompressRelevantDoubleData("resale_price", relevantZonesIndices);
+        double[] resalePrices = readNumericValues("resale_price", relevantRows);
 
         double sum = 0.0;
         for (double i : resalePrices) {
             sum += i; // To calculate mean
         }
-        return String.valueOf(sum / resalePrices.size());
+        return String.valueOf(sum / resalePrices.length);
     }
     
     /**
      * Query 4: Calculate minimum price per square meter for a specific month and town
      */
     public String getMinimumPricePerSquareMeterZoneMap(String yearMonth, String town) throws IOException {
-        Map<String, List<Integer>> relevantZonesIndices = getRelevantZonesIndices(yearMonth, town);
+        SelectionVector relevantRows = getRelevantZonesIndices(yearMonth, town);
 
-        if (relevantZonesIndices.get("indices").size() == 0) return "No result";
+        if (relevantRows.isEmpty()) return "No result";
 
-        List<Double> resalePrices = readAndUncompressRelevantDoubleData("resale_price", relevantZonesIndices);
-        List<Double> areas = readAndUncompressRelevantDoubleData("floor_area_sqm", relevantZonesIndices);
+        double[] resalePrices = readNumericValues("resale_price", relevantRows);
+        double[] areas = readNumericValues("floor_area_sqm", relevantRows);
         
         double minPricePerSqm = Double.MAX_VALUE;
-        for (int index = 0; index < relevantZonesIndices.get("indices").size(); index++) {
-            double price = resalePrices.get(index);
-            double area = areas.get(index);
+        for (int index = 0; index < resalePrices.length; index++) {
+            double price = resalePrices[index];
+            double area = areas[index];
             double pricePerSqm = price / area;
             
             minPricePerSqm = Math.min(minPricePerSqm, pricePerSqm);
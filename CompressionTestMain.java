@@ -33,6 +33,7 @@ public class CompressionTestMain {
             // Parameters for queries
             String yearMonth = "2016-04";
             String town = "CHOA CHU KANG";
+            int loadParallelism = Runtime.getRuntime().availableProcessors();
             
             // 1. Memory Analysis - Load both column stores and compare memory usage
             System.out.println("\n--- MEMORY USAGE ANALYSIS ---");
@@ -44,7 +45,7 @@ public class CompressionTestMain {
             
             NormalColumnStore normalStore = new NormalColumnStore(normalColumnStoreDir);
             System.out.println("Loading data from CSV file into normal column store: " + csvFile.getAbsolutePath());
-            normalStore.loadFromCSV(csvFilePath);
+            normalStore.loadFromCSVParallel(csvFilePath, loadParallelism);
             
             Runtime.getRuntime().gc(); // Request garbage collection after loading
             long normalEndMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
@@ -61,17 +62,32 @@ public class CompressionTestMain {
             long compressedStartMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
             
             CompressedColumnStore compressedStore = new CompressedColumnStore(compressedColumnStoreDir);
-            System.out.println("Loading data from CSV file into compressed column store: " + csvFile.getAbsolutePath());
-            compressedStore.loadFromCSV(csvFilePath);
+            // A store already loaded from this CSV is opened from its manifest instead of ingesting it again
+            long compressedOpenStartTime = System.nanoTime();
+            boolean reopened = compressedStore.loadManifestIfCurrent(csvFilePath);
+            if (reopened) {
+                System.out.println("Opened compressed column store from its manifest in "
+                        + formatTime(System.nanoTime() - compressedOpenStartTime));
+            } else {
+                // Prices are aggregated rather than filtered, so they are packed without a dictionary lookup per row
+                compressedStore.setColumnEncoding("resale_price", ColumnEncoding.FRAME_OF_REFERENCE);
+                System.out.println("Loading data from CSV file into compressed column store: " + csvFile.getAbsolutePath());
+                compressedStore.loadFromCSVParallel(csvFilePath, loadParallelism);
+            }
             
             Runtime.getRuntime().gc(); // Request garbage collection after loading
             long compressedEndMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
             long compressedMemoryUsed = compressedEndMemory - compressedStartMemory;
             
-            System.out.println("Compressed column store created successfully!");
+            System.out.println(reopened ? "Compressed column store opened successfully!" : "Compressed column store created successfully!");
             System.out.println("Compressed column store memory usage: " + formatMemorySize(compressedMemoryUsed));
 
-            compressedStore.generateZoneMapsFromCompressedColumns(800);
+            compressedStore.generateZoneMapsFromCompressedColumns();
+            
+            // Pack the compressed store into a single segment file; its queries read from there
+            compressedStore.writeSegment();
+            CompressedColumnStore segmentStore = new CompressedColumnStore(compressedColumnStoreDir);
+            segmentStore.loadSegment();
             
             // Memory comparison
             double memoryReductionPercent = 100.0 * (normalMemoryUsed - compressedMemoryUsed) / normalMemoryUsed;
@@ -84,7 +100,7 @@ public class CompressionTestMain {
             
             // Initialize query engines
             NormalQueryEngine normalQueryEngine = new NormalQueryEngine(normalStore);
-            CompressedQueryEngine compressedQueryEngine = new CompressedQueryEngine(compressedStore);
+            CompressedQueryEngine compressedQueryEngine = new CompressedQueryEngine(segmentStore);
             
             // Run normal queries and measure time
             System.out.println("\nRunning queries on normal column store...");
@@ -150,12 +166,40 @@ public class CompressionTestMain {
             System.out.println("\nCompressed Column Store with ZoneMap Results:");
             printQueryResults(compressedZoneMapResults);
             
+            // 5. Optional: bulk load a directory of yearly extracts into year partitions
+            if (args.length > 0) {
+                runPartitionedAnalysis(args[0], yearMonth, town, loadParallelism);
+            }
+            
         } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Load every CSV in a directory into year-partitioned stores and run the queries,
+     * scanning only the partitions that can hold the requested months
+     */
+    public static void runPartitionedAnalysis(String csvDirectory, String yearMonth, String town, int parallelism) throws IOException {
+        System.out.println("\n--- PARTITIONED BULK LOAD: " + csvDirectory + " ---");
+        String normalPartitionedDir = "normal_partitioned_store";
+        String compressedPartitionedDir = "compressed_partitioned_store";
+        
+        PartitionedBulkLoader loader = new PartitionedBulkLoader(csvDirectory, "month", parallelism);
+        loader.loadNormal(normalPartitionedDir);
+        loader.loadCompressed(compressedPartitionedDir);
+        
+        PartitionedQueryEngine normalEngine = new PartitionedQueryEngine(normalPartitionedDir);
+        PartitionedQueryEngine compressedEngine = new PartitionedQueryEngine(compressedPartitionedDir);
+        
+        System.out.println("\nPartitioned Normal Column Store with ZoneMap Results:");
+        printQueryResults(normalEngine.runNormalQueries(yearMonth, town, true));
+        
+        System.out.println("\nPartitioned Compressed Column Store with ZoneMap Results:");
+        printQueryResults(compressedEngine.runCompressedQueries(yearMonth, town, true));
+    }
+
     public static void performDetailedMemoryAnalysis(String normalColumnStoreDir, String compressedColumnStoreDir) {
         System.out.println("\n--- DETAILED COLUMN-BY-COLUMN MEMORY ANALYSIS ---");
         
@@ -185,10 +229,19 @@ public class CompressionTestMain {
             // Find corresponding compressed file and dictionary file
             File compressedFile = new File(compressedDir, columnName + ".cmp");
             File dictFile = new File(compressedDir, columnName + ".dict");
+            File binaryFile = new File(compressedDir, columnName + ".bin");
+            File packedFile = new File(compressedDir, columnName + PackedNumericColumn.FILE_SUFFIX);
+            File plainFile = new File(compressedDir, columnName + ".col");
             
             long compressedSize = 0;
             if (compressedFile.exists()) {
                 compressedSize += compressedFile.length();
+            } else if (packedFile.exists()) {
+                compressedSize += packedFile.length();
+            } else if (binaryFile.exists()) {
+                compressedSize += binaryFile.length();
+            } else if (plainFile.exists()) {
+                compressedSize += plainFile.length();
             } else {
                 System.out.println("Warning: No compressed file found for column: " + columnName);
             }
@@ -0,0 +1,357 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Chooses how a column is laid out by weighing every candidate encoding on it. The encoded size
+ * of each candidate is added up block by block over the whole column; its decode speed comes
+ * from per-value costs of the store's decoders recorded from one calibration run (see main())
+ * rather than from timing them at load, so the same data always gets the same layout, whatever
+ * else the machine is doing. The candidate with the lowest cost wins, where a nanosecond of
+ * decoding per value is worth a configurable number of bytes of encoded size. One layout is
+ * chosen per column, since zone maps, filters and row lookups read a column file in one layout.
+ *
+ * Candidates: PLAIN for every column, BIT_PACKED, WORD_PACKED and RUN_LENGTH for columns with
+ * more than one distinct value (numeric columns only up to MAX_NUMERIC_DICTIONARY values),
+ * FRAME_OF_REFERENCE and DELTA for INT and YEAR_MONTH columns, and BLOCK_COMPRESSED for text
+ * columns. Columns the queries filter on only get the dictionary layouts, the ones with zone
+ * maps and packed-code filters. Deflated sizes are estimated from a sample of blocks.
+ */
+public class EncodingAdvisor {
+    public static final int BLOCK_ROWS = 1024;
+    // Decoding 1 ns/value more costs as much as reading a quarter byte/value more
+    public static final double DEFAULT_BYTES_PER_DECODE_NANO = 0.25;
+    // Above this many distinct values a numeric column is packed as numbers, not dictionary codes
+    public static final long MAX_NUMERIC_DICTIONARY = 1024;
+    private static final int SAMPLE_BLOCKS = 8;
+    // Size and repetitions of the calibration run
+    private static final int CALIBRATION_ROWS = 1 << 16;
+    private static final int CALIBRATION_ROUNDS = 30;
+    // Sink for the decoded values of the calibration run
+    private static volatile long calibrationCheck;
+
+    // Decode cost of each layout in ns/value, recorded from one run of main() (see calibrate())
+    private static final double PLAIN_TEXT = 23.97;
+    private static final double PLAIN_BINARY = 1.07;
+    private static final double BIT_PACKED = 0.86;
+    private static final double WORD_PACKED = 2.26;
+    private static final double RUN_LENGTH = 5.36;
+    private static final double FRAME_OF_REFERENCE = 2.80;
+    private static final double DELTA = 3.00;
+    private static final double BLOCK_COMPRESSED = 33.39;
+
+    private final double bytesPerDecodeNano;
+
+    /**
+     * One candidate encoding of a column with its estimated size and decode cost
+     */
+    public static class Candidate {
+        private final ColumnEncoding encoding;
+        private final long encodedBytes;
+        private final double decodeNanosPerValue;
+        private final double cost;
+
+        Candidate(ColumnEncoding encoding, long encodedBytes, double decodeNanosPerValue, double cost) {
+            this.encoding = encoding;
+            this.encodedBytes = encodedBytes;
+            this.decodeNanosPerValue = decodeNanosPerValue;
+            this.cost = cost;
+        }
+
+        public ColumnEncoding getEncoding() {
+            return encoding;
+        }
+
+        public long getEncodedBytes() {
+            return encodedBytes;
+        }
+
+        public double getDecodeNanosPerValue() {
+            return decodeNanosPerValue;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d bytes %.2f ns/value", encoding, encodedBytes, decodeNanosPerValue);
+        }
+    }
+
+    public EncodingAdvisor() {
+        this(DEFAULT_BYTES_PER_DECODE_NANO);
+    }
+
+    public EncodingAdvisor(double bytesPerDecodeNano) {
+        this.bytesPerDecodeNano = bytesPerDecodeNano;
+    }
+
+    /**
+     * The cheapest encoding for the column; ties go to the smaller one
+     */
+    public Candidate advise(ColumnType type, List<String> values, long distinctEstimate) throws IOException {
+        return advise(type, values, distinctEstimate, false);
+    }
+
+    /**
+     * The cheapest encoding for the column, among the dictionary layouts only if it is filtered on
+     */
+    public Candidate advise(ColumnType type, List<String> values, long distinctEstimate, boolean filtered) throws IOException {
+        Candidate best = null;
+        for (Candidate candidate : evaluate(type, values, distinctEstimate, filtered)) {
+            if (best == null || candidate.cost < best.cost
+                    || (candidate.cost == best.cost && candidate.encodedBytes < best.encodedBytes)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Size, decode speed and cost of every candidate encoding of the column
+     */
+    public List<Candidate> evaluate(ColumnType type, List<String> values, long distinctEstimate) throws IOException {
+        return evaluate(type, values, distinctEstimate, false);
+    }
+
+    /**
+     * Size, decode speed and cost of every candidate encoding of the column; a filtered column
+     * only has the dictionary layouts as candidates, whatever its cardinality
+     */
+    public List<Candidate> evaluate(ColumnType type, List<String> values, long distinctEstimate, boolean filtered) throws IOException {
+        List<ColumnEncoding> encodings = new ArrayList<>();
+        if (!filtered) {
+            encodings.add(ColumnEncoding.PLAIN);
+        }
+        if (filtered || (distinctEstimate > 1 && (!type.isNumeric() || distinctEstimate <= MAX_NUMERIC_DICTIONARY))) {
+            encodings.add(ColumnEncoding.BIT_PACKED);
+            encodings.add(ColumnEncoding.WORD_PACKED);
+            encodings.add(ColumnEncoding.RUN_LENGTH);
+        }
+        long[] longValues = null;
+        if (!filtered && PackedNumericColumn.canPack(type)) {
+            encodings.add(ColumnEncoding.FRAME_OF_REFERENCE);
+            encodings.add(ColumnEncoding.DELTA);
+            longValues = parseLongs(type, values);
+        }
+        if (!filtered && !type.hasBinaryColumn()) {
+            encodings.add(ColumnEncoding.BLOCK_COMPRESSED);
+        }
+
+        int bitsPerValue = Math.max(1, CompressedColumnStore.bitsNeeded((int) Math.min(Integer.MAX_VALUE, distinctEstimate)));
+        long[] sizes = blockSizes(type, values, longValues, bitsPerValue, distinctEstimate, encodings);
+
+        List<String> sample = sample(values);
+        int blockCompressed = encodings.indexOf(ColumnEncoding.BLOCK_COMPRESSED);
+        if (blockCompressed >= 0 && !sample.isEmpty()) {
+            // Deflating the whole column costs as much as storing it, so the sample's ratio is scaled up
+            sizes[blockCompressed] = (long) ((double) BlockCompressedColumn.encode(sample).length * values.size() / sample.size());
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < encodings.size(); i++) {
+            ColumnEncoding encoding = encodings.get(i);
+            double nanosPerValue = decodeNanosPerValue(type, encoding);
+            double cost = sizes[i] + nanosPerValue * values.size() * bytesPerDecodeNano;
+            candidates.add(new Candidate(encoding, sizes[i], nanosPerValue, cost));
+        }
+        return candidates;
+    }
+
+    /**
+     * Encoded size of each candidate, summed over the column's blocks, plus the dictionary
+     * for the dictionary encodings
+     */
+    private static long[] blockSizes(ColumnType type, List<String> values, long[] longValues, int bitsPerValue,
+                                     long distinctEstimate, List<ColumnEncoding> encodings) {
+        long plainBytes = 0;
+        long textBytes = 0;
+        long packedBytes = 8;
+        long runBytes = 16;
+        for (int from = 0; from < values.size(); from += BLOCK_ROWS) {
+            int to = Math.min(from + BLOCK_ROWS, values.size());
+            long blockText = 0;
+            int blockRuns = 0;
+            for (int row = from; row < to; row++) {
+                String value = values.get(row);
+                blockText += value.length();
+                if (row == 0 || !value.equals(values.get(row - 1))) {
+                    blockRuns++;
+                }
+            }
+            textBytes += blockText;
+            plainBytes += type.hasBinaryColumn() ? (long) (to - from) * BinaryColumnWriter.VALUE_BYTES : blockText + (to - from);
+            packedBytes += ((long) (to - from) * bitsPerValue + 7) / 8;
+            runBytes += (long) blockRuns * 8;
+        }
+
+        // Offsets table plus the distinct values, at the column's average value length
+        long averageLength = values.isEmpty() ? 0 : textBytes / values.size();
+        long dictionaryBytes = 16 + 4 * (distinctEstimate + 1) + distinctEstimate * averageLength;
+
+        long[] sizes = new long[encodings.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            switch (encodings.get(i)) {
+                case PLAIN:
+                    sizes[i] = plainBytes;
+                    break;
+                case BIT_PACKED:
+                    sizes[i] = packedBytes + dictionaryBytes;
+                    break;
+                case WORD_PACKED:
+                    sizes[i] = WordPackedColumn.encodedBytes(values.size(), bitsPerValue, CompressedColumnStore.ZONE_SIZE) + dictionaryBytes;
+                    break;
+                case RUN_LENGTH:
+                    sizes[i] = runBytes + dictionaryBytes;
+                    break;
+                case BLOCK_COMPRESSED:
+                    // Estimated from the sample by the caller
+                    break;
+                default:
+                    sizes[i] = PackedNumericColumn.encodedBytes(longValues, encodings.get(i));
+                    break;
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Blocks spread evenly over the column, so clustered columns keep their runs in the sample
+     */
+    private static List<String> sample(List<String> values) {
+        int blockCount = (values.size() + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        if (blockCount <= SAMPLE_BLOCKS) {
+            return values;
+        }
+        List<String> sample = new ArrayList<>(SAMPLE_BLOCKS * BLOCK_ROWS);
+        for (int i = 0; i < SAMPLE_BLOCKS; i++) {
+            int from = (int) ((long) i * blockCount / SAMPLE_BLOCKS) * BLOCK_ROWS;
+            sample.addAll(values.subList(from, Math.min(from + BLOCK_ROWS, values.size())));
+        }
+        return sample;
+    }
+
+    /**
+     * Cost of decoding one value with the store's decoder for an encoding, in nanoseconds, as
+     * recorded by one run of main(). Only the ratios between them matter; they are kept fixed
+     * so the choice never depends on how busy the machine is when a store is loaded.
+     */
+    static double decodeNanosPerValue(ColumnType type, ColumnEncoding encoding) {
+        switch (encoding) {
+            case PLAIN:
+                // Text is split into lines and turned into Strings, binary values are read in place
+                return type.hasBinaryColumn() ? PLAIN_BINARY : PLAIN_TEXT;
+            case BIT_PACKED:
+                return BIT_PACKED;
+            case WORD_PACKED:
+                return WORD_PACKED;
+            case RUN_LENGTH:
+                return RUN_LENGTH;
+            case FRAME_OF_REFERENCE:
+                return FRAME_OF_REFERENCE;
+            case DELTA:
+                return DELTA;
+            case BLOCK_COMPRESSED:
+                return BLOCK_COMPRESSED;
+            default:
+                return 0;
+        }
+    }
+
+    private interface Decoder {
+        // Returns something computed from the decoded values, so the work cannot be skipped
+        long decode() throws IOException;
+    }
+
+    /**
+     * Time the store's decoder for every layout on the same synthetic column: numbers with 64
+     * distinct values in runs of 1 to 8 rows. Each decoder's best of CALIBRATION_ROUNDS passes
+     * is kept, in nanoseconds per value, under the name of its constant.
+     */
+    static Map<String, Double> calibrate() throws IOException {
+        Random random = new Random(7);
+        int[] codes = new int[CALIBRATION_ROWS];
+        long[] longs = new long[CALIBRATION_ROWS];
+        List<String> values = new ArrayList<>(CALIBRATION_ROWS);
+        for (int row = 0; row < CALIBRATION_ROWS; ) {
+            int code = random.nextInt(64);
+            for (int run = 1 + random.nextInt(8); run > 0 && row < CALIBRATION_ROWS; run--, row++) {
+                codes[row] = code;
+                longs[row] = 1000 + 37L * code;
+                values.add(Long.toString(longs[row]));
+            }
+        }
+        int bitsPerValue = CompressedColumnStore.bitsNeeded(64);
+
+        ByteBuffer text = ByteBuffer.wrap((String.join("\n", values) + "\n").getBytes(StandardCharsets.UTF_8));
+        RowOffsetIndex textIndex = RowOffsetIndex.build(text);
+        int[] allRows = new int[CALIBRATION_ROWS];
+        for (int row = 0; row < allRows.length; row++) {
+            allRows[row] = row;
+        }
+        ByteBuffer binary = ByteBuffer.allocate(CALIBRATION_ROWS * BinaryColumnWriter.VALUE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (long value : longs) {
+            binary.putLong(value);
+        }
+        ByteBuffer bitPacked = ByteBuffer.wrap(CompressedColumnStore.packCodes(codes, bitsPerValue));
+        ByteBuffer wordPacked = ByteBuffer.wrap(WordPackedColumn.encode(codes, bitsPerValue, CompressedColumnStore.ZONE_SIZE));
+        ByteArrayOutputStream runBytes = new ByteArrayOutputStream();
+        RunLengthColumn.encode(codes, bitsPerValue).write(runBytes);
+        ByteBuffer runs = ByteBuffer.wrap(runBytes.toByteArray());
+        ByteBuffer frameOfReference = ByteBuffer.wrap(PackedNumericColumn.encode(longs, ColumnEncoding.FRAME_OF_REFERENCE).array());
+        ByteBuffer delta = ByteBuffer.wrap(PackedNumericColumn.encode(longs, ColumnEncoding.DELTA).array());
+        ByteBuffer blocks = ByteBuffer.wrap(BlockCompressedColumn.encode(values));
+
+        Map<String, Double> nanos = new LinkedHashMap<>();
+        nanos.put("PLAIN_TEXT", time(() -> textIndex.getValues(text, allRows).size()));
+        nanos.put("PLAIN_BINARY", time(() -> {
+            MappedNumericColumn column = new MappedNumericColumn(binary, ColumnType.INT);
+            long sum = 0;
+            for (int row = 0; row < CALIBRATION_ROWS; row++) {
+                sum += column.getLong(row);
+            }
+            return sum;
+        }));
+        nanos.put("BIT_PACKED", time(() -> CompressedColumnStore.decodeCodes(bitPacked, ColumnEncoding.BIT_PACKED).length));
+        nanos.put("WORD_PACKED", time(() -> CompressedColumnStore.decodeCodes(wordPacked, ColumnEncoding.WORD_PACKED).length));
+        nanos.put("RUN_LENGTH", time(() -> CompressedColumnStore.decodeCodes(runs, ColumnEncoding.RUN_LENGTH).length));
+        nanos.put("FRAME_OF_REFERENCE", time(() -> new PackedNumericColumn(frameOfReference, ColumnType.INT).decode().length));
+        nanos.put("DELTA", time(() -> new PackedNumericColumn(delta, ColumnType.INT).decode().length));
+        nanos.put("BLOCK_COMPRESSED", time(() -> new BlockCompressedColumn(blocks).decode().size()));
+        return nanos;
+    }
+
+    private static double time(Decoder decoder) throws IOException {
+        long best = Long.MAX_VALUE;
+        // The first rounds only warm up the JIT
+        for (int round = 0; round < 2 * CALIBRATION_ROUNDS; round++) {
+            long start = System.nanoTime();
+            calibrationCheck += decoder.decode();
+            long elapsed = System.nanoTime() - start;
+            if (round >= CALIBRATION_ROUNDS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return (double) best / CALIBRATION_ROWS;
+    }
+
+    /**
+     * Calibrate the decoders on this machine and print the constants to record in this class
+     */
+    public static void main(String[] args) throws IOException {
+        for (Map.Entry<String, Double> entry : calibrate().entrySet()) {
+            System.out.println(String.format(Locale.ROOT, "    private static final double %s = %.2f;", entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private static long[] parseLongs(ColumnType type, List<String> values) {
+        long[] longs = new long[values.size()];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = CompressedColumnStore.parseLong(type, values.get(i));
+        }
+        return longs;
+    }
+}
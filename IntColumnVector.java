@@ -0,0 +1,103 @@
+import java.util.*;
+
+/**
+ * Growable column of primitive ints, for row ids and dictionary codes on the scan paths, so
+ * a scan stores each value in an int[] slot instead of allocating an Integer for it.
+ */
+public class IntColumnVector {
+    private int[] values;
+    private int size;
+
+    public IntColumnVector() {
+        this(16);
+    }
+
+    public IntColumnVector(int capacity) {
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    private IntColumnVector(int[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * A vector over the given values, without copying them
+     */
+    public static IntColumnVector wrap(int[] values) {
+        return new IntColumnVector(values, values.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return values[index];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Add count values of the array, starting at from
+     */
+    public void addAll(int[] source, int from, int count) {
+        if (size + count > values.length) {
+            values = Arrays.copyOf(values, Math.max(size + count, size * 2));
+        }
+        System.arraycopy(source, from, values, size, count);
+        size += count;
+    }
+
+    public void addAll(IntColumnVector other) {
+        addAll(other.values, 0, other.size);
+    }
+
+    /**
+     * The values as an array of exactly size() elements
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Equal to another vector holding the same values in the same order, like two lists
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IntColumnVector)) {
+            return false;
+        }
+        IntColumnVector other = (IntColumnVector) o;
+        return Arrays.equals(values, 0, size, other.values, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + values[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,64 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Read-only memory-mapped view of a fixed-width binary column (see BinaryColumnWriter).
+ * Values are read straight from the page cache as primitives, with no parsing or boxing.
+ * A single mapping covers columns of up to 2 GB (268 million rows).
+ */
+public class MappedNumericColumn implements NumericColumn {
+    private final ByteBuffer buffer;
+    private final ColumnType type;
+    private final int rowCount;
+
+    public MappedNumericColumn(Path binaryPath, ColumnType type) throws IOException {
+        this(map(binaryPath), type);
+    }
+
+    /**
+     * Read values from bytes that are already mapped, such as a slice of a segment file
+     */
+    public MappedNumericColumn(ByteBuffer buffer, ColumnType type) throws IOException {
+        if (!type.hasBinaryColumn()) {
+            throw new IOException("Column type " + type + " has no binary column");
+        }
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.type = type;
+        this.rowCount = buffer.capacity() / BinaryColumnWriter.VALUE_BYTES;
+    }
+
+    private static MappedByteBuffer map(Path binaryPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(binaryPath, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary column too large to map: " + binaryPath);
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return type;
+    }
+
+    @Override
+    public long getLong(int row) {
+        return buffer.getLong(row * BinaryColumnWriter.VALUE_BYTES);
+    }
+
+    @Override
+    public double getDouble(int row) {
+        int offset = row * BinaryColumnWriter.VALUE_BYTES;
+        return type == ColumnType.DOUBLE ? buffer.getDouble(offset) : buffer.getLong(offset);
+    }
+}
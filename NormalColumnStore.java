@@ -1,12 +1,30 @@
 // ColumnStore.java
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NormalColumnStore {
+    // Number of bytes each column writer buffers (off-heap) before writing a block to disk
+    private static final int DEFAULT_FLUSH_BUFFER_SIZE = ColumnFileWriter.DEFAULT_BUFFER_SIZE;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    // Rows per zone for the zone maps built while loading
+    private static final int DEFAULT_ZONE_CHUNK_SIZE = 800;
+
     private String dataDirectory;
     private List<String> columnNames;
+    private TableSchema schema;
+    private int zoneChunkSize = DEFAULT_ZONE_CHUNK_SIZE;
+    // Zone size of the zone maps written by the last load, 0 if none were written
+    private int loadedZoneChunkSize;
+    // Whether column files are forced to disk before they are moved into place
+    private boolean syncOnWrite;
+    // Row indexes of the column files, opened on first use and replaced when a load writes them
+    private final Map<String, RowOffsetIndex> rowIndexes = new ConcurrentHashMap<>();
     
     public NormalColumnStore(String dataDirectory) {
         this.dataDirectory = dataDirectory;
@@ -22,165 +40,448 @@ public class NormalColumnStore {
     public String getDataDirectory() {
         return dataDirectory;
     }
+
+    public void setSyncOnWrite(boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    /**
+     * Set the number of rows per zone for the zone maps that the loaders build while writing
+     */
+    public void setZoneChunkSize(int zoneChunkSize) {
+        this.zoneChunkSize = zoneChunkSize;
+    }
     
     public void loadFromCSV(String csvFilePath) throws IOException {
+        loadFromCSVStreaming(csvFilePath, DEFAULT_FLUSH_BUFFER_SIZE);
+    }
+
+    /**
+     * Stream the CSV straight into the column files, one buffered writer per column.
+     * Only a fixed-size buffer per column is held on the heap, so memory use does not
+     * grow with the size of the CSV.
+     */
+    public void loadFromCSVStreaming(String csvFilePath, int flushBufferSize) throws IOException {
         Path csvPath = Paths.get(csvFilePath);
         if (!Files.exists(csvPath)) {
             throw new IOException("CSV file does not exist: " + csvFilePath);
         }
 
-        Map<String, List<String>> columnValuesMap = new HashMap<>();
+        long startTime = System.nanoTime();
+        long rowCount = 0;
+        ColumnFileWriter[] writers = null;
+        BinaryColumnWriter[] binaryWriters = null;
 
-        try (BufferedReader reader = Files.newBufferedReader(csvPath)) {
-            // Read the header to get column names
-            String header = reader.readLine();
-            if (header == null) {
-                throw new IOException("CSV file is empty");
-            }
+        // One byte-level pass to decide the column types before anything is written
+        schema = TableSchema.inferFromCSV(csvPath);
+        columnNames = schema.getColumnNames();
+        schema.save(dataDirectory);
 
-            String[] headers = header.split(",");
-            columnNames = Arrays.asList(headers);
+        try (CSVTokenizer tokenizer = new CSVTokenizer(csvPath)) {
+            // Skip the header
+            tokenizer.nextRecord();
 
-            // Initialize the metadata and column storage
-            for (String columnName : columnNames) {
-                columnValuesMap.put(columnName, new ArrayList<>());
-            }
+            writers = openColumnWriters(flushBufferSize);
+            binaryWriters = openBinaryWriters(flushBufferSize);
+            boolean[] numeric = numericColumns();
+            ZoneMapBuilder[] zoneBuilders = openZoneBuilders(numeric);
 
             // Process each row
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                String[] values = line.split(",");
-
+            while (tokenizer.nextRecord()) {
                 // Make sure we have the right number of values
-                if (values.length != columnNames.size()) {
-                    System.err.println("Warning: Row has incorrect number of values: " + line);
+                if (tokenizer.getFieldCount() != columnNames.size()) {
+                    System.err.println("Warning: Row has incorrect number of values: " + tokenizer.getRecordString());
                     continue;
                 }
 
-                // Process each column in the row
-                for (int i = 0; i < values.length; i++) {
-                    String columnName = columnNames.get(i);
-                    List<String> columnValues = columnValuesMap.get(columnName);
+                // Copy each field's bytes straight to its column file, updating its zone as we go
+                for (int i = 0; i < writers.length; i++) {
+                    long valueBytes = tokenizer.copyField(i, writers[i]) + LINE_SEPARATOR.length;
+                    writers[i].write(LINE_SEPARATOR);
+                    if (numeric[i]) {
+                        zoneBuilders[i].addNumber(tokenizer.getDouble(i), valueBytes);
+                    } else {
+                        zoneBuilders[i].addText(tokenizer.getString(i), valueBytes);
+                    }
+                    if (binaryWriters[i] != null) {
+                        binaryWriters[i].writeField(tokenizer, i);
+                    }
+                }
+                rowCount++;
+            }
+
+            commitColumnWriters(writers, binaryWriters);
+            saveZoneMaps(zoneBuilders, numeric);
+        } catch (IOException | RuntimeException e) {
+            rollbackColumnWriters(writers, binaryWriters, e);
+            throw e;
+        } finally {
+            closeColumnWriters(writers);
+            closeColumnWriters(binaryWriters);
+        }
+        writeRowIndexes(false);
+
+        reportThroughput(rowCount, startTime);
+    }
+
+    /**
+     * Parse the CSV on a ForkJoinPool and write the parsed chunks to the column files in row order
+     */
+    public void loadFromCSVParallel(String csvFilePath, int parallelism) throws IOException {
+        long startTime = System.nanoTime();
+        long[] rowCount = new long[1];
+
+        ParallelCSVLoader loader = new ParallelCSVLoader(csvFilePath, parallelism);
+        schema = loader.inferSchema();
+        columnNames = schema.getColumnNames();
+        schema.save(dataDirectory);
+
+        ColumnFileWriter[] writers = openColumnWriters(DEFAULT_FLUSH_BUFFER_SIZE);
+        BinaryColumnWriter[] binaryWriters = null;
+        boolean[] numeric = numericColumns();
+        ZoneMapBuilder[] zoneBuilders = openZoneBuilders(numeric);
+        try {
+            binaryWriters = openBinaryWriters(DEFAULT_FLUSH_BUFFER_SIZE);
+            BinaryColumnWriter[] chunkBinaryWriters = binaryWriters;
+            loader.forEachChunk(chunk -> {
+                for (int i = 0; i < writers.length; i++) {
+                    for (String value : chunk.getColumn(i)) {
+                        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                        writers[i].write(bytes);
+                        writers[i].write(LINE_SEPARATOR);
+                        if (numeric[i]) {
+                            zoneBuilders[i].addNumber(Double.parseDouble(value), bytes.length + LINE_SEPARATOR.length);
+                        } else {
+                            zoneBuilders[i].addText(value, bytes.length + LINE_SEPARATOR.length);
+                        }
+                    }
+                    if (chunkBinaryWriters[i] != null) {
+                        for (String value : chunk.getColumn(i)) {
+                            chunkBinaryWriters[i].writeValue(value);
+                        }
+                    }
+                }
+                rowCount[0] += chunk.getRowCount();
+            });
+
+            commitColumnWriters(writers, binaryWriters);
+            saveZoneMaps(zoneBuilders, numeric);
+        } catch (IOException | RuntimeException e) {
+            rollbackColumnWriters(writers, binaryWriters, e);
+            throw e;
+        } finally {
+            closeColumnWriters(writers);
+            closeColumnWriters(binaryWriters);
+        }
+        writeRowIndexes(false);
+
+        reportThroughput(rowCount[0], startTime);
+    }
+
+    // Open one writer per column, each with its own fixed-size flush buffer
+    private ColumnFileWriter[] openColumnWriters(int flushBufferSize) throws IOException {
+        ColumnFileWriter[] writers = new ColumnFileWriter[columnNames.size()];
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                Path columnFilePath = Paths.get(dataDirectory, columnNames.get(i) + ".col");
+                writers[i] = new ColumnFileWriter(columnFilePath, flushBufferSize, false, syncOnWrite);
+            }
+        } catch (IOException e) {
+            closeColumnWriters(writers);
+            throw e;
+        }
+        return writers;
+    }
 
-                    // Add the value to the respective column's list of values
-                    columnValues.add(values[i]);
+    // Open a fixed-width binary writer for every non-string column (null for string columns)
+    private BinaryColumnWriter[] openBinaryWriters(int flushBufferSize) throws IOException {
+        BinaryColumnWriter[] writers = new BinaryColumnWriter[columnNames.size()];
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                ColumnType type = schema.getType(columnNames.get(i));
+                if (type.hasBinaryColumn()) {
+                    Path binaryPath = TableSchema.binaryColumnPath(dataDirectory, columnNames.get(i));
+                    writers[i] = new BinaryColumnWriter(new ColumnFileWriter(binaryPath, flushBufferSize, false, syncOnWrite), type);
                 }
+            }
+        } catch (IOException e) {
+            closeColumnWriters(writers);
+            throw e;
+        }
+        return writers;
+    }
+
+    // Whether each column's zones compare numerically
+    private boolean[] numericColumns() {
+        boolean[] numeric = new boolean[columnNames.size()];
+        for (int i = 0; i < numeric.length; i++) {
+            numeric[i] = schema.getType(columnNames.get(i)).isNumeric();
+        }
+        return numeric;
+    }
+
+    private ZoneMapBuilder[] openZoneBuilders(boolean[] numeric) {
+        ZoneMapBuilder[] builders = new ZoneMapBuilder[columnNames.size()];
+        for (int i = 0; i < builders.length; i++) {
+            builders[i] = ZoneMapBuilder.forColumn(numeric[i], zoneChunkSize, 0);
+        }
+        return builders;
+    }
+
+    private void saveZoneMaps(ZoneMapBuilder[] zoneBuilders, boolean[] numeric) throws IOException {
+        Map<String, List<ZoneMetadata>> columnZoneMaps = new HashMap<>();
+        Map<String, Boolean> allDoublesList = new HashMap<>();
+        for (int i = 0; i < zoneBuilders.length; i++) {
+            columnZoneMaps.put(columnNames.get(i), zoneBuilders[i].finish());
+            allDoublesList.put(columnNames.get(i), numeric[i]);
+        }
+        saveColumnMetadata(columnZoneMaps, allDoublesList, zoneChunkSize);
+        loadedZoneChunkSize = zoneChunkSize;
+    }
 
+    // Move every finished column file into place; on a failure the caller rolls them all back
+    private void commitColumnWriters(ColumnFileWriter[] writers, BinaryColumnWriter[] binaryWriters) throws IOException {
+        for (ColumnFileWriter writer : writers) {
+            writer.commit();
+        }
+        for (BinaryColumnWriter writer : binaryWriters) {
+            if (writer != null) {
+                writer.commit();
             }
+        }
+    }
 
-            // Handle the last remaining values for each column
-            for (String columnName : columnNames) {
-                List<String> columnValues = columnValuesMap.get(columnName);
-                if (!columnValues.isEmpty()) {
-                    saveColumnData(columnValues, columnName);
+    /**
+     * Index where the rows start in every column file. After an append the saved indexes
+     * are extended from their last checkpoint instead of rescanning the whole file.
+     */
+    private void writeRowIndexes(boolean appended) throws IOException {
+        for (String columnName : columnNames) {
+            Path columnFile = columnPath(columnName);
+            if (appended) {
+                rowIndexes.put(columnName, RowOffsetIndex.open(columnFile, RowOffsetIndex.map(columnFile)));
+            } else {
+                rowIndexes.put(columnName, RowOffsetIndex.write(columnFile));
+            }
+        }
+    }
+
+    /**
+     * Row index of a column, kept once opened so each fetch does not read the .idx file again
+     */
+    private RowOffsetIndex openRowOffsetIndex(String columnName, ByteBuffer columnData) throws IOException {
+        RowOffsetIndex index = rowIndexes.get(columnName);
+        if (index == null || !index.isFor(columnData)) {
+            index = RowOffsetIndex.open(columnPath(columnName), columnData);
+            rowIndexes.put(columnName, index);
+        }
+        return index;
+    }
+
+    // Undo every writer after a failed load or append; failures to undo are added to the first one
+    private void rollbackColumnWriters(ColumnFileWriter[] writers, BinaryColumnWriter[] binaryWriters, Exception failure) {
+        for (int i = 0; writers != null && i < writers.length; i++) {
+            try {
+                if (writers[i] != null) {
+                    writers[i].rollback();
                 }
+            } catch (IOException e) {
+                failure.addSuppressed(e);
             }
+        }
+        for (int i = 0; binaryWriters != null && i < binaryWriters.length; i++) {
+            try {
+                if (binaryWriters[i] != null) {
+                    binaryWriters[i].rollback();
+                }
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
 
+    private void closeColumnWriters(Closeable[] writers) throws IOException {
+        if (writers == null) {
+            return;
         }
+        for (Closeable writer : writers) {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    private void reportThroughput(long rowCount, long startTime) {
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        System.out.println(String.format("Loaded %d rows in %.2f s (%.0f rows/sec)", rowCount, seconds, rowCount / Math.max(seconds, 1e-9)));
     }
 
+    /**
+     * Write the zone maps for the given zone size. The loaders already write them while
+     * loading, so the column files are only re-read when a different zone size is asked for.
+     */
     public void generateZoneMapsFromColumns(int chunkSize) throws IOException {
+        if (chunkSize == loadedZoneChunkSize) {
+            return;
+        }
+
         Map<String, List<ZoneMetadata>> columnZoneMaps = new HashMap<>();
         Map<String, Boolean> allDoublesList = new HashMap<>();
 
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(dataDirectory), "*.col")) {
             for (Path columnFile : stream) {
                 String columnName = columnFile.getFileName().toString().replace(".col", "");
-                List<ZoneMetadata> zoneMetadataList = new ArrayList<>();
-        
-                boolean allDoubles = true;
-        
-                // First pass: determine if all lines are parsable as doubles
-                try (BufferedReader reader = Files.newBufferedReader(columnFile)) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        if (!isDouble(line)) {
-                            allDoubles = false;
-                            break;
-                        }
-                    }
-                }
-        
-                // Second pass: process in chunks and collect zone metadata
-                try (BufferedReader reader = Files.newBufferedReader(columnFile)) {
-                    String line;
-                    int lineCount = 0;
-                    Object min = null, max = null;
-                    long byteStart = 0;
-                    long byteEnd = 0;
-        
-                    while ((line = reader.readLine()) != null) {
-                        lineCount++;
-                        long lineBytes = line.getBytes(StandardCharsets.UTF_8).length + System.lineSeparator().getBytes().length;
-                        byteEnd += lineBytes;
-        
-                        if (allDoubles) {
-                            Double value = Double.parseDouble(line);
-                            if (min == null || ((Double) min) > value) min = value;
-                            if (max == null || ((Double) max) < value) max = value;
-                        } else {
-                            if (min == null || min.toString().compareTo(line) > 0) min = line;
-                            if (max == null || max.toString().compareTo(line) < 0) max = line;
-                        }
-        
-                        if (lineCount % chunkSize == 0) {
-                            if (allDoubles) {
-                                zoneMetadataList.add(new ZoneMetadata((Double) min, (Double) max, byteStart, byteEnd));
-                            } else {
-                                zoneMetadataList.add(new ZoneMetadata(min.toString(), max.toString(), byteStart, byteEnd));
-                            }
-                            byteStart = byteEnd;
-                            min = max = null;
-                        }
-                    }
-        
-                    // Final chunk
-                    if (min != null && max != null) {
-                        if (allDoubles) {
-                            zoneMetadataList.add(new ZoneMetadata((Double) min, (Double) max, byteStart, byteEnd));
-                        } else {
-                            zoneMetadataList.add(new ZoneMetadata(min.toString(), max.toString(), byteStart, byteEnd));
-                        }
-                    }
-        
-                    columnZoneMaps.put(columnName, zoneMetadataList);
-                    allDoublesList.put(columnName, allDoubles);
-                }
+                // The schema already knows whether the column is numeric
+                boolean allDoubles = getSchema().getType(columnName).isNumeric();
+
+                columnZoneMaps.put(columnName, buildZones(columnFile, 0, allDoubles, chunkSize));
+                allDoublesList.put(columnName, allDoubles);
             }
         }
 
-        saveColumnMetadata(columnZoneMaps, allDoublesList);
+        saveColumnMetadata(columnZoneMaps, allDoublesList, chunkSize);
     }
 
-    // Utility method to check if a string is a valid Double
-    private boolean isDouble(String s) {
-        try {
-            Double.parseDouble(s);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+    /**
+     * Split a column file into zones of chunkSize rows, starting at the given byte offset
+     */
+    private List<ZoneMetadata> buildZones(Path columnFile, long byteStart, boolean allDoubles, int chunkSize) throws IOException {
+        ZoneMapBuilder zones = ZoneMapBuilder.forColumn(allDoubles, chunkSize, byteStart);
+
+        try (FileChannel channel = FileChannel.open(columnFile, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel.position(byteStart)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long lineBytes = line.getBytes(StandardCharsets.UTF_8).length + LINE_SEPARATOR.length;
+                if (allDoubles) {
+                    zones.addNumber(Double.parseDouble(line), lineBytes);
+                } else {
+                    zones.addText(line, lineBytes);
+                }
+            }
         }
+
+        return zones.finish();
     }
 
-    private void saveColumnData(List<String> columnValues, String columnName) throws IOException {
-        Path columnFilePath = Paths.get(dataDirectory, columnName + ".col");
-        try (BufferedWriter writer = Files.newBufferedWriter(columnFilePath)) {
-            // Write each value for the column to its file
-            for (String value : columnValues) {
-                writer.write(value);
-                writer.newLine();
+    /**
+     * Append the rows of a CSV with the same header to the existing column files.
+     * Only the tail zone of each zone map is recomputed, with the zone size the map records;
+     * earlier zones are full and unchanged.
+     */
+    public void appendFromCSV(String csvFilePath) throws IOException {
+        Path csvPath = Paths.get(csvFilePath);
+        if (!Files.exists(csvPath)) {
+            throw new IOException("CSV file does not exist: " + csvFilePath);
+        }
+
+        TableSchema storeSchema = getSchema();
+        columnNames = storeSchema.getColumnNames();
+        long startTime = System.nanoTime();
+        long rowCount = 0;
+
+        // Validate the header and the value types before touching any column file
+        try (CSVTokenizer tokenizer = new CSVTokenizer(csvPath)) {
+            if (!tokenizer.nextRecord()) {
+                throw new IOException("CSV file is empty");
             }
+            List<String> headers = new ArrayList<>();
+            for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+                headers.add(tokenizer.getString(i));
+            }
+            if (!headers.equals(columnNames)) {
+                throw new IOException("CSV columns " + headers + " do not match the store columns " + columnNames);
+            }
+
+            ColumnType[] newTypes = TableSchema.inferTypes(tokenizer, columnNames.size());
+            for (int i = 0; i < newTypes.length; i++) {
+                ColumnType storeType = storeSchema.getType(columnNames.get(i));
+                if (newTypes[i] != null && newTypes[i].widen(storeType) != storeType) {
+                    throw new IOException("New values of column " + columnNames.get(i) + " are " + newTypes[i]
+                            + " but the store has " + storeType + "; reload the store instead");
+                }
+            }
+        }
+
+        // Remember where every column ended so its tail zone can be recomputed
+        Map<String, List<ZoneMetadata>> existingZones = new HashMap<>();
+        Map<String, Integer> zoneRows = new HashMap<>();
+        for (String columnName : columnNames) {
+            if (Files.exists(Paths.get(dataDirectory, columnName + "_zone_map.txt"))) {
+                existingZones.put(columnName, ZoneMetadata.readZoneMetadata(columnName, dataDirectory));
+                zoneRows.put(columnName, ZoneMetadata.readZoneRows(columnName, dataDirectory));
+            }
+        }
+
+        ColumnFileWriter[] writers = new ColumnFileWriter[columnNames.size()];
+        BinaryColumnWriter[] binaryWriters = new BinaryColumnWriter[columnNames.size()];
+        try (CSVTokenizer tokenizer = new CSVTokenizer(csvPath)) {
+            for (int i = 0; i < writers.length; i++) {
+                String columnName = columnNames.get(i);
+                Path columnFilePath = Paths.get(dataDirectory, columnName + ".col");
+                writers[i] = new ColumnFileWriter(columnFilePath, DEFAULT_FLUSH_BUFFER_SIZE, true, syncOnWrite);
+                ColumnType type = storeSchema.getType(columnName);
+                if (type.hasBinaryColumn()) {
+                    Path binaryPath = TableSchema.binaryColumnPath(dataDirectory, columnName);
+                    binaryWriters[i] = new BinaryColumnWriter(new ColumnFileWriter(binaryPath, DEFAULT_FLUSH_BUFFER_SIZE, true, syncOnWrite), type);
+                }
+            }
+
+            // Skip the header
+            tokenizer.nextRecord();
+            while (tokenizer.nextRecord()) {
+                if (tokenizer.getFieldCount() != columnNames.size()) {
+                    System.err.println("Warning: Row has incorrect number of values: " + tokenizer.getRecordString());
+                    continue;
+                }
+                for (int i = 0; i < writers.length; i++) {
+                    tokenizer.copyField(i, writers[i]);
+                    writers[i].write(LINE_SEPARATOR);
+                    if (binaryWriters[i] != null) {
+                        binaryWriters[i].writeField(tokenizer, i);
+                    }
+                }
+                rowCount++;
+            }
+            commitColumnWriters(writers, binaryWriters);
+        } catch (IOException | RuntimeException e) {
+            // Cut every column back, including any already committed, so they keep the same length
+            rollbackColumnWriters(writers, binaryWriters, e);
+            throw e;
+        } finally {
+            closeColumnWriters(writers);
+            closeColumnWriters(binaryWriters);
+        }
+        writeRowIndexes(true);
+
+        // Recompute only the tail zone (plus any new zones) of each zone map
+        for (Map.Entry<String, List<ZoneMetadata>> entry : existingZones.entrySet()) {
+            String columnName = entry.getKey();
+            List<ZoneMetadata> zones = new ArrayList<>(entry.getValue());
+            long tailStart = 0;
+            if (!zones.isEmpty()) {
+                tailStart = zones.remove(zones.size() - 1).getStartByte();
+            }
+
+            boolean allDoubles = storeSchema.getType(columnName).isNumeric();
+            int chunkSize = zoneRows.get(columnName);
+            zones.addAll(buildZones(Paths.get(dataDirectory, columnName + ".col"), tailStart, allDoubles, chunkSize));
+            saveColumnMetadata(Collections.singletonMap(columnName, zones), Collections.singletonMap(columnName, allDoubles), chunkSize);
         }
+
+        reportThroughput(rowCount, startTime);
     }
 
-    private void saveColumnMetadata(Map<String, List<ZoneMetadata>> columnMetadataMap, Map<String, Boolean> allDoublesList) throws IOException {
+    /**
+     * Write zone map files, recording the rows per zone after the numeric flag in the first line
+     */
+    private void saveColumnMetadata(Map<String, List<ZoneMetadata>> columnMetadataMap, Map<String, Boolean> allDoublesList, int zoneRows) throws IOException {
         for (Map.Entry<String, List<ZoneMetadata>> entry : columnMetadataMap.entrySet()) {
             String columnName = entry.getKey();
             Path metadataFile = Paths.get(dataDirectory, columnName + "_zone_map.txt");
 
             try (BufferedWriter metadataWriter = Files.newBufferedWriter(metadataFile)) {
-                metadataWriter.write(Boolean.toString(allDoublesList.get(columnName)));
+                metadataWriter.write(allDoublesList.get(columnName) + "," + zoneRows);
                 metadataWriter.newLine();
                 for (ZoneMetadata zone : entry.getValue()) {
                     metadataWriter.write(zone.toString());
@@ -214,22 +515,68 @@ public class NormalColumnStore {
         return Files.readAllLines(Paths.get(columnFilePath));
     }
     
+    /**
+     * One row, read from each column file at the offset its row index gives
+     */
     public Map<String, String> getRow(int rowIndex) throws IOException {
         Map<String, String> row = new HashMap<>();
         
         for (String columnName : columnNames) {
-            List<String> columnData = getColumnData(columnName);
-            if (rowIndex >= 0 && rowIndex < columnData.size()) {
-                row.put(columnName, columnData.get(rowIndex));
-            } else {
-                throw new IndexOutOfBoundsException("Row index out of bounds: " + rowIndex);
-            }
+            Path columnFile = columnPath(columnName);
+            ByteBuffer columnData = RowOffsetIndex.map(columnFile);
+            row.put(columnName, openRowOffsetIndex(columnName, columnData).getValue(columnData, rowIndex));
         }
         
         return row;
     }
     
+    /**
+     * Many rows at once, in the order they are given. Each column is read in one pass over
+     * the rows in ascending order, so nearby rows share the scan from their checkpoint.
+     */
+    public List<Map<String, String>> getRows(int[] rowIndexes) throws IOException {
+        int[] order = RowOffsetIndex.ascendingOrder(rowIndexes);
+        int[] sortedRows = new int[order.length];
+        List<Map<String, String>> rows = new ArrayList<>(order.length);
+        for (int i = 0; i < order.length; i++) {
+            sortedRows[i] = rowIndexes[order[i]];
+            rows.add(new HashMap<>());
+        }
+        
+        for (String columnName : columnNames) {
+            Path columnFile = columnPath(columnName);
+            ByteBuffer columnData = RowOffsetIndex.map(columnFile);
+            List<String> values = openRowOffsetIndex(columnName, columnData).getValues(columnData, sortedRows);
+            for (int i = 0; i < order.length; i++) {
+                rows.get(order[i]).put(columnName, values.get(i));
+            }
+        }
+        
+        return rows;
+    }
+    
+    private Path columnPath(String columnName) {
+        return Paths.get(dataDirectory, columnName + ".col");
+    }
+    
     public List<String> getColumnNames() {
         return columnNames;
     }
+
+    /**
+     * Map a numeric column's fixed-width binary file for reading as primitives
+     */
+    public MappedNumericColumn openNumericColumn(String columnName) throws IOException {
+        return new MappedNumericColumn(TableSchema.binaryColumnPath(dataDirectory, columnName), getSchema().getType(columnName));
+    }
+
+    /**
+     * Column types inferred at load time, read from schema.txt if this store was not loaded in this run
+     */
+    public TableSchema getSchema() throws IOException {
+        if (schema == null) {
+            schema = TableSchema.load(dataDirectory);
+        }
+        return schema;
+    }
 }
\ No newline at end of file
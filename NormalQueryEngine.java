@@ -49,12 +49,12 @@ public class NormalQueryEngine {
         }
     }
 
-    public List<Integer> getSubsetByMonthAndTown(String yearMonth, String town) throws IOException {
+    public SelectionVector getSubsetByMonthAndTown(String yearMonth, String town) throws IOException {
         List<String> months = columnStore.readColumn("month");
         List<String> towns = columnStore.readColumn("town");
-        List<String> floor_area_sqm = columnStore.readColumn("floor_area_sqm");
+        MappedNumericColumn floor_area_sqm = columnStore.openNumericColumn("floor_area_sqm");
 
-        List<Integer> matchingIndices = new ArrayList<>();
+        IntColumnVector matchingIndices = new IntColumnVector();
         
         // Simple calculation for next month
         String nextMonthStr = CompressionTestMain.getNextMonthStr(yearMonth);
@@ -65,7 +65,7 @@ public class NormalQueryEngine {
         for (int i = 0; i < months.size(); i++) {
             String monthValue = months.get(i);
             String townValue = towns.get(i);
-            Double floorValue = Double.parseDouble(floor_area_sqm.get(i));
+            double floorValue = floor_area_sqm.getDouble(i);
             
             // Simple string matching: month equals yearMonth OR month equals nextMonthStr
             if ((monthValue.equals(yearMonth) || monthValue.equals(nextMonthStr)) && 
@@ -76,24 +76,36 @@ public class NormalQueryEngine {
         }
         
         System.out.println("Found " + matchingIndices.size() + " matching transactions");
-        return matchingIndices;
+        return SelectionVector.fromRows(matchingIndices, months.size());
+    }
+    
+    /**
+     * Values of a numeric column at the selected rows only, read from its memory-mapped binary file
+     */
+    private double[] readNumericValues(String columnName, SelectionVector selection) throws IOException {
+        return columnStore.openNumericColumn(columnName).getDoubles(selection.toRows());
+    }
+
+    /**
+     * Rows matching the filter, found by scanning only the zones the zone maps allow
+     */
+    public SelectionVector getRelevantZonesIndices(String yearMonth, String town) throws IOException {
+        return ZoneMetadata.getRowsFromRelevantZones(yearMonth, town, columnStore.getDataDirectory());
     }
     
     /**
      * Query 1: Get minimum resale price for a specific month and town
      */
     public String getMinimumPrice(String yearMonth, String town) throws IOException {
-        List<Integer> subset = getSubsetByMonthAndTown(yearMonth, town);
+        SelectionVector subset = getSubsetByMonthAndTown(yearMonth, town);
         if (subset.isEmpty()) {
             return "No result";
         }
         
-        List<String> prices = columnStore.readColumn("resale_price");
-        // List<String> prices = columnStore.getColumnData("resale_price");
+        double[] prices = readNumericValues("resale_price", subset);
         
         double minPrice = Double.MAX_VALUE;
-        for (int index : subset) {
-            double price = Double.parseDouble(prices.get(index));
+        for (double price : prices) {
             minPrice = Math.min(minPrice, price);
         }
         
@@ -104,25 +116,23 @@ public class NormalQueryEngine {
      * Query.2: Calculate standard deviation of prices for a specific month and town
      */
     public String getStandardDeviationPrice(String yearMonth, String town) throws IOException {
-        List<Integer> subset = getSubsetByMonthAndTown(yearMonth, town);
+        SelectionVector subset = getSubsetByMonthAndTown(yearMonth, town);
         if (subset.isEmpty()) {
             return "No result";
         }
 
-        List<String> prices = columnStore.readColumn("resale_price");
-        // List<String> prices = columnStore.getColumnData("resale_price");
+        double[] prices = readNumericValues("resale_price", subset);
         
         // Calculate mean first
         double sum = 0.0;
-        for (int index : subset) {
-            sum += Double.parseDouble(prices.get(index));
+        for (double price : prices) {
+            sum += price;
         }
         double mean = sum / subset.size();
         
         // Calculate variance
         double variance = 0.0;
-        for (int index : subset) {
-            double price = Double.parseDouble(prices.get(index));
+        for (double price : prices) {
             variance += Math.pow(price - mean, 2);
         }
         variance /= (subset.size() - 1);
@@ -135,17 +145,16 @@ public class NormalQueryEngine {
      * Query 3: Calculate average resale price for a specific month and town
      */
     public String getAveragePrice(String yearMonth, String town) throws IOException {
-        List<Integer> subset = getSubsetByMonthAndTown(yearMonth, town);
+        SelectionVector subset = getSubsetByMonthAndTown(yearMonth, town);
         if (subset.isEmpty()) {
             return "No result";
         }
         
-        List<String> prices = columnStore.readColumn("resale_price");
-        // List<String> prices = columnStore.getColumnData("resale_price");
+        double[] prices = readNumericValues("resale_price", subset);
         
         double sum = 0.0;
-        for (int index : subset) {
-            sum += Double.parseDouble(prices.get(index));
+        for (double price : prices) {
+            sum += price;
         }
         
         return String.valueOf(sum / subset.size());
@@ -155,20 +164,18 @@ public class NormalQueryEngine {
      * Query 4: Calculate minimum price per square meter for a specific month and town
      */
     public String getMinimumPricePerSquareMeter(String yearMonth, String town) throws IOException {
-        List<Integer> subset = getSubsetByMonthAndTown(yearMonth, town);
+        SelectionVector subset = getSubsetByMonthAndTown(yearMonth, town);
         if (subset.isEmpty()) {
             return "No result";
         }
         
-        List<String> prices = columnStore.readColumn("resale_price");
-        List<String> areas = columnStore.readColumn("floor_area_sqm");
-        // List<String> prices = columnStore.getColumnData("resale_price");
-        // List<String> areas = columnStore.getColumnData("floor_area_sqm");
+        double[] prices = readNumericValues("resale_price", subset);
+        double[] areas = readNumericValues("floor_area_sqm", subset);
         
         double minPricePerSqm = Double.MAX_VALUE;
-        for (int index : subset) {
-            double price = Double.parseDouble(prices.get(index));
-            double area = Double.parseDouble(areas.get(index));
+        for (int index = 0; index < prices.length; index++) {
+            double price = prices[index];
+            double area = areas[index];
             double pricePerSqm = price / area;
             
             minPricePerSqm = Math.min(minPricePerSqm, pricePerSqm);
@@ -230,24 +237,28 @@ public class NormalQueryEngine {
     }
 
     public String getMinimumPriceZoneMap(String yearMonth, String town) throws IOException {
-        Map<String, List<Integer>> relevantData = ZoneMetadata.getDataFromRelevantZones(yearMonth, town, columnStore.getDataDirectory());
+        SelectionVector relevantRows = getRelevantZonesIndices(yearMonth, town);
+
+        if (relevantRows.isEmpty()) return "No result";
 
-        if (relevantData.get("indices").size() == 0) return "No result";
+        double[] resalePrices = readNumericValues("resale_price", relevantRows);
 
-        List<Double> resalePrices = ZoneMetadata.readDoubleColumnDataInZones("resale_price", relevantData.get("zones"), relevantData.get("indices"), columnStore.getDataDirectory());
+        double minPrice = Double.MAX_VALUE;
+        for (double resalePrice : resalePrices) {
+            minPrice = Math.min(minPrice, resalePrice);
+        }
 
-        return String.valueOf(Collections.min(resalePrices));
+        return String.valueOf(minPrice);
     }
 
     public String getStandardDeviationPriceZoneMap(String yearMonth, String town) throws IOException {
-        Map<String, List<Integer>> relevantData = ZoneMetadata.getDataFromRelevantZones(yearMonth, town, columnStore.getDataDirectory());
+        SelectionVector relevantRows = getRelevantZonesIndices(yearMonth, town);
 
-        if (relevantData.get("indices").size() == 0) return "No result";
+        if (relevantRows.isEmpty()) return "No result";
 
-        List<Double> resalePrices = ZoneMetadata.readDoubleColumnDataInZones("resale_price", relevantData.get("zones"), relevantData.get("indices"), columnStore.getDataDirectory());
+        double[] resalePrices = readNumericValues("resale_price", relevantRows);
 
-        double mean = resalePrices.stream()
-            .mapToDouble(Double::doubleValue)
+        double mean = Arrays.stream(resalePrices)
             .average()
             .orElse(0.0); // fallback if list is empty
         
@@ -256,21 +267,20 @@ public class NormalQueryEngine {
         for (double resalePrice : resalePrices) {
             variance += Math.pow(resalePrice - mean, 2);
         }
-        variance /= (resalePrices.size() - 1);
+        variance /= (resalePrices.length - 1);
         
         // Return standard deviation (square root of variance)
         return String.valueOf(Math.sqrt(variance));
     }
 
     public String getAveragePriceZoneMap(String yearMonth, String town) throws IOException {
-        Map<String, List<Integer>> relevantData = ZoneMetadata.getDataFromRelevantZones(yearMonth, town, columnStore.getDataDirectory());
+        SelectionVector relevantRows = getRelevantZonesIndices(yearMonth, town);
 
-        if (relevantData.get("indices").size() == 0) return "No result";
+        if (relevantRows.isEmpty()) return "No result";
 
-        List<Double> resalePrices = ZoneMetadata.readDoubleColumnDataInZones("resale_price", relevantData.get("zones"), relevantData.get("indices"), columnStore.getDataDirectory());
+        double[] resalePrices = readNumericValues("resale_price", relevantRows);
         
-        double mean = resalePrices.stream()
-            .mapToDouble(Double::doubleValue)
+        double mean = Arrays.stream(resalePrices)
             .average()
             .orElse(0.0); // fallback if list is empty
 
@@ -278,17 +288,17 @@ public class NormalQueryEngine {
     }
 
     public String getMinimumPricePerSquareMeterZoneMap(String yearMonth, String town) throws IOException {
-        Map<String, List<Integer>> relevantData = ZoneMetadata.getDataFromRelevantZones(yearMonth, town, columnStore.getDataDirectory());
+        SelectionVector relevantRows = getRelevantZonesIndices(yearMonth, town);
 
-        if (relevantData.get("indices").size() == 0) return "No result";
+        if (relevantRows.isEmpty()) return "No result";
 
-        List<Double> resalePrices = ZoneMetadata.readDoubleColumnDataInZones("resale_price", relevantData.get("zones"), relevantData.get("indices"), columnStore.getDataDirectory());
-        List<Double> floorAreaSqm = ZoneMetadata.readDoubleColumnDataInZones("floor_area_sqm", relevantData.get("zones"), relevantData.get("indices"), columnStore.getDataDirectory());
+        double[] resalePrices = readNumericValues("resale_price", relevantRows);
+        double[] floorAreaSqm = readNumericValues("floor_area_sqm", relevantRows);
         
         double minPricePerSqm = Double.MAX_VALUE;
-        for (int index = 0 ; index < resalePrices.size(); index++) {
-            double price = resalePrices.get(index);
-            double area = floorAreaSqm.get(index);
+        for (int index = 0 ; index < resalePrices.length; index++) {
+            double price = resalePrices[index];
+            double area = floorAreaSqm[index];
             double pricePerSqm = price / area;
             
             minPricePerSqm = Math.min(minPricePerSqm, pricePerSqm);
@@ -307,7 +317,7 @@ public class NormalQueryEngine {
         double totalTime = 0.0;
 
         // Get subset size
-        TimerUtil.TimedResult<Integer> subset = TimerUtil.timeFunction(() -> ZoneMetadata.getDataFromRelevantZones(yearMonth, town, columnStore.getDataDirectory()).get("indices").size());
+        TimerUtil.TimedResult<Integer> subset = TimerUtil.timeFunction(() -> getRelevantZonesIndices(yearMonth, town).size());
         results.put("Subset Size", String.valueOf(subset.getResult()));
         timings.put("Subset Size", subset.getDurationMs());
         totalTime += subset.getDurationMs();
@@ -0,0 +1,23 @@
+/**
+ * Random access to the values of a numeric column, whatever its layout on disk
+ */
+public interface NumericColumn {
+    int size();
+
+    ColumnType getType();
+
+    long getLong(int row);
+
+    double getDouble(int row);
+
+    /**
+     * Gather the values at the given rows into a primitive array
+     */
+    default double[] getDoubles(int[] rows) {
+        double[] values = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            values[i] = getDouble(rows[i]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,464 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Equality, IN and range predicates on bit-packed codes, evaluated on the packed bits without
+ * unpacking them. A 64-bit word read at the first code of a group holds k = 57 / w whole codes
+ * of w bits at its top (a code can start up to 7 bits into its first byte), and all k codes are
+ * compared at once with SWAR arithmetic. Per field of w bits, H is its top bit, L its other
+ * bits and ONE its lowest bit:
+ *
+ *   x == c   the field of d = x ^ c is zero: the H bit of ((d & L) + L) | d is clear
+ *   x >= c   the field of x + ~c + 1 carries out: the majority of the H bits of x, of ~c and of
+ *            (x & L) + (~c & L) + ONE, whose H bit is the carry into the top bit
+ *
+ * Neither sum carries into the next field, so the fields need no guard bits. The result is a
+ * match bitmap with bit (row & 63) of word (row >>> 6) set for each matching row, the layout of
+ * BitSet.toLongArray, and a bitmap from one filter can limit the words the next one looks at.
+ *
+ * Word-packed columns go through the same arithmetic one stored word at a time, and run-length
+ * columns test each run's code once, so every dictionary code layout is filtered without
+ * unpacking it.
+ *
+ * Run this class to check every width against comparisons of the unpacked codes.
+ */
+public class PackedCodeFilter {
+    private static final int WINDOW_BITS = 57;
+
+    // The predicate as given, to rebuild it for another width or word layout
+    private final int[] codes;
+    private final long lowerBound;
+    private final long upperBound;
+
+    private final int bitsPerValue;
+    private final int windowBits;
+    private final int fieldsPerWord;
+    private final long one;
+    private final long highBits;
+    private final long lowBits;
+    // Top n fields of a word, by n
+    private final long[] fieldMasks;
+    // Field of a code by the number of leading zeros of a bit inside it
+    private final int[] fieldAt = new int[64];
+
+    private final boolean range;
+    // An IN list, each code in every field of a word
+    private final long[] equalTo;
+    private final int[] held;
+    // A range as x >= lower && !(x >= upper), each bound as its ~c & H and (~c & L) + ONE;
+    // null when the range is not bounded on that side
+    private final long[] lower;
+    private final long[] upper;
+    // No code of the column's width can match
+    private final boolean empty;
+    // Whether code 0 matches, the only code of a column of width 0
+    private final boolean zeroMatches;
+
+    private PackedCodeFilter(int bitsPerValue, int windowBits, int[] codes, long lowerBound, long upperBound) {
+        this.codes = codes;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.bitsPerValue = bitsPerValue;
+        this.windowBits = windowBits;
+        int w = Math.max(1, bitsPerValue);
+        long fieldMask = (1L << w) - 1;
+        long maxCode = bitsPerValue == 0 ? 0 : fieldMask;
+        fieldsPerWord = windowBits / w;
+        fieldMasks = new long[fieldsPerWord + 1];
+        long high = 0;
+        long low = 0;
+        for (int j = 0; j < fieldsPerWord; j++) {
+            int lowBit = 64 - (j + 1) * w;
+            high |= 1L << (lowBit + w - 1);
+            low |= 1L << lowBit;
+            fieldMasks[j + 1] = fieldMasks[j] | (fieldMask << lowBit);
+            for (int bit = lowBit; bit < lowBit + w; bit++) {
+                fieldAt[63 - bit] = j;
+            }
+        }
+        this.one = low;
+        this.highBits = high;
+        this.lowBits = fieldMasks[fieldsPerWord] & ~high;
+
+        range = codes == null;
+        if (range) {
+            equalTo = new long[0];
+            held = new int[0];
+            lower = lowerBound > 0 && lowerBound <= maxCode ? carryTerms(lowerBound) : null;
+            upper = upperBound <= maxCode ? carryTerms(Math.max(0, upperBound)) : null;
+            empty = lowerBound > maxCode || lowerBound >= upperBound;
+            zeroMatches = lowerBound <= 0 && upperBound > 0;
+        } else {
+            // Codes the column cannot hold (-1 for a value missing from the dictionary) match nothing
+            held = Arrays.stream(codes).filter(code -> code >= 0 && code <= maxCode).distinct().toArray();
+            equalTo = new long[held.length];
+            for (int i = 0; i < held.length; i++) {
+                equalTo[i] = held[i] * one;
+            }
+            lower = null;
+            upper = null;
+            empty = held.length == 0;
+            zeroMatches = Arrays.stream(held).anyMatch(code -> code == 0);
+        }
+    }
+
+    public static PackedCodeFilter equalTo(int bitsPerValue, int code) {
+        return new PackedCodeFilter(bitsPerValue, WINDOW_BITS, new int[] {code}, 0, 0);
+    }
+
+    public static PackedCodeFilter in(int bitsPerValue, int... codes) {
+        return new PackedCodeFilter(bitsPerValue, WINDOW_BITS, codes, 0, 0);
+    }
+
+    /**
+     * Codes from lower to upper, both inclusive
+     */
+    public static PackedCodeFilter between(int bitsPerValue, int lower, int upper) {
+        return new PackedCodeFilter(bitsPerValue, WINDOW_BITS, null, lower, (long) upper + 1);
+    }
+
+    public static PackedCodeFilter atLeast(int bitsPerValue, int lower) {
+        return new PackedCodeFilter(bitsPerValue, WINDOW_BITS, null, lower, Long.MAX_VALUE);
+    }
+
+    /**
+     * The same predicate for codes of another width, in words of windowBits usable bits
+     */
+    private PackedCodeFilter withLayout(int bitsPerValue, int windowBits) {
+        if (bitsPerValue == this.bitsPerValue && windowBits == this.windowBits) {
+            return this;
+        }
+        return new PackedCodeFilter(bitsPerValue, windowBits, codes, lowerBound, upperBound);
+    }
+
+    /**
+     * Whether one code matches
+     */
+    public boolean test(int code) {
+        if (range) {
+            return code >= lowerBound && code < upperBound;
+        }
+        for (int c : held) {
+            if (c == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long[] carryTerms(long c) {
+        long notC = ~(c * one) & fieldMasks[fieldsPerWord];
+        return new long[] {notC & highBits, (notC & lowBits) + one};
+    }
+
+    /**
+     * H bits of the fields of x that are >= the bound
+     */
+    private long atLeast(long x, long[] bound) {
+        long sum = (x & lowBits) + bound[1];
+        return ((x & bound[0]) | (x & sum) | (bound[0] & sum)) & highBits;
+    }
+
+    /**
+     * H bits of the fields of x that match
+     */
+    private long matches(long x) {
+        if (range) {
+            long result = highBits;
+            if (lower != null) {
+                result &= atLeast(x, lower);
+            }
+            if (upper != null) {
+                result &= ~atLeast(x, upper);
+            }
+            return result;
+        }
+        long any = 0;
+        for (long c : equalTo) {
+            long d = x ^ c;
+            any |= ~(((d & lowBits) + lowBits) | d);
+        }
+        return any & highBits;
+    }
+
+    /**
+     * Match bitmap of count codes packed from the top bit of the byte at byteOffset. When
+     * candidates is given only its rows can match, and words of 64 rows without a candidate
+     * are not read at all.
+     */
+    public long[] evaluate(ByteBuffer data, int byteOffset, int count, long[] candidates) {
+        long[] bitmap = new long[(count + 63) >>> 6];
+        if (empty) {
+            return bitmap;
+        }
+        if (bitsPerValue == 0) {
+            if (zeroMatches) {
+                for (int word = 0; word < bitmap.length; word++) {
+                    long rows = word < bitmap.length - 1 || (count & 63) == 0 ? -1L : (1L << (count & 63)) - 1;
+                    bitmap[word] = candidates == null ? rows : rows & candidates[word];
+                }
+            }
+            return bitmap;
+        }
+        // Packed codes are big-endian; a duplicate of the buffer reads it that way
+        if (data.order() != ByteOrder.BIG_ENDIAN) {
+            data = data.duplicate();
+        }
+
+        for (int word = 0; word < bitmap.length; word++) {
+            long candidate = candidates == null ? -1L : candidates[word];
+            if (candidate == 0) {
+                continue;
+            }
+            int first = word << 6;
+            int end = Math.min(first + 64, count);
+            long rows = 0;
+            for (int i = first; i < end; i += fieldsPerWord) {
+                long mask = fieldMasks[Math.min(fieldsPerWord, end - i)];
+                long bit = (long) i * bitsPerValue;
+                long fields = window(data, byteOffset + (int) (bit >>> 3)) << (bit & 7);
+                long matched = matches(fields & mask) & mask;
+                while (matched != 0) {
+                    int zeros = Long.numberOfLeadingZeros(matched);
+                    rows |= 1L << (i - first + fieldAt[zeros]);
+                    matched &= ~(Long.MIN_VALUE >>> zeros);
+                }
+            }
+            bitmap[word] = rows & candidate;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Match bitmap of a whole dictionary-coded column in the layout it was stored with. The
+     * filter's own width is only a default: each layout's header gives the width used.
+     */
+    public long[] evaluate(ByteBuffer columnData, ColumnEncoding encoding, long[] candidates) throws IOException {
+        switch (encoding) {
+            case BIT_PACKED:
+                return withLayout(columnData.getInt(0), WINDOW_BITS).evaluate(columnData, 8, columnData.getInt(4), candidates);
+            case WORD_PACKED:
+                return evaluateWords(columnData, new WordPackedColumn(columnData), candidates);
+            case RUN_LENGTH:
+                return evaluateRuns(RunLengthColumn.read(columnData), candidates);
+            default:
+                throw new IOException("A " + encoding + " column has no dictionary codes to filter");
+        }
+    }
+
+    /**
+     * Word-packed codes: a word holds 64 / w codes, the first row's in its lowest bits, so the
+     * word shifted up has them at the top like a bit-packed window, in reverse row order
+     */
+    private long[] evaluateWords(ByteBuffer data, WordPackedColumn column, long[] candidates) {
+        int count = column.size();
+        int bits = column.getBitsPerValue();
+        PackedCodeFilter words = withLayout(bits, Long.SIZE);
+        if (bits == 0 || words.empty) {
+            return words.evaluate(data, 0, count, candidates);
+        }
+        if (data.order() != ByteOrder.BIG_ENDIAN) {
+            data = data.duplicate();
+        }
+
+        long[] bitmap = new long[(count + 63) >>> 6];
+        int perWord = words.fieldsPerWord;
+        int blockRows = column.getBlockRows();
+        for (int block = 0, blockStart = 0; blockStart < count; block++, blockStart += blockRows) {
+            int blockEnd = Math.min(blockStart + blockRows, count);
+            int position = (int) WordPackedColumn.blockOffset(block, bits, blockRows);
+            for (int first = blockStart; first < blockEnd; first += perWord, position += Long.BYTES) {
+                int n = Math.min(perWord, blockEnd - first);
+                if (candidates != null && !anySet(candidates, first, first + n)) {
+                    continue;
+                }
+                // The block's last word may hold fewer codes, in its low fields
+                long mask = words.fieldMasks[perWord] & ~words.fieldMasks[perWord - n];
+                long fields = data.getLong(position) << (Long.SIZE - perWord * bits);
+                long matched = words.matches(fields & mask) & mask;
+                while (matched != 0) {
+                    int zeros = Long.numberOfLeadingZeros(matched);
+                    int row = first + perWord - 1 - words.fieldAt[zeros];
+                    bitmap[row >>> 6] |= 1L << row;
+                    matched &= ~(Long.MIN_VALUE >>> zeros);
+                }
+            }
+        }
+        return intersect(bitmap, candidates);
+    }
+
+    /**
+     * Run-length codes: each run's code is tested once and a matching run sets its rows at once
+     */
+    private long[] evaluateRuns(RunLengthColumn column, long[] candidates) {
+        long[] bitmap = new long[(column.size() + 63) >>> 6];
+        for (int[] range : column.selectRanges(this::test)) {
+            setRange(bitmap, range[0], range[1]);
+        }
+        return intersect(bitmap, candidates);
+    }
+
+    private static long[] intersect(long[] bitmap, long[] candidates) {
+        if (candidates != null) {
+            for (int word = 0; word < bitmap.length; word++) {
+                bitmap[word] &= candidates[word];
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Set the rows from (inclusive) to (exclusive)
+     */
+    static void setRange(long[] bitmap, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            bitmap[firstWord] |= firstMask & lastMask;
+            return;
+        }
+        bitmap[firstWord] |= firstMask;
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            bitmap[word] = -1L;
+        }
+        bitmap[lastWord] |= lastMask;
+    }
+
+    /**
+     * Whether any row from (inclusive) to (exclusive) is set
+     */
+    private static boolean anySet(long[] bitmap, int from, int to) {
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        if (firstWord == lastWord) {
+            return (bitmap[firstWord] & (-1L << from) & (-1L >>> -to)) != 0;
+        }
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            if (bitmap[word] != 0) {
+                return true;
+            }
+        }
+        return (bitmap[firstWord] & (-1L << from)) != 0 || (bitmap[lastWord] & (-1L >>> -to)) != 0;
+    }
+
+    /**
+     * The 8 bytes from position, zero past the end of the data
+     */
+    private static long window(ByteBuffer data, int position) {
+        if (position + Long.BYTES <= data.limit()) {
+            return data.getLong(position);
+        }
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (position + i < data.limit() ? data.get(position + i) & 0xFF : 0);
+        }
+        return value;
+    }
+
+    public static int cardinality(long[] bitmap) {
+        int count = 0;
+        for (long word : bitmap) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(7);
+        int[] counts = {0, 1, 7, 63, 64, 65, 800, 1001};
+        List<Integer> mismatched = new ArrayList<>();
+        for (int bits = 0; bits <= BitUnpacker.MAX_BITS; bits++) {
+            // Dictionary codes are non-negative ints
+            long maxCode = bits == 0 ? 0 : Math.min(Integer.MAX_VALUE, (1L << bits) - 1);
+            boolean same = true;
+            for (int count : counts) {
+                int[] codes = new int[count];
+                for (int i = 0; i < count; i++) {
+                    // Few distinct codes, so equality tests match often
+                    codes[i] = (int) (random.nextInt(4) == 0 ? random.nextLong() & maxCode : Math.min(maxCode, random.nextInt(3)));
+                }
+                int a = (int) Math.min(maxCode, random.nextInt(3));
+                int b = (int) (random.nextLong() & maxCode);
+                int lo = Math.min(a, b);
+                int hi = Math.max(a, b);
+                for (int byteOffset : new int[] {0, 3}) {
+                    ByteBuffer data = BitUnpacker.pack(codes, bits, byteOffset);
+                    same &= check(codes, equalTo(bits, a).evaluate(data, byteOffset, count, null), code -> code == a);
+                    same &= check(codes, in(bits, a, b, -1).evaluate(data, byteOffset, count, null), code -> code == a || code == b);
+                    same &= check(codes, between(bits, lo, hi).evaluate(data, byteOffset, count, null), code -> code >= lo && code <= hi);
+                    same &= check(codes, atLeast(bits, hi).evaluate(data, byteOffset, count, null), code -> code >= hi);
+                    same &= check(codes, atLeast(bits, 0).evaluate(data, byteOffset, count, null), code -> true);
+                    long[] candidates = equalTo(bits, a).evaluate(data, byteOffset, count, null);
+                    same &= check(codes, atLeast(bits, lo).evaluate(data, byteOffset, count, candidates), code -> code == a && code >= lo);
+                }
+                // Whole columns in each code layout, with a filter built for another width
+                ByteArrayOutputStream runs = new ByteArrayOutputStream();
+                RunLengthColumn.encode(codes, bits).write(runs);
+                Map<ColumnEncoding, ByteBuffer> layouts = new EnumMap<>(ColumnEncoding.class);
+                layouts.put(ColumnEncoding.BIT_PACKED, ByteBuffer.wrap(CompressedColumnStore.packCodes(codes, bits)));
+                layouts.put(ColumnEncoding.WORD_PACKED, ByteBuffer.wrap(WordPackedColumn.encode(codes, bits, 100)));
+                layouts.put(ColumnEncoding.RUN_LENGTH, ByteBuffer.wrap(runs.toByteArray()));
+                for (Map.Entry<ColumnEncoding, ByteBuffer> layout : layouts.entrySet()) {
+                    ColumnEncoding encoding = layout.getKey();
+                    ByteBuffer data = layout.getValue();
+                    same &= check(codes, in(32, a, b).evaluate(data, encoding, null), code -> code == a || code == b);
+                    same &= check(codes, between(1, lo, hi).evaluate(data, encoding, null), code -> code >= lo && code <= hi);
+                    long[] candidates = atLeast(bits, lo).evaluate(data, encoding, null);
+                    same &= check(codes, equalTo(bits, a).evaluate(data, encoding, candidates), code -> code == a && code >= lo);
+                }
+            }
+            if (!same) {
+                mismatched.add(bits);
+            }
+        }
+        System.out.println(mismatched.isEmpty()
+                ? "Identical to comparing unpacked codes for every width from 0 to " + BitUnpacker.MAX_BITS
+                : "Differs from comparing unpacked codes at widths " + mismatched);
+
+        // Rough time of one equality filter per width, against unpacking and comparing
+        int count = 1 << 20;
+        int[] codes = new int[count];
+        for (int bits : new int[] {3, 5, 9, 13, 17}) {
+            for (int i = 0; i < count; i++) {
+                codes[i] = random.nextInt(1 << bits);
+            }
+            ByteBuffer data = BitUnpacker.pack(codes, bits, 0);
+            PackedCodeFilter filter = equalTo(bits, 1);
+            long packedBest = Long.MAX_VALUE;
+            long unpackedBest = Long.MAX_VALUE;
+            int[] unpacked = new int[count];
+            for (int run = 0; run < 20; run++) {
+                long start = System.nanoTime();
+                filter.evaluate(data, 0, count, null);
+                packedBest = Math.min(packedBest, System.nanoTime() - start);
+                start = System.nanoTime();
+                BitUnpacker.unpack(data, 0, bits, unpacked, count);
+                long[] bitmap = new long[(count + 63) >>> 6];
+                for (int i = 0; i < count; i++) {
+                    if (unpacked[i] == 1) {
+                        bitmap[i >>> 6] |= 1L << i;
+                    }
+                }
+                unpackedBest = Math.min(unpackedBest, System.nanoTime() - start);
+            }
+            System.out.println(String.format("%2d bits, packed %8.3f ms, unpacked %8.3f ms", bits, packedBest / 1e6, unpackedBest / 1e6));
+        }
+    }
+
+    private static boolean check(int[] codes, long[] bitmap, IntPredicate expected) {
+        for (int i = 0; i < codes.length; i++) {
+            if (((bitmap[i >>> 6] >>> i) & 1) != (expected.test(codes[i]) ? 1 : 0)) {
+                return false;
+            }
+        }
+        return bitmap.length == (codes.length + 63) >>> 6;
+    }
+}
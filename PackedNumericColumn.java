@@ -0,0 +1,336 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Integer column (INT or YEAR_MONTH) stored as blocks of bit-packed offsets instead of
+ * fixed 8-byte values. With frame-of-reference encoding each block keeps its minimum and
+ * every value is packed as its distance from it; with delta encoding each block keeps its
+ * first value and the differences between neighbouring values are packed the same way.
+ * Offsets are packed into little-endian 64-bit words so one or two word reads and a shift
+ * give a value. All integers are little-endian:
+ *
+ *   int magic, int encoding, int recordCount, int blockSize, int blockCount, int unused,
+ *   long[blockCount] block offsets,
+ *   per block: long reference, long minDelta, int bitsPerValue, int unused, long[] words
+ *
+ * Arithmetic wraps modulo 2^64 on both sides, so any range of long values round-trips.
+ */
+public class PackedNumericColumn implements NumericColumn {
+    public static final String FILE_SUFFIX = ".num";
+    public static final int BLOCK_SIZE = 1024;
+    private static final int MAGIC = 0x4D554E50; // "PNUM"
+    private static final int HEADER_BYTES = 24;
+    private static final int BLOCK_HEADER_BYTES = 24;
+
+    private final ByteBuffer buffer;
+    private final ColumnType type;
+    private final ColumnEncoding encoding;
+    private final int recordCount;
+    private final int blockSize;
+    private final int blockCount;
+
+    // Last block decoded by getDoubles/decodeBlock, so ascending row lists decode each block once
+    private final long[] blockValues;
+    private int decodedBlock = -1;
+
+    public PackedNumericColumn(ByteBuffer buffer, ColumnType type) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (!isPacked(buffer)) {
+            throw new IOException("Column data is not a packed numeric column");
+        }
+        this.type = type;
+        this.encoding = buffer.getInt(4) == 0 ? ColumnEncoding.FRAME_OF_REFERENCE : ColumnEncoding.DELTA;
+        this.recordCount = buffer.getInt(8);
+        this.blockSize = buffer.getInt(12);
+        this.blockCount = buffer.getInt(16);
+        this.blockValues = new long[blockSize];
+    }
+
+    /**
+     * Whether column data is a packed numeric column rather than fixed-width values
+     */
+    public static boolean isPacked(ByteBuffer data) {
+        return data.limit() >= HEADER_BYTES && data.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(0) == MAGIC;
+    }
+
+    /**
+     * Whether a column of this type can be packed: its binary values are whole numbers
+     */
+    public static boolean canPack(ColumnType type) {
+        return type == ColumnType.INT || type == ColumnType.YEAR_MONTH;
+    }
+
+    /**
+     * Size of the values packed with the given encoding, to choose between the encodings
+     */
+    public static long encodedBytes(long[] values, ColumnEncoding encoding) {
+        int blockCount = (values.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long bytes = HEADER_BYTES + (long) blockCount * Long.BYTES;
+        for (int block = 0; block < blockCount; block++) {
+            int from = block * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE, values.length);
+            bytes += BLOCK_HEADER_BYTES + wordCount(to - from, blockBits(values, from, to, encoding)) * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * The smaller of the two encodings for these values
+     */
+    public static ColumnEncoding chooseEncoding(long[] values) {
+        return encodedBytes(values, ColumnEncoding.DELTA) < encodedBytes(values, ColumnEncoding.FRAME_OF_REFERENCE)
+                ? ColumnEncoding.DELTA : ColumnEncoding.FRAME_OF_REFERENCE;
+    }
+
+    /**
+     * Write the values with the given encoding and commit the file
+     */
+    public static void write(ColumnFileWriter out, long[] values, ColumnEncoding encoding) throws IOException {
+        out.write(encode(values, encoding).array());
+        out.commit();
+    }
+
+    /**
+     * Pack the values with the given encoding into a heap buffer laid out like the file
+     */
+    public static ByteBuffer encode(long[] values, ColumnEncoding encoding) throws IOException {
+        if (!encoding.isNumeric()) {
+            throw new IOException("Not a numeric encoding: " + encoding);
+        }
+        long size = encodedBytes(values, encoding);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Packed column too large: " + size + " bytes");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        int blockCount = (values.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        out.putInt(MAGIC);
+        out.putInt(encoding == ColumnEncoding.FRAME_OF_REFERENCE ? 0 : 1);
+        out.putInt(values.length);
+        out.putInt(BLOCK_SIZE);
+        out.putInt(blockCount);
+        out.putInt(0);
+
+        long offset = HEADER_BYTES + (long) blockCount * Long.BYTES;
+        int[] bits = new int[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            int from = block * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE, values.length);
+            bits[block] = blockBits(values, from, to, encoding);
+            out.putLong(offset);
+            offset += BLOCK_HEADER_BYTES + wordCount(to - from, bits[block]) * Long.BYTES;
+        }
+
+        long[] offsets = new long[BLOCK_SIZE];
+        for (int block = 0; block < blockCount; block++) {
+            int from = block * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE, values.length);
+            long reference;
+            long minDelta = 0;
+            if (encoding == ColumnEncoding.FRAME_OF_REFERENCE) {
+                reference = min(values, from, to);
+                for (int i = from; i < to; i++) {
+                    offsets[i - from] = values[i] - reference;
+                }
+            } else {
+                reference = values[from];
+                minDelta = minDelta(values, from, to);
+                offsets[0] = 0;
+                for (int i = from + 1; i < to; i++) {
+                    offsets[i - from] = values[i] - values[i - 1] - minDelta;
+                }
+            }
+            out.putLong(reference);
+            out.putLong(minDelta);
+            out.putInt(bits[block]);
+            out.putInt(0);
+            writeWords(out, offsets, to - from, bits[block]);
+        }
+        out.flip();
+        return out;
+    }
+
+    private static void writeWords(ByteBuffer out, long[] offsets, int count, int bits) {
+        long word = 0;
+        int used = 0;
+        for (int i = 0; i < count && bits > 0; i++) {
+            long value = offsets[i];
+            word |= value << used;
+            used += bits;
+            if (used >= 64) {
+                out.putLong(word);
+                used -= 64;
+                // The bits of the value that did not fit start the next word
+                word = used == 0 ? 0 : value >>> (bits - used);
+            }
+        }
+        if (used > 0) {
+            out.putLong(word);
+        }
+    }
+
+    private static long wordCount(int count, int bits) {
+        return ((long) count * bits + 63) / 64;
+    }
+
+    /**
+     * Bits needed for the offsets of one block: the unsigned width of the block's range
+     */
+    private static int blockBits(long[] values, int from, int to, ColumnEncoding encoding) {
+        long range;
+        if (encoding == ColumnEncoding.FRAME_OF_REFERENCE) {
+            range = max(values, from, to) - min(values, from, to);
+        } else {
+            long minDelta = minDelta(values, from, to);
+            range = 0;
+            for (int i = from + 1; i < to; i++) {
+                long offset = values[i] - values[i - 1] - minDelta;
+                if (Long.compareUnsigned(offset, range) > 0) {
+                    range = offset;
+                }
+            }
+        }
+        return 64 - Long.numberOfLeadingZeros(range);
+    }
+
+    private static long min(long[] values, int from, int to) {
+        long min = values[from];
+        for (int i = from + 1; i < to; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    private static long max(long[] values, int from, int to) {
+        long max = values[from];
+        for (int i = from + 1; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    private static long minDelta(long[] values, int from, int to) {
+        long minDelta = 0;
+        for (int i = from + 1; i < to; i++) {
+            long delta = values[i] - values[i - 1];
+            minDelta = i == from + 1 ? delta : Math.min(minDelta, delta);
+        }
+        return minDelta;
+    }
+
+    public ColumnEncoding getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public int size() {
+        return recordCount;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return type;
+    }
+
+    /**
+     * One value; a delta-encoded row needs the deltas before it in its block, so its whole
+     * block is decoded once and kept for the following rows
+     */
+    @Override
+    public long getLong(int row) {
+        int block = row / blockSize;
+        int index = row - block * blockSize;
+        if (block == decodedBlock) {
+            return blockValues[index];
+        }
+        if (encoding == ColumnEncoding.DELTA) {
+            decodeBlock(block, blockValues);
+            return blockValues[index];
+        }
+        int start = (int) buffer.getLong(HEADER_BYTES + block * Long.BYTES);
+        return buffer.getLong(start) + unpack(start + BLOCK_HEADER_BYTES, index, buffer.getInt(start + 16));
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return getLong(row);
+    }
+
+    /**
+     * Gather the values at the given rows, decoding each block the rows fall in once
+     * when the rows are in ascending order
+     */
+    @Override
+    public double[] getDoubles(int[] rows) {
+        double[] values = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            int block = rows[i] / blockSize;
+            if (block != decodedBlock) {
+                decodeBlock(block, blockValues);
+            }
+            values[i] = blockValues[rows[i] - block * blockSize];
+        }
+        return values;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Decode every value of one block into the array, returning how many there are.
+     * This is the scan loop: a word read, a shift and an add per value.
+     */
+    public int decodeBlock(int block, long[] values) {
+        int start = (int) buffer.getLong(HEADER_BYTES + block * Long.BYTES);
+        long reference = buffer.getLong(start);
+        long minDelta = buffer.getLong(start + 8);
+        int bits = buffer.getInt(start + 16);
+        int words = start + BLOCK_HEADER_BYTES;
+        int count = Math.min(blockSize, recordCount - block * blockSize);
+
+        if (encoding == ColumnEncoding.FRAME_OF_REFERENCE) {
+            for (int i = 0; i < count; i++) {
+                values[i] = reference + unpack(words, i, bits);
+            }
+        } else {
+            long value = reference;
+            values[0] = value;
+            for (int i = 1; i < count; i++) {
+                value += minDelta + unpack(words, i, bits);
+                values[i] = value;
+            }
+        }
+        if (values == blockValues) {
+            decodedBlock = block;
+        }
+        return count;
+    }
+
+    /**
+     * All values of the column
+     */
+    public long[] decode() {
+        long[] values = new long[recordCount];
+        long[] block = new long[blockSize];
+        for (int b = 0; b < blockCount; b++) {
+            int count = decodeBlock(b, block);
+            System.arraycopy(block, 0, values, b * blockSize, count);
+        }
+        return values;
+    }
+
+    private long unpack(int words, int index, int bits) {
+        if (bits == 0) {
+            return 0;
+        }
+        long bit = (long) index * bits;
+        int word = words + (int) (bit >>> 6) * Long.BYTES;
+        int shift = (int) (bit & 63);
+        long value = buffer.getLong(word) >>> shift;
+        if (shift + bits > 64) {
+            value |= buffer.getLong(word + Long.BYTES) << (64 - shift);
+        }
+        return bits == 64 ? value : value & ((1L << bits) - 1);
+    }
+}
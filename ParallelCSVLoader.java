@@ -0,0 +1,293 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses a CSV file on a ForkJoinPool. The file is split into byte ranges that end on record
+ * boundaries, each range is parsed into a partial column chunk, and the chunks are handed back in
+ * row order. Quotes are followed from the start of each range, which is a record start, so a line
+ * break inside a quoted field never ends a range.
+ */
+public class ParallelCSVLoader {
+    // Smallest byte range worth handing to a worker thread
+    private static final long MIN_CHUNK_BYTES = 1024 * 1024;
+    // Number of ranges created per worker so that uneven ranges still balance out
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final Path csvPath;
+    private final int parallelism;
+    private List<String> columnNames;
+    private long dataStart;
+
+    /**
+     * Receives parsed chunks in row order
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(ColumnChunk chunk) throws IOException;
+    }
+
+    /**
+     * The values of one byte range, split by column
+     */
+    public static class ColumnChunk {
+        private final int chunkIndex;
+        private final List<List<String>> columns;
+        private final CardinalitySketch[] sketches;
+        private int rowCount;
+
+        public ColumnChunk(int chunkIndex, int columnCount) {
+            this.chunkIndex = chunkIndex;
+            this.columns = new ArrayList<>(columnCount);
+            this.sketches = new CardinalitySketch[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columns.add(new ArrayList<>());
+                sketches[i] = new CardinalitySketch();
+            }
+        }
+
+        public int getChunkIndex() {
+            return chunkIndex;
+        }
+
+        public List<String> getColumn(int columnIndex) {
+            return columns.get(columnIndex);
+        }
+
+        /**
+         * Distinct-value sketch of one column of this chunk, built by the worker that parsed it
+         */
+        public CardinalitySketch getSketch(int columnIndex) {
+            return sketches[columnIndex];
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+    }
+
+    public ParallelCSVLoader(String csvFilePath, int parallelism) throws IOException {
+        this.csvPath = Paths.get(csvFilePath);
+        this.parallelism = Math.max(1, parallelism);
+
+        if (!Files.exists(csvPath)) {
+            throw new IOException("CSV file does not exist: " + csvFilePath);
+        }
+        readHeader();
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    private void readHeader() throws IOException {
+        try (CSVTokenizer tokenizer = new CSVTokenizer(csvPath)) {
+            if (!tokenizer.nextRecord()) {
+                throw new IOException("CSV file is empty");
+            }
+            String[] headers = new String[tokenizer.getFieldCount()];
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = tokenizer.getString(i);
+            }
+            columnNames = Arrays.asList(headers);
+        }
+
+        // The data starts right after the header record
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            dataStart = nextRecordStart(channel, 0, 0);
+        }
+    }
+
+    /**
+     * Split the data section into byte ranges that start and end on record boundaries. Every
+     * byte is scanned once, each range from its own start.
+     */
+    private List<long[]> computeRanges() throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long dataSize = fileSize - dataStart;
+            long chunkBytes = Math.max(MIN_CHUNK_BYTES, dataSize / ((long) parallelism * CHUNKS_PER_WORKER) + 1);
+
+            long start = dataStart;
+            while (start < fileSize) {
+                long end = start + chunkBytes >= fileSize ? fileSize : nextRecordStart(channel, start, start + chunkBytes);
+                ranges.add(new long[] { start, end });
+                start = end;
+            }
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Return the offset just past the first record-ending newline at or after position. Quotes are
+     * followed from recordStart, which must start a record, the way CSVTokenizer reads them: a
+     * field opening with a quote runs to the next single quote, and "" inside it is a quote.
+     */
+    private static long nextRecordStart(FileChannel channel, long recordStart, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long fileSize = channel.size();
+        boolean quoted = false;
+        boolean fieldStart = true;
+        boolean afterQuote = false;
+
+        long offset = recordStart;
+        while (offset < fileSize) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (quoted) {
+                    if (b == '"') {
+                        quoted = false;
+                        afterQuote = true;
+                    }
+                    continue;
+                }
+                if (b == '"' && (fieldStart || afterQuote)) {
+                    // Opens a quoted field, or is the second half of a doubled quote inside one
+                    quoted = true;
+                } else if (b == '\n' && offset + i >= position) {
+                    return offset + i + 1;
+                }
+                fieldStart = b == ',' || b == '\n';
+                afterQuote = false;
+            }
+            offset += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Parse one byte range into a column chunk
+     */
+    private ColumnChunk parseRange(int chunkIndex, long start, long end) throws IOException {
+        ColumnChunk chunk = new ColumnChunk(chunkIndex, columnNames.size());
+
+        try (CSVTokenizer tokenizer = CSVTokenizer.forRange(csvPath, start, end)) {
+            while (tokenizer.nextRecord()) {
+                // Make sure we have the right number of values
+                if (tokenizer.getFieldCount() != columnNames.size()) {
+                    System.err.println("Warning: Row has incorrect number of values: " + tokenizer.getRecordString());
+                    continue;
+                }
+
+                for (int i = 0; i < columnNames.size(); i++) {
+                    String value = tokenizer.getString(i);
+                    chunk.columns.get(i).add(value);
+                    chunk.sketches[i].add(value);
+                }
+                chunk.rowCount++;
+            }
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Parse the file in parallel and pass each chunk to the consumer in row order.
+     * At most a few chunks per worker are in flight, so memory stays bounded.
+     */
+    public void forEachChunk(ChunkConsumer consumer) throws IOException {
+        List<long[]> ranges = computeRanges();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        int window = parallelism * 2;
+
+        try {
+            Deque<ForkJoinTask<ColumnChunk>> inFlight = new ArrayDeque<>();
+            int nextRange = 0;
+
+            while (nextRange < ranges.size() || !inFlight.isEmpty()) {
+                // Keep the pool busy with the next ranges
+                while (nextRange < ranges.size() && inFlight.size() < window) {
+                    final int chunkIndex = nextRange;
+                    final long[] range = ranges.get(nextRange++);
+                    inFlight.addLast(pool.submit(() -> parseRange(chunkIndex, range[0], range[1])));
+                }
+
+                // Hand back the oldest chunk so rows come out in file order
+                consumer.accept(joinTask(inFlight.removeFirst()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T> T joinTask(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing CSV", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to parse CSV chunk", e.getCause());
+        }
+    }
+
+    /**
+     * Infer the schema with one byte-level pass, scanning the ranges in parallel
+     */
+    public TableSchema inferSchema() throws IOException {
+        List<long[]> ranges = computeRanges();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            List<ForkJoinTask<ColumnType[]>> tasks = new ArrayList<>();
+            for (long[] range : ranges) {
+                tasks.add(pool.submit(() -> {
+                    try (CSVTokenizer tokenizer = CSVTokenizer.forRange(csvPath, range[0], range[1])) {
+                        return TableSchema.inferTypes(tokenizer, columnNames.size());
+                    }
+                }));
+            }
+
+            ColumnType[] types = new ColumnType[columnNames.size()];
+            for (ForkJoinTask<ColumnType[]> task : tasks) {
+                types = TableSchema.mergeTypes(types, joinTask(task));
+            }
+            return TableSchema.fromTypes(columnNames, types);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Parse the whole file in parallel and merge the chunks into full columns
+     */
+    public Map<String, List<String>> readAllColumns() throws IOException {
+        return readAllColumns(new HashMap<>());
+    }
+
+    /**
+     * Parse the whole file in parallel, merging the chunks into full columns and
+     * their sketches into one distinct-value sketch per column
+     */
+    public Map<String, List<String>> readAllColumns(Map<String, CardinalitySketch> sketches) throws IOException {
+        Map<String, List<String>> allColumnData = new HashMap<>();
+        for (String columnName : columnNames) {
+            allColumnData.put(columnName, new ArrayList<>());
+            sketches.put(columnName, new CardinalitySketch());
+        }
+
+        forEachChunk(chunk -> {
+            for (int i = 0; i < columnNames.size(); i++) {
+                allColumnData.get(columnNames.get(i)).addAll(chunk.getColumn(i));
+                sketches.get(columnNames.get(i)).merge(chunk.getSketch(i));
+            }
+        });
+
+        return allColumnData;
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Bulk loads a directory of CSV extracts into one store partitioned by year.
+ * Every partition is a complete store of its own (column files, dictionaries and zone maps)
+ * in a "year=YYYY" subdirectory, listed in the root's partitions.txt.
+ */
+public class PartitionedBulkLoader {
+    public static final String PARTITIONS_FILE = "partitions.txt";
+    public static final String PARTITION_PREFIX = "year=";
+    private static final String STAGING_DIRECTORY = "_staging";
+    private static final byte[] NEWLINE = "\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Path csvDirectory;
+    private final String partitionColumn;
+    private final int parallelism;
+
+    /**
+     * Loads one partition's CSV into the given partition directory, on at most parallelism threads
+     */
+    @FunctionalInterface
+    public interface PartitionLoader {
+        void load(String partitionDirectory, String csvFilePath, int parallelism) throws IOException;
+    }
+
+    /**
+     * @param partitionColumn a yyyy-MM column whose year decides each row's partition
+     */
+    public PartitionedBulkLoader(String csvDirectory, String partitionColumn, int parallelism) throws IOException {
+        this.csvDirectory = Paths.get(csvDirectory);
+        this.partitionColumn = partitionColumn;
+        this.parallelism = Math.max(1, parallelism);
+
+        if (!Files.isDirectory(this.csvDirectory)) {
+            throw new IOException("CSV directory does not exist: " + csvDirectory);
+        }
+    }
+
+    public List<String> loadNormal(String rootDirectory) throws IOException {
+        // The streaming loader writes on the calling thread, so it needs no share of the pool
+        return load(rootDirectory, (partitionDirectory, csvFilePath, partitionParallelism) ->
+                new NormalColumnStore(partitionDirectory).loadFromCSV(csvFilePath));
+    }
+
+    public List<String> loadCompressed(String rootDirectory) throws IOException {
+        return load(rootDirectory, (partitionDirectory, csvFilePath, partitionParallelism) ->
+                new CompressedColumnStore(partitionDirectory).loadFromCSV(csvFilePath, partitionParallelism));
+    }
+
+    /**
+     * Split every CSV by year in parallel, then load the partitions in parallel.
+     * Returns the years that were loaded.
+     */
+    public List<String> load(String rootDirectory, PartitionLoader partitionLoader) throws IOException {
+        long startTime = System.nanoTime();
+        Path root = Paths.get(rootDirectory);
+        Path staging = root.resolve(STAGING_DIRECTORY);
+        Files.createDirectories(staging);
+
+        List<Path> csvFiles = listCSVFiles();
+        String header = readHeader(csvFiles.get(0));
+        for (Path csvFile : csvFiles) {
+            if (!readHeader(csvFile).equals(header)) {
+                throw new IOException("CSV header of " + csvFile + " differs from " + csvFiles.get(0));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Step 1: every file is split into one staging file per year it contains
+            List<ForkJoinTask<Map<String, Long>>> splitTasks = new ArrayList<>();
+            for (int i = 0; i < csvFiles.size(); i++) {
+                final int fileIndex = i;
+                splitTasks.add(pool.submit(() -> splitByYear(csvFiles.get(fileIndex), fileIndex, staging)));
+            }
+            TreeMap<String, Long> rowsPerYear = new TreeMap<>();
+            for (ForkJoinTask<Map<String, Long>> task : splitTasks) {
+                joinTask(task).forEach((year, rows) -> rowsPerYear.merge(year, rows, Long::sum));
+            }
+
+            // Step 2: each year's staging files are merged in file order and loaded into its own partition.
+            // The partitions load side by side, so they split the threads rather than each taking them all
+            int partitionParallelism = Math.max(1, parallelism / Math.max(1, rowsPerYear.size()));
+            List<ForkJoinTask<Void>> loadTasks = new ArrayList<>();
+            for (String year : rowsPerYear.keySet()) {
+                loadTasks.add(pool.submit(() -> {
+                    Path partitionCsv = mergeStagingFiles(staging, year, csvFiles.size(), header);
+                    partitionLoader.load(root.resolve(PARTITION_PREFIX + year).toString(), partitionCsv.toString(), partitionParallelism);
+                    Files.delete(partitionCsv);
+                    return null;
+                }));
+            }
+            for (ForkJoinTask<Void> task : loadTasks) {
+                joinTask(task);
+            }
+
+            savePartitions(root, rowsPerYear);
+            Files.delete(staging);
+
+            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            System.out.println(String.format("Loaded %d files into %d year partitions in %.2f s",
+                    csvFiles.size(), rowsPerYear.size(), seconds));
+            return new ArrayList<>(rowsPerYear.keySet());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<Path> listCSVFiles() throws IOException {
+        List<Path> csvFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(csvDirectory, "*.csv")) {
+            for (Path csvFile : stream) {
+                csvFiles.add(csvFile);
+            }
+        }
+        if (csvFiles.isEmpty()) {
+            throw new IOException("No CSV files found in " + csvDirectory);
+        }
+        Collections.sort(csvFiles);
+        return csvFiles;
+    }
+
+    private static String readHeader(Path csvFile) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("CSV file is empty: " + csvFile);
+            }
+            return header;
+        }
+    }
+
+    /**
+     * Copy the rows of one CSV into <staging>/<year>_<fileIndex>.csv, returning the row count per year
+     */
+    private Map<String, Long> splitByYear(Path csvFile, int fileIndex, Path staging) throws IOException {
+        Map<String, OutputStream> writers = new HashMap<>();
+        Map<String, Long> rowsPerYear = new HashMap<>();
+
+        try (CSVTokenizer tokenizer = new CSVTokenizer(csvFile)) {
+            tokenizer.nextRecord();
+            List<String> headers = new ArrayList<>();
+            for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+                headers.add(tokenizer.getString(i));
+            }
+            int partitionIndex = headers.indexOf(partitionColumn);
+            if (partitionIndex < 0) {
+                throw new IOException("Column " + partitionColumn + " not found in " + csvFile);
+            }
+
+            while (tokenizer.nextRecord()) {
+                // Make sure we have the right number of values
+                if (tokenizer.getFieldCount() != headers.size()) {
+                    System.err.println("Warning: Row has incorrect number of values: " + tokenizer.getRecordString());
+                    continue;
+                }
+
+                String year = partitionYear(tokenizer.getString(partitionIndex));
+                OutputStream writer = writers.get(year);
+                if (writer == null) {
+                    writer = new BufferedOutputStream(Files.newOutputStream(stagingFile(staging, year, fileIndex)), 64 * 1024);
+                    writers.put(year, writer);
+                }
+                tokenizer.copyRecord(writer);
+                writer.write(NEWLINE);
+                rowsPerYear.merge(year, 1L, Long::sum);
+            }
+        } finally {
+            for (OutputStream writer : writers.values()) {
+                writer.close();
+            }
+        }
+
+        return rowsPerYear;
+    }
+
+    private static String partitionYear(String yearMonth) throws IOException {
+        if (yearMonth.length() < 4) {
+            throw new IOException("Cannot partition on value: " + yearMonth);
+        }
+        return yearMonth.substring(0, 4);
+    }
+
+    private static Path stagingFile(Path staging, String year, int fileIndex) {
+        return staging.resolve(year + "_" + fileIndex + ".csv");
+    }
+
+    /**
+     * Concatenate a year's staging files behind the header into <staging>/<year>.csv
+     */
+    private static Path mergeStagingFiles(Path staging, String year, int fileCount, String header) throws IOException {
+        Path partitionCsv = staging.resolve(year + ".csv");
+        try (FileChannel out = FileChannel.open(partitionCsv, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap((header + "\n").getBytes(StandardCharsets.UTF_8)));
+            for (int fileIndex = 0; fileIndex < fileCount; fileIndex++) {
+                Path part = stagingFile(staging, year, fileIndex);
+                if (!Files.exists(part)) {
+                    continue;
+                }
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long position = 0;
+                    while (position < in.size()) {
+                        position += in.transferTo(position, in.size() - position, out);
+                    }
+                }
+                Files.delete(part);
+            }
+        }
+        return partitionCsv;
+    }
+
+    private static void savePartitions(Path root, Map<String, Long> rowsPerYear) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(root.resolve(PARTITIONS_FILE))) {
+            writer.write("# Partitions");
+            writer.newLine();
+            writer.write("# Format: year,row_count");
+            writer.newLine();
+
+            for (Map.Entry<String, Long> entry : rowsPerYear.entrySet()) {
+                writer.write(entry.getKey() + "," + entry.getValue());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Years of the partitions under a partitioned store's root, in order
+     */
+    public static List<String> readPartitions(String rootDirectory) throws IOException {
+        Path partitionsPath = Paths.get(rootDirectory, PARTITIONS_FILE);
+        if (!Files.exists(partitionsPath)) {
+            throw new IOException("Partitions file not found in " + rootDirectory);
+        }
+
+        List<String> years = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(partitionsPath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;  // Skip comments
+                }
+                String[] parts = line.split(",");
+                if (parts.length >= 2) {
+                    years.add(parts[0]);
+                }
+            }
+        }
+        return years;
+    }
+
+    public static String partitionDirectory(String rootDirectory, String year) {
+        return Paths.get(rootDirectory, PARTITION_PREFIX + year).toString();
+    }
+
+    private static <T> T joinTask(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading partitions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to load partition", e.getCause());
+        }
+    }
+}
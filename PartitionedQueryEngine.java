@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Runs the month/town queries over a store written by PartitionedBulkLoader.
+ * Only the year partitions that can hold the requested month or the month after it are opened;
+ * the per-partition results are then merged into the same results/timings maps as the other engines.
+ */
+public class PartitionedQueryEngine {
+    private final String rootDirectory;
+    private final List<String> years;
+
+    /**
+     * Runs all queries on a single partition directory
+     */
+    @FunctionalInterface
+    public interface PartitionQuery {
+        Map<String, Object> run(String partitionDirectory) throws IOException;
+    }
+
+    public PartitionedQueryEngine(String rootDirectory) throws IOException {
+        this.rootDirectory = rootDirectory;
+        this.years = PartitionedBulkLoader.readPartitions(rootDirectory);
+    }
+
+    /**
+     * Years whose partitions can contain yearMonth or the month after it
+     */
+    public List<String> getRelevantPartitions(String yearMonth) {
+        Set<String> wantedYears = new HashSet<>();
+        wantedYears.add(yearMonth.substring(0, 4));
+        wantedYears.add(CompressionTestMain.getNextMonthStr(yearMonth).substring(0, 4));
+
+        List<String> relevant = new ArrayList<>();
+        for (String year : years) {
+            if (wantedYears.contains(year)) {
+                relevant.add(year);
+            }
+        }
+        System.out.println("Scanning partitions " + relevant + ", skipping " + (years.size() - relevant.size()) + " of " + years.size());
+        return relevant;
+    }
+
+    public Map<String, Object> runNormalQueries(String yearMonth, String town, boolean useZoneMaps) throws IOException {
+        return runAllQueries(yearMonth, town, partitionDirectory -> {
+            NormalQueryEngine engine = new NormalQueryEngine(new NormalColumnStore(partitionDirectory));
+            return useZoneMaps ? engine.runAllQueriesZoneMap(yearMonth, town) : engine.runAllQueries(yearMonth, town);
+        });
+    }
+
+    public Map<String, Object> runCompressedQueries(String yearMonth, String town, boolean useZoneMaps) throws IOException {
+        return runAllQueries(yearMonth, town, partitionDirectory -> {
+            CompressedColumnStore store = new CompressedColumnStore(partitionDirectory);
+            store.loadMetadata();
+            CompressedQueryEngine engine = new CompressedQueryEngine(store);
+            return useZoneMaps ? engine.runAllQueriesZoneMap(yearMonth, town) : engine.runAllQueries(yearMonth, town);
+        });
+    }
+
+    /**
+     * Run the queries on every relevant partition and merge the results
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> runAllQueries(String yearMonth, String town, PartitionQuery query) throws IOException {
+        List<Map<String, String>> partitionResults = new ArrayList<>();
+        Map<String, Double> timings = new HashMap<>();
+
+        for (String year : getRelevantPartitions(yearMonth)) {
+            Map<String, Object> resultsAndTimings = query.run(PartitionedBulkLoader.partitionDirectory(rootDirectory, year));
+            partitionResults.add((Map<String, String>) resultsAndTimings.get("results"));
+            ((Map<String, Double>) resultsAndTimings.get("timings")).forEach((key, ms) -> timings.merge(key, ms, Double::sum));
+        }
+
+        Map<String, Object> resultsAndTimings = new HashMap<>();
+        resultsAndTimings.put("results", mergeResults(partitionResults));
+        resultsAndTimings.put("timings", timings);
+        return resultsAndTimings;
+    }
+
+    /**
+     * Merge per-partition aggregates exactly: minimums by min, the average weighted by subset size,
+     * and the standard deviation from each partition's count, mean and variance
+     */
+    private static Map<String, String> mergeResults(List<Map<String, String>> partitionResults) {
+        long count = 0;
+        double sum = 0.0;
+        double minPrice = Double.MAX_VALUE;
+        double minPricePerSqm = Double.MAX_VALUE;
+        for (Map<String, String> results : partitionResults) {
+            long n = Long.parseLong(results.get("Subset Size"));
+            if (n == 0) {
+                continue;
+            }
+            count += n;
+            sum += n * Double.parseDouble(results.get("Average Price"));
+            minPrice = Math.min(minPrice, Double.parseDouble(results.get("Minimum Price")));
+            minPricePerSqm = Math.min(minPricePerSqm, Double.parseDouble(results.get("Minimum Price per Square Meter")));
+        }
+
+        Map<String, String> merged = new HashMap<>();
+        merged.put("Subset Size", String.valueOf(count));
+        if (count == 0) {
+            merged.put("Minimum Price", "No result");
+            merged.put("Standard Deviation of Price", "No result");
+            merged.put("Average Price", "No result");
+            merged.put("Minimum Price per Square Meter", "No result");
+            return merged;
+        }
+
+        double mean = sum / count;
+        double squaredDeviations = 0.0;
+        for (Map<String, String> results : partitionResults) {
+            long n = Long.parseLong(results.get("Subset Size"));
+            if (n == 0) {
+                continue;
+            }
+            double partitionMean = Double.parseDouble(results.get("Average Price"));
+            if (n > 1) {
+                double partitionStdDev = Double.parseDouble(results.get("Standard Deviation of Price"));
+                squaredDeviations += (n - 1) * partitionStdDev * partitionStdDev;
+            }
+            squaredDeviations += n * (partitionMean - mean) * (partitionMean - mean);
+        }
+
+        merged.put("Minimum Price", String.valueOf(minPrice));
+        merged.put("Standard Deviation of Price", String.valueOf(Math.sqrt(squaredDeviations / (count - 1))));
+        merged.put("Average Price", String.valueOf(mean));
+        merged.put("Minimum Price per Square Meter", String.valueOf(minPricePerSqm));
+        return merged;
+    }
+}
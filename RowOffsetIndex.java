@@ -0,0 +1,235 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Sparse index of where rows start in a newline-delimited text column. The byte offset of
+ * every STRIDE-th row is kept, so fetching a row is one index lookup plus a scan over at
+ * most STRIDE - 1 lines of the mapped column. The .idx file sits next to the column file
+ * and is little-endian like the binary columns:
+ *
+ *   int magic, int stride, long rowCount, long columnBytes, long[] offsets
+ *
+ * columnBytes is the size of the column the index was built for, so after an append the
+ * index is noticed to be behind and extended from its last checkpoint. Stores keep the
+ * indexes they open, so the file is read once per column rather than once per row fetch.
+ */
+public class RowOffsetIndex {
+    public static final String FILE_SUFFIX = ".idx";
+    public static final int STRIDE = 64;
+    private static final int MAGIC = 0x58444952; // "RIDX"
+    private static final int HEADER_BYTES = 24;
+
+    private final int stride;
+    private final long rowCount;
+    private final long columnBytes;
+    private final long[] offsets;
+
+    private RowOffsetIndex(int stride, long rowCount, long columnBytes, long[] offsets) {
+        this.stride = stride;
+        this.rowCount = rowCount;
+        this.columnBytes = columnBytes;
+        this.offsets = offsets;
+    }
+
+    public static Path path(Path columnFile) {
+        return columnFile.resolveSibling(columnFile.getFileName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Index a column by scanning it for line ends
+     */
+    public static RowOffsetIndex build(ByteBuffer columnData) {
+        return build(columnData, null);
+    }
+
+    /**
+     * Index a column that grew at the end, scanning only from the last row the previous index holds
+     */
+    public static RowOffsetIndex build(ByteBuffer columnData, RowOffsetIndex previous) {
+        int stride = previous != null ? previous.stride : STRIDE;
+        long rowCount = 0;
+        long position = 0;
+        long[] offsets = new long[16];
+        int offsetCount = 0;
+        if (previous != null && previous.offsets.length > 0 && previous.columnBytes <= columnData.limit()) {
+            // The last checkpoint's row starts the rescan
+            offsetCount = previous.offsets.length - 1;
+            offsets = Arrays.copyOf(previous.offsets, Math.max(16, previous.offsets.length));
+            rowCount = (long) offsetCount * stride;
+            position = previous.offsets[offsetCount];
+        }
+
+        int limit = columnData.limit();
+        for (int i = (int) position; i < limit; i++) {
+            if (i == position && rowCount % stride == 0) {
+                if (offsetCount == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsetCount * 2);
+                }
+                offsets[offsetCount++] = position;
+            }
+            if (columnData.get(i) == '\n') {
+                rowCount++;
+                position = i + 1;
+            }
+        }
+        return new RowOffsetIndex(stride, rowCount, limit, Arrays.copyOf(offsets, offsetCount));
+    }
+
+    /**
+     * The saved index of a column file, rebuilt and saved again when it is missing or the
+     * file has grown since. Writers that replace a column file save a new index with it.
+     */
+    public static RowOffsetIndex open(Path columnFile, ByteBuffer columnData) throws IOException {
+        Path indexPath = path(columnFile);
+        RowOffsetIndex saved = Files.exists(indexPath) ? read(indexPath) : null;
+        if (saved != null && saved.isFor(columnData)) {
+            return saved;
+        }
+        RowOffsetIndex index = build(columnData, saved);
+        index.save(indexPath);
+        return index;
+    }
+
+    private static RowOffsetIndex read(Path indexPath) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(indexPath)).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.limit() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            return null;
+        }
+        int stride = data.getInt(4);
+        long rowCount = data.getLong(8);
+        long columnBytes = data.getLong(16);
+        long[] offsets = new long[(data.limit() - HEADER_BYTES) / Long.BYTES];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = data.getLong(HEADER_BYTES + i * Long.BYTES);
+        }
+        return new RowOffsetIndex(stride, rowCount, columnBytes, offsets);
+    }
+
+    public void save(Path indexPath) throws IOException {
+        try (ColumnFileWriter out = new ColumnFileWriter(indexPath)) {
+            ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + offsets.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.putInt(MAGIC).putInt(stride).putLong(rowCount).putLong(columnBytes);
+            for (long offset : offsets) {
+                bytes.putLong(offset);
+            }
+            out.write(bytes.array());
+            out.commit();
+        }
+    }
+
+    /**
+     * Map a text column file for reading rows through its index
+     */
+    public static ByteBuffer map(Path columnFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(columnFile, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Index and save it for a column file that was just written
+     */
+    public static RowOffsetIndex write(Path columnFile) throws IOException {
+        RowOffsetIndex index = build(map(columnFile));
+        index.save(path(columnFile));
+        return index;
+    }
+
+    /**
+     * Whether this index was built for the column data as it is now
+     */
+    public boolean isFor(ByteBuffer columnData) {
+        return columnBytes == columnData.limit();
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Positions of the row ids in ascending row order, so a batch can be read in one pass
+     * and the values put back in the order they were asked for
+     */
+    public static int[] ascendingOrder(int[] rows) {
+        Integer[] order = new Integer[rows.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> rows[i]));
+        int[] result = new int[order.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * Byte offset of the start of a row: its checkpoint, then one line skipped per row after it
+     */
+    private int rowStart(ByteBuffer columnData, int row) {
+        int position = (int) offsets[row / stride];
+        for (int skip = row % stride; skip > 0; skip--) {
+            position = lineEnd(columnData, position) + 1;
+        }
+        return position;
+    }
+
+    private static int lineEnd(ByteBuffer columnData, int position) {
+        while (columnData.get(position) != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    private static String line(ByteBuffer columnData, int start, int end) {
+        // Lines written with a \r\n separator keep the \r before the \n
+        if (end > start && columnData.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        ByteBuffer source = columnData.duplicate();
+        source.position(start);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One row of the column
+     */
+    public String getValue(ByteBuffer columnData, int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
+        }
+        int start = rowStart(columnData, row);
+        return line(columnData, start, lineEnd(columnData, start));
+    }
+
+    /**
+     * Rows in ascending order, read in one forward pass: a row in the same stride as the
+     * previous one continues from where that one ended instead of from the checkpoint
+     */
+    public List<String> getValues(ByteBuffer columnData, int[] sortedRows) {
+        List<String> values = new ArrayList<>(sortedRows.length);
+        int row = -1;
+        int position = 0;
+        for (int target : sortedRows) {
+            if (target < 0 || target >= rowCount) {
+                throw new IndexOutOfBoundsException("Row index out of bounds: " + target);
+            }
+            if (row < 0 || target < row || target / stride != row / stride) {
+                row = target - target % stride;
+                position = (int) offsets[target / stride];
+            }
+            for (; row < target; row++) {
+                position = lineEnd(columnData, position) + 1;
+            }
+            values.add(line(columnData, position, lineEnd(columnData, position)));
+        }
+        return values;
+    }
+}
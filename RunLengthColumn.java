@@ -0,0 +1,185 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Run-length encoded dictionary codes, for columns where equal values are clustered
+ * (the source data is ordered by month, so month is a few hundred long runs).
+ * The .cmp file holds big-endian ints like the bit-packed layout, with a magic number in
+ * place of the bit width so readers can tell the two apart:
+ *
+ *   int magic, int recordCount, int bitsPerValue, int runCount, runCount x (int code, int startRow)
+ *
+ * The record count sits at the same offset as in a bit-packed file.
+ */
+public class RunLengthColumn {
+    public static final int MAGIC = 0x524C4500; // "RLE\0"
+    private static final int HEADER_BYTES = 16;
+    private static final int RUN_BYTES = 8;
+
+    private final int recordCount;
+    private final int bitsPerValue;
+    private final int[] runCodes;
+    private final int[] runStarts;
+
+    private RunLengthColumn(int recordCount, int bitsPerValue, int[] runCodes, int[] runStarts) {
+        this.recordCount = recordCount;
+        this.bitsPerValue = bitsPerValue;
+        this.runCodes = runCodes;
+        this.runStarts = runStarts;
+    }
+
+    /**
+     * Whether column data is run-length encoded rather than bit-packed
+     */
+    public static boolean isRunLength(ByteBuffer data) {
+        return data.limit() >= HEADER_BYTES && data.getInt(0) == MAGIC;
+    }
+
+    public static RunLengthColumn read(ByteBuffer data) throws IOException {
+        if (!isRunLength(data)) {
+            throw new IOException("Column data is not run-length encoded");
+        }
+        int runCount = data.getInt(12);
+        int[] runCodes = new int[runCount];
+        int[] runStarts = new int[runCount];
+        for (int i = 0; i < runCount; i++) {
+            runCodes[i] = data.getInt(HEADER_BYTES + i * RUN_BYTES);
+            runStarts[i] = data.getInt(HEADER_BYTES + i * RUN_BYTES + 4);
+        }
+        return new RunLengthColumn(data.getInt(4), data.getInt(8), runCodes, runStarts);
+    }
+
+    public static RunLengthColumn encode(int[] codes, int bitsPerValue) {
+        int runCount = countRuns(codes);
+        int[] runCodes = new int[runCount];
+        int[] runStarts = new int[runCount];
+        int run = -1;
+        for (int row = 0; row < codes.length; row++) {
+            if (row == 0 || codes[row] != codes[row - 1]) {
+                run++;
+                runCodes[run] = codes[row];
+                runStarts[run] = row;
+            }
+        }
+        return new RunLengthColumn(codes.length, bitsPerValue, runCodes, runStarts);
+    }
+
+    public static int countRuns(int[] codes) {
+        int runs = 0;
+        for (int row = 0; row < codes.length; row++) {
+            if (row == 0 || codes[row] != codes[row - 1]) {
+                runs++;
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Size of the encoded file, to compare against bit-packing the same codes
+     */
+    public static long encodedBytes(int runCount) {
+        return HEADER_BYTES + (long) runCount * RUN_BYTES;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) encodedBytes(runCodes.length));
+        bytes.putInt(MAGIC).putInt(recordCount).putInt(bitsPerValue).putInt(runCodes.length);
+        for (int i = 0; i < runCodes.length; i++) {
+            bytes.putInt(runCodes[i]).putInt(runStarts[i]);
+        }
+        out.write(bytes.array());
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    public int getBitsPerValue() {
+        return bitsPerValue;
+    }
+
+    public int getRunCount() {
+        return runCodes.length;
+    }
+
+    private int runEnd(int run) {
+        return run + 1 < runStarts.length ? runStarts[run + 1] : recordCount;
+    }
+
+    /**
+     * Index of the run holding a row
+     */
+    private int runOf(int row) {
+        int run = Arrays.binarySearch(runStarts, row);
+        return run >= 0 ? run : -run - 2;
+    }
+
+    /**
+     * Code of one row, found by binary search over the run starts
+     */
+    public int getCode(int row) {
+        return runCodes[runOf(row)];
+    }
+
+    public int[] decode() {
+        return decode(0, recordCount);
+    }
+
+    /**
+     * Codes of the rows from (inclusive) to (exclusive)
+     */
+    public int[] decode(int from, int to) {
+        int[] codes = new int[to - from];
+        if (codes.length == 0) {
+            return codes;
+        }
+        for (int run = runOf(from); run < runCodes.length && runStarts[run] < to; run++) {
+            int start = Math.max(runStarts[run], from);
+            int end = Math.min(runEnd(run), to);
+            Arrays.fill(codes, start - from, end - from, runCodes[run]);
+        }
+        return codes;
+    }
+
+    /**
+     * Row ranges {start, end} whose codes satisfy the predicate, evaluated once per run
+     * instead of once per row. Adjacent matching runs are merged into one range.
+     */
+    public List<int[]> selectRanges(IntPredicate codeMatches) {
+        List<int[]> ranges = new ArrayList<>();
+        for (int run = 0; run < runCodes.length; run++) {
+            if (!codeMatches.test(runCodes[run])) {
+                continue;
+            }
+            int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] == runStarts[run]) {
+                last[1] = runEnd(run);
+            } else {
+                ranges.add(new int[] {runStarts[run], runEnd(run)});
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Zone map over zones of zoneSize rows. Each zone's byte range covers the runs that overlap it.
+     */
+    public List<ZoneMetadata> buildZones(int zoneSize) {
+        List<ZoneMetadata> zones = new ArrayList<>();
+        for (int from = 0; from < recordCount; from += zoneSize) {
+            int to = Math.min(from + zoneSize, recordCount);
+            int firstRun = runOf(from);
+            int lastRun = runOf(to - 1);
+            int minCode = runCodes[firstRun];
+            int maxCode = runCodes[firstRun];
+            for (int run = firstRun + 1; run <= lastRun; run++) {
+                minCode = Math.min(minCode, runCodes[run]);
+                maxCode = Math.max(maxCode, runCodes[run]);
+            }
+            zones.add(new ZoneMetadata(minCode, maxCode, HEADER_BYTES + (long) firstRun * RUN_BYTES, HEADER_BYTES + (long) (lastRun + 1) * RUN_BYTES));
+        }
+        return zones;
+    }
+}
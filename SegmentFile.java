@@ -0,0 +1,302 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A whole compressed store packed into one file, laid out like a Parquet row group:
+ * the column chunks, then the dictionaries, then a footer describing every column
+ * (type, whether it is compressed, chunk and dictionary offsets, zone statistics).
+ * The file is mapped once and the footer is decoded from it, so opening a store costs
+ * one open call and no text parsing. All integers are little-endian:
+ *
+ *   int magic, int version, chunk and dictionary bytes (each 8-byte aligned), footer,
+ *   long footerOffset, int footerLength, int magic
+ *
+ * Footer, per column: name, type, compressed flag, chunk offset/length, dictionary
+ * offset/length (0 when not compressed), numeric-zone flag, zone count, and per zone
+ * its min, max and start/end bytes relative to the start of the chunk.
+ */
+public class SegmentFile {
+    public static final String FILE_NAME = "store.seg";
+    private static final int MAGIC = 0x47455343; // "CSEG"
+    private static final int VERSION = 1;
+    private static final int TRAILER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final List<String> columnNames = new ArrayList<>();
+    private final Map<String, Column> columns = new HashMap<>();
+
+    /**
+     * Footer entry of one column
+     */
+    public static class Column {
+        private final String name;
+        private final ColumnType type;
+        private final boolean compressed;
+        private final long chunkOffset;
+        private final long chunkLength;
+        private final long dictionaryOffset;
+        private final long dictionaryLength;
+        private final List<ZoneMetadata> zones;
+
+        public Column(String name, ColumnType type, boolean compressed, long chunkOffset, long chunkLength,
+                      long dictionaryOffset, long dictionaryLength, List<ZoneMetadata> zones) {
+            this.name = name;
+            this.type = type;
+            this.compressed = compressed;
+            this.chunkOffset = chunkOffset;
+            this.chunkLength = chunkLength;
+            this.dictionaryOffset = dictionaryOffset;
+            this.dictionaryLength = dictionaryLength;
+            this.zones = zones;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ColumnType getType() {
+            return type;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public List<ZoneMetadata> getZones() {
+            return zones;
+        }
+    }
+
+    /**
+     * Column data to be packed: the bytes of its data file, its dictionary file if it is
+     * compressed, and its zone map (empty if it has none)
+     */
+    public static class ColumnSource {
+        private final String name;
+        private final ColumnType type;
+        private final Path chunkFile;
+        private final Path dictionaryFile;
+        private final List<ZoneMetadata> zones;
+
+        public ColumnSource(String name, ColumnType type, Path chunkFile, Path dictionaryFile, List<ZoneMetadata> zones) {
+            this.name = name;
+            this.type = type;
+            this.chunkFile = chunkFile;
+            this.dictionaryFile = dictionaryFile;
+            this.zones = zones;
+        }
+    }
+
+    private SegmentFile(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int size = buffer.capacity();
+        if (size < 2 * Integer.BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(size - Integer.BYTES) != MAGIC) {
+            throw new IOException("Not a segment file");
+        }
+        if (buffer.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Unsupported segment version " + buffer.getInt(Integer.BYTES));
+        }
+        readFooter((int) buffer.getLong(size - TRAILER_BYTES));
+    }
+
+    public static SegmentFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment file too large to map: " + path);
+            }
+            return new SegmentFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private void readFooter(int position) {
+        ByteBuffer footer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        footer.position(position);
+
+        int columnCount = footer.getInt();
+        for (int i = 0; i < columnCount; i++) {
+            String name = readString(footer);
+            ColumnType type = ColumnType.valueOf(readString(footer));
+            boolean compressed = footer.get() != 0;
+            long chunkOffset = footer.getLong();
+            long chunkLength = footer.getLong();
+            long dictionaryOffset = footer.getLong();
+            long dictionaryLength = footer.getLong();
+
+            boolean numericZones = footer.get() != 0;
+            int zoneCount = footer.getInt();
+            List<ZoneMetadata> zones = new ArrayList<>(zoneCount);
+            for (int z = 0; z < zoneCount; z++) {
+                Object min = numericZones ? (Object) footer.getDouble() : readString(footer);
+                Object max = numericZones ? (Object) footer.getDouble() : readString(footer);
+                zones.add(new ZoneMetadata(min, max, footer.getLong(), footer.getLong()));
+            }
+
+            columnNames.add(name);
+            columns.put(name, new Column(name, type, compressed, chunkOffset, chunkLength, dictionaryOffset, dictionaryLength, zones));
+        }
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public Column getColumn(String columnName) {
+        Column column = columns.get(columnName);
+        if (column == null) {
+            throw new IllegalArgumentException("Column not found: " + columnName);
+        }
+        return column;
+    }
+
+    /**
+     * The bytes of a column's chunk, laid out exactly like its .cmp, .bin or .col file
+     */
+    public ByteBuffer getChunk(String columnName) {
+        Column column = getColumn(columnName);
+        return slice(column.chunkOffset, column.chunkLength);
+    }
+
+    public ColumnDictionary getDictionary(String columnName, Comparator<String> order) throws IOException {
+        Column column = getColumn(columnName);
+        if (!column.compressed) {
+            throw new IOException("Column is not dictionary-compressed: " + columnName);
+        }
+        return ColumnDictionary.wrap(slice(column.dictionaryOffset, column.dictionaryLength), order);
+    }
+
+    private ByteBuffer slice(long offset, long length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        view.limit((int) (offset + length));
+        return view.slice();
+    }
+
+    /**
+     * Pack the given columns into a new segment file
+     */
+    public static void write(ColumnFileWriter out, List<ColumnSource> sources) throws IOException {
+        long position = 0;
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        position += 2 * Integer.BYTES;
+
+        // Chunks first, then dictionaries, so a scan of the data stays sequential
+        long[] chunkOffsets = new long[sources.size()];
+        long[] chunkLengths = new long[sources.size()];
+        for (int i = 0; i < sources.size(); i++) {
+            position = pad(out, position);
+            chunkOffsets[i] = position;
+            chunkLengths[i] = copy(out, sources.get(i).chunkFile);
+            position += chunkLengths[i];
+        }
+        long[] dictionaryOffsets = new long[sources.size()];
+        long[] dictionaryLengths = new long[sources.size()];
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).dictionaryFile != null) {
+                position = pad(out, position);
+                dictionaryOffsets[i] = position;
+                dictionaryLengths[i] = copy(out, sources.get(i).dictionaryFile);
+                position += dictionaryLengths[i];
+            }
+        }
+
+        position = pad(out, position);
+        long footerOffset = position;
+        ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+        ByteBuffer footer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        writeInt(footerBytes, footer, sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            ColumnSource source = sources.get(i);
+            writeString(footerBytes, footer, source.name);
+            writeString(footerBytes, footer, source.type.name());
+            footerBytes.write(source.dictionaryFile != null ? 1 : 0);
+            writeLong(footerBytes, footer, chunkOffsets[i]);
+            writeLong(footerBytes, footer, chunkLengths[i]);
+            writeLong(footerBytes, footer, dictionaryOffsets[i]);
+            writeLong(footerBytes, footer, dictionaryLengths[i]);
+
+            boolean numericZones = source.zones.isEmpty() || source.zones.get(0).getMinValue() instanceof Double;
+            footerBytes.write(numericZones ? 1 : 0);
+            writeInt(footerBytes, footer, source.zones.size());
+            for (ZoneMetadata zone : source.zones) {
+                if (numericZones) {
+                    writeDouble(footerBytes, footer, (Double) zone.getMinValue());
+                    writeDouble(footerBytes, footer, (Double) zone.getMaxValue());
+                } else {
+                    writeString(footerBytes, footer, (String) zone.getMinValue());
+                    writeString(footerBytes, footer, (String) zone.getMaxValue());
+                }
+                // Byte ranges stay relative to the chunk, just as they were to the column file
+                writeLong(footerBytes, footer, zone.getStartByte());
+                writeLong(footerBytes, footer, zone.getEndByte());
+            }
+        }
+        out.write(footerBytes.toByteArray());
+
+        out.writeLong(footerOffset);
+        out.writeInt(footerBytes.size());
+        out.writeInt(MAGIC);
+        out.commit();
+    }
+
+    /**
+     * Pad with zeros to the next 8-byte boundary so mapped int64 and float64 values stay aligned
+     */
+    private static long pad(ColumnFileWriter out, long position) throws IOException {
+        while (position % Long.BYTES != 0) {
+            out.write(0);
+            position++;
+        }
+        return position;
+    }
+
+    private static long copy(ColumnFileWriter out, Path file) throws IOException {
+        long length = 0;
+        byte[] block = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(block)) != -1) {
+                out.write(block, 0, read);
+                length += read;
+            }
+        }
+        return length;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, ByteBuffer scratch, int value) {
+        scratch.clear();
+        scratch.putInt(value);
+        out.write(scratch.array(), 0, Integer.BYTES);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, ByteBuffer scratch, long value) {
+        scratch.clear();
+        scratch.putLong(value);
+        out.write(scratch.array(), 0, Long.BYTES);
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, ByteBuffer scratch, double value) {
+        scratch.clear();
+        scratch.putDouble(value);
+        out.write(scratch.array(), 0, Double.BYTES);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, ByteBuffer scratch, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(out, scratch, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer footer) {
+        byte[] bytes = new byte[footer.getInt()];
+        footer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
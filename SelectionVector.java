@@ -0,0 +1,124 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * The rows of a table a filter selected, as global row ids. A selection holding few rows keeps
+ * them as a sorted int[], 32 bits a row; one holding many keeps a bitmap of the whole table,
+ * 1 bit a row in the layout of PackedCodeFilter. Which one is picked by selectivity: the bitmap
+ * once at least one row in 32 is selected, when it is the smaller of the two.
+ *
+ * Queries fetch the columns they aggregate only at the selected rows, after filtering.
+ */
+public class SelectionVector {
+    private static final int ROW_BITS = Integer.SIZE;
+
+    private final int rowCount;
+    private final int size;
+    // Exactly one of the two is set
+    private final long[] bitmap;
+    private final int[] rows;
+
+    private SelectionVector(int rowCount, int size, long[] bitmap, int[] rows) {
+        this.rowCount = rowCount;
+        this.size = size;
+        this.bitmap = bitmap;
+        this.rows = rows;
+    }
+
+    /**
+     * Selection of the rows set in a match bitmap of a table of rowCount rows
+     */
+    public static SelectionVector fromBitmap(long[] bitmap, int rowCount) {
+        int size = PackedCodeFilter.cardinality(bitmap);
+        if (isDense(size, rowCount)) {
+            return new SelectionVector(rowCount, size, bitmap, null);
+        }
+        return new SelectionVector(rowCount, size, null, bitmapRows(bitmap, size));
+    }
+
+    /**
+     * Selection of the given rows, in ascending order, of a table of rowCount rows
+     */
+    public static SelectionVector fromRows(IntColumnVector rows, int rowCount) {
+        if (!isDense(rows.size(), rowCount)) {
+            return new SelectionVector(rowCount, rows.size(), null, rows.toArray());
+        }
+        long[] bitmap = new long[(rowCount + 63) >>> 6];
+        for (int i = 0; i < rows.size(); i++) {
+            int row = rows.get(i);
+            bitmap[row >>> 6] |= 1L << row;
+        }
+        return new SelectionVector(rowCount, rows.size(), bitmap, null);
+    }
+
+    public static SelectionVector empty(int rowCount) {
+        return new SelectionVector(rowCount, 0, null, new int[0]);
+    }
+
+    private static boolean isDense(int size, int rowCount) {
+        return (long) size * ROW_BITS >= rowCount && size > 0;
+    }
+
+    private static int[] bitmapRows(long[] bitmap, int size) {
+        int[] rows = new int[size];
+        int i = 0;
+        for (int word = 0; word < bitmap.length; word++) {
+            for (long bits = bitmap[word]; bits != 0; bits &= bits - 1) {
+                rows[i++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return rows;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Whether the rows are kept as a bitmap of the table
+     */
+    public boolean isDense() {
+        return bitmap != null;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean contains(int row) {
+        if (bitmap != null) {
+            return row >= 0 && row < rowCount && (bitmap[row >>> 6] & (1L << row)) != 0;
+        }
+        return Arrays.binarySearch(rows, row) >= 0;
+    }
+
+    /**
+     * The selected rows in ascending order; a sparse selection's own array, not a copy
+     */
+    public int[] toRows() {
+        return rows != null ? rows : bitmapRows(bitmap, size);
+    }
+
+    public void forEach(IntConsumer action) {
+        if (rows != null) {
+            for (int row : rows) {
+                action.accept(row);
+            }
+            return;
+        }
+        for (int word = 0; word < bitmap.length; word++) {
+            for (long bits = bitmap[word]; bits != 0; bits &= bits - 1) {
+                action.accept((word << 6) + Long.numberOfTrailingZeros(bits));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (isDense() ? "dense" : "sparse") + " selection of " + size + " of " + rowCount + " rows";
+    }
+}
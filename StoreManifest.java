@@ -0,0 +1,274 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Everything needed to open a compressed store without reading its text metadata or its data:
+ * the CSV it was loaded from, and per column its type, encoding, data file, row count,
+ * dictionary statistics and zone map. A CRC32 of the preceding bytes closes the file, so a
+ * torn or edited manifest is rejected rather than trusted. All integers are little-endian
+ * like the segment footer:
+ *
+ *   int magic, int version, source path, long source bytes, long source modified millis,
+ *   int column count, columns, int crc32
+ *
+ * Per column: name, type, encoding, compressed flag, data file name, long data file bytes,
+ * long row count, int dictionary bits and int dictionary size (0 when not compressed),
+ * numeric-zone flag, zone count, and per zone its min, max and start/end bytes.
+ * Strings are an int byte length followed by UTF-8 bytes.
+ */
+public class StoreManifest {
+    public static final String FILE_NAME = "store.manifest";
+    private static final int MAGIC = 0x4E414D53; // "SMAN"
+    private static final int VERSION = 1;
+
+    private final String sourcePath;
+    private final long sourceBytes;
+    private final long sourceModified;
+    private final List<Column> columns;
+
+    /**
+     * Manifest entry of one column
+     */
+    public static class Column {
+        private final String name;
+        private final ColumnType type;
+        private final ColumnEncoding encoding;
+        private final boolean compressed;
+        private final String dataFile;
+        private final long dataFileBytes;
+        private final long rowCount;
+        private final int dictionaryBits;
+        private final int dictionarySize;
+        private final List<ZoneMetadata> zones;
+
+        public Column(String name, ColumnType type, ColumnEncoding encoding, boolean compressed, String dataFile,
+                      long dataFileBytes, long rowCount, int dictionaryBits, int dictionarySize, List<ZoneMetadata> zones) {
+            this.name = name;
+            this.type = type;
+            this.encoding = encoding;
+            this.compressed = compressed;
+            this.dataFile = dataFile;
+            this.dataFileBytes = dataFileBytes;
+            this.rowCount = rowCount;
+            this.dictionaryBits = dictionaryBits;
+            this.dictionarySize = dictionarySize;
+            this.zones = zones;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ColumnType getType() {
+            return type;
+        }
+
+        public ColumnEncoding getEncoding() {
+            return encoding;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public String getDataFile() {
+            return dataFile;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public int getDictionaryBits() {
+            return dictionaryBits;
+        }
+
+        public int getDictionarySize() {
+            return dictionarySize;
+        }
+
+        public List<ZoneMetadata> getZones() {
+            return zones;
+        }
+    }
+
+    /**
+     * A manifest for a store loaded from sourcePath; an empty path means the store holds rows
+     * that did not come from a single CSV, such as after an append
+     */
+    public StoreManifest(String sourcePath, long sourceBytes, long sourceModified, List<Column> columns) {
+        this.sourcePath = sourcePath;
+        this.sourceBytes = sourceBytes;
+        this.sourceModified = sourceModified;
+        this.columns = columns;
+    }
+
+    public static Path path(String dataDirectory) {
+        return Paths.get(dataDirectory, FILE_NAME);
+    }
+
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    public long getRowCount() {
+        return columns.isEmpty() ? 0 : columns.get(0).rowCount;
+    }
+
+    /**
+     * Whether the store was loaded from this CSV as it is now, by path, size and modification time
+     */
+    public boolean isLoadedFrom(Path csvPath) throws IOException {
+        return !sourcePath.isEmpty()
+                && sourcePath.equals(csvPath.toAbsolutePath().normalize().toString())
+                && Files.exists(csvPath)
+                && sourceBytes == Files.size(csvPath)
+                && sourceModified == Files.getLastModifiedTime(csvPath).toMillis();
+    }
+
+    /**
+     * Check that every data file the manifest lists is still there with the size it was written with
+     */
+    public void checkFiles(String dataDirectory) throws IOException {
+        for (Column column : columns) {
+            Path dataFile = Paths.get(dataDirectory, column.dataFile);
+            if (!Files.exists(dataFile) || Files.size(dataFile) != column.dataFileBytes) {
+                throw new IOException("Column file " + dataFile + " does not match the manifest");
+            }
+        }
+    }
+
+    public static StoreManifest read(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < 3 * Integer.BYTES) {
+            throw new IOException("Not a store manifest: " + path);
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (in.getInt(0) != MAGIC) {
+            throw new IOException("Not a store manifest: " + path);
+        }
+        if (in.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Unsupported manifest version " + in.getInt(Integer.BYTES));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Integer.BYTES);
+        if ((int) crc.getValue() != in.getInt(bytes.length - Integer.BYTES)) {
+            throw new IOException("Manifest checksum mismatch: " + path);
+        }
+
+        try {
+            in.position(2 * Integer.BYTES);
+            String sourcePath = readString(in);
+            long sourceBytes = in.getLong();
+            long sourceModified = in.getLong();
+
+            int columnCount = in.getInt();
+            List<Column> columns = new ArrayList<>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                String name = readString(in);
+                ColumnType type = ColumnType.valueOf(readString(in));
+                ColumnEncoding encoding = ColumnEncoding.valueOf(readString(in));
+                boolean compressed = in.get() != 0;
+                String dataFile = readString(in);
+                long dataFileBytes = in.getLong();
+                long rowCount = in.getLong();
+                int dictionaryBits = in.getInt();
+                int dictionarySize = in.getInt();
+
+                boolean numericZones = in.get() != 0;
+                int zoneCount = in.getInt();
+                List<ZoneMetadata> zones = new ArrayList<>(zoneCount);
+                for (int z = 0; z < zoneCount; z++) {
+                    Object min = numericZones ? (Object) in.getDouble() : readString(in);
+                    Object max = numericZones ? (Object) in.getDouble() : readString(in);
+                    zones.add(new ZoneMetadata(min, max, in.getLong(), in.getLong()));
+                }
+                columns.add(new Column(name, type, encoding, compressed, dataFile, dataFileBytes, rowCount,
+                        dictionaryBits, dictionarySize, zones));
+            }
+            return new StoreManifest(sourcePath, sourceBytes, sourceModified, columns);
+        } catch (RuntimeException e) {
+            // A checksummed file that does not parse was written by something else
+            throw new IOException("Malformed store manifest: " + path, e);
+        }
+    }
+
+    public void write(ColumnFileWriter out) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        writeInt(bytes, scratch, MAGIC);
+        writeInt(bytes, scratch, VERSION);
+        writeString(bytes, scratch, sourcePath);
+        writeLong(bytes, scratch, sourceBytes);
+        writeLong(bytes, scratch, sourceModified);
+
+        writeInt(bytes, scratch, columns.size());
+        for (Column column : columns) {
+            writeString(bytes, scratch, column.name);
+            writeString(bytes, scratch, column.type.name());
+            writeString(bytes, scratch, column.encoding.name());
+            bytes.write(column.compressed ? 1 : 0);
+            writeString(bytes, scratch, column.dataFile);
+            writeLong(bytes, scratch, column.dataFileBytes);
+            writeLong(bytes, scratch, column.rowCount);
+            writeInt(bytes, scratch, column.dictionaryBits);
+            writeInt(bytes, scratch, column.dictionarySize);
+
+            boolean numericZones = column.zones.isEmpty() || column.zones.get(0).getMinValue() instanceof Number;
+            bytes.write(numericZones ? 1 : 0);
+            writeInt(bytes, scratch, column.zones.size());
+            for (ZoneMetadata zone : column.zones) {
+                if (numericZones) {
+                    writeDouble(bytes, scratch, ((Number) zone.getMinValue()).doubleValue());
+                    writeDouble(bytes, scratch, ((Number) zone.getMaxValue()).doubleValue());
+                } else {
+                    writeString(bytes, scratch, (String) zone.getMinValue());
+                    writeString(bytes, scratch, (String) zone.getMaxValue());
+                }
+                writeLong(bytes, scratch, zone.getStartByte());
+                writeLong(bytes, scratch, zone.getEndByte());
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        writeInt(bytes, scratch, (int) crc.getValue());
+        out.write(bytes.toByteArray());
+        out.commit();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, ByteBuffer scratch, int value) {
+        scratch.clear();
+        scratch.putInt(value);
+        out.write(scratch.array(), 0, Integer.BYTES);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, ByteBuffer scratch, long value) {
+        scratch.clear();
+        scratch.putLong(value);
+        out.write(scratch.array(), 0, Long.BYTES);
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, ByteBuffer scratch, double value) {
+        scratch.clear();
+        scratch.putDouble(value);
+        out.write(scratch.array(), 0, Long.BYTES);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, ByteBuffer scratch, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(out, scratch, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
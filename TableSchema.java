@@ -0,0 +1,152 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Column names and types of a store, inferred once at load time and saved as schema.txt
+ */
+public class TableSchema {
+    public static final String SCHEMA_FILE = "schema.txt";
+
+    private final List<String> columnNames;
+    private final Map<String, ColumnType> columnTypes;
+
+    public TableSchema(List<String> columnNames, List<ColumnType> types) {
+        this.columnNames = new ArrayList<>(columnNames);
+        this.columnTypes = new HashMap<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            columnTypes.put(columnNames.get(i), types.get(i));
+        }
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public ColumnType getType(String columnName) {
+        ColumnType type = columnTypes.get(columnName);
+        if (type == null) {
+            throw new IllegalArgumentException("Column not found: " + columnName);
+        }
+        return type;
+    }
+
+    /**
+     * Path of the fixed-width binary file for a non-string column
+     */
+    public static Path binaryColumnPath(String dataDirectory, String columnName) {
+        return Paths.get(dataDirectory, columnName + ".bin");
+    }
+
+    /**
+     * Infer the column types from the records the tokenizer still has to read.
+     * Entries stay null for columns that saw no values.
+     */
+    public static ColumnType[] inferTypes(CSVTokenizer tokenizer, int columnCount) throws IOException {
+        ColumnType[] types = new ColumnType[columnCount];
+
+        while (tokenizer.nextRecord()) {
+            if (tokenizer.getFieldCount() != columnCount) {
+                continue; // the loaders skip these rows as well
+            }
+            for (int i = 0; i < columnCount; i++) {
+                // Once a column has fallen back to STRING nothing can change it
+                if (types[i] != ColumnType.STRING) {
+                    types[i] = ColumnType.classify(tokenizer, i).widen(types[i]);
+                }
+            }
+        }
+
+        return types;
+    }
+
+    /**
+     * Combine the types inferred for two parts of the same file
+     */
+    public static ColumnType[] mergeTypes(ColumnType[] left, ColumnType[] right) {
+        ColumnType[] merged = new ColumnType[left.length];
+        for (int i = 0; i < left.length; i++) {
+            merged[i] = left[i] == null ? right[i] : left[i].widen(right[i]);
+        }
+        return merged;
+    }
+
+    public static TableSchema fromTypes(List<String> columnNames, ColumnType[] types) {
+        List<ColumnType> resolved = new ArrayList<>();
+        for (ColumnType type : types) {
+            resolved.add(type == null ? ColumnType.STRING : type);
+        }
+        return new TableSchema(columnNames, resolved);
+    }
+
+    /**
+     * Infer the schema with one byte-level pass over a CSV file
+     */
+    public static TableSchema inferFromCSV(Path csvPath) throws IOException {
+        try (CSVTokenizer tokenizer = new CSVTokenizer(csvPath)) {
+            if (!tokenizer.nextRecord()) {
+                throw new IOException("CSV file is empty");
+            }
+            List<String> columnNames = new ArrayList<>();
+            for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+                columnNames.add(tokenizer.getString(i));
+            }
+            return fromTypes(columnNames, inferTypes(tokenizer, columnNames.size()));
+        }
+    }
+
+    /**
+     * Infer the schema from columns that are already in memory
+     */
+    public static TableSchema inferFromColumns(List<String> columnNames, Map<String, List<String>> allColumnData) {
+        ColumnType[] types = new ColumnType[columnNames.size()];
+        for (int i = 0; i < columnNames.size(); i++) {
+            for (String value : allColumnData.get(columnNames.get(i))) {
+                types[i] = ColumnType.classify(value).widen(types[i]);
+                if (types[i] == ColumnType.STRING) {
+                    break;
+                }
+            }
+        }
+        return fromTypes(columnNames, types);
+    }
+
+    public void save(String dataDirectory) throws IOException {
+        Path schemaPath = Paths.get(dataDirectory, SCHEMA_FILE);
+        try (BufferedWriter writer = Files.newBufferedWriter(schemaPath)) {
+            writer.write("# Schema");
+            writer.newLine();
+            writer.write("# Format: column_name,type");
+            writer.newLine();
+
+            for (String columnName : columnNames) {
+                writer.write(columnName + "," + columnTypes.get(columnName));
+                writer.newLine();
+            }
+        }
+    }
+
+    public static TableSchema load(String dataDirectory) throws IOException {
+        Path schemaPath = Paths.get(dataDirectory, SCHEMA_FILE);
+        if (!Files.exists(schemaPath)) {
+            throw new IOException("Schema file not found in " + dataDirectory);
+        }
+
+        List<String> columnNames = new ArrayList<>();
+        List<ColumnType> types = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(schemaPath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;  // Skip comments
+                }
+                int comma = line.lastIndexOf(',');
+                if (comma > 0) {
+                    columnNames.add(line.substring(0, comma));
+                    types.add(ColumnType.valueOf(line.substring(comma + 1)));
+                }
+            }
+        }
+        return new TableSchema(columnNames, types);
+    }
+}
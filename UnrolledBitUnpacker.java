@@ -0,0 +1,649 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * BitUnpacker kernel with a fully unrolled loop per bit width, 8 codes per iteration with
+ * constant shifts. Each loop body is small enough for the JIT to compile it as straight-line
+ * code; the width is dispatched once per call rather than once per code.
+ *
+ * Generated by UnrolledBitUnpackerGenerator, do not edit.
+ */
+public class UnrolledBitUnpacker implements BitUnpacker.Kernel {
+    @Override
+    public void unpack(ByteBuffer data, int byteOffset, int bitsPerValue, int[] codes, int count) {
+        // Packed codes are big-endian; a duplicate of the buffer reads it that way
+        if (data.order() != ByteOrder.BIG_ENDIAN) {
+            data = data.duplicate();
+        }
+        int done;
+        switch (bitsPerValue) {
+            case 1: done = unpack1(data, byteOffset, codes, count); break;
+            case 2: done = unpack2(data, byteOffset, codes, count); break;
+            case 3: done = unpack3(data, byteOffset, codes, count); break;
+            case 4: done = unpack4(data, byteOffset, codes, count); break;
+            case 5: done = unpack5(data, byteOffset, codes, count); break;
+            case 6: done = unpack6(data, byteOffset, codes, count); break;
+            case 7: done = unpack7(data, byteOffset, codes, count); break;
+            case 8: done = unpack8(data, byteOffset, codes, count); break;
+            case 9: done = unpack9(data, byteOffset, codes, count); break;
+            case 10: done = unpack10(data, byteOffset, codes, count); break;
+            case 11: done = unpack11(data, byteOffset, codes, count); break;
+            case 12: done = unpack12(data, byteOffset, codes, count); break;
+            case 13: done = unpack13(data, byteOffset, codes, count); break;
+            case 14: done = unpack14(data, byteOffset, codes, count); break;
+            case 15: done = unpack15(data, byteOffset, codes, count); break;
+            case 16: done = unpack16(data, byteOffset, codes, count); break;
+            case 17: done = unpack17(data, byteOffset, codes, count); break;
+            case 18: done = unpack18(data, byteOffset, codes, count); break;
+            case 19: done = unpack19(data, byteOffset, codes, count); break;
+            case 20: done = unpack20(data, byteOffset, codes, count); break;
+            case 21: done = unpack21(data, byteOffset, codes, count); break;
+            case 22: done = unpack22(data, byteOffset, codes, count); break;
+            case 23: done = unpack23(data, byteOffset, codes, count); break;
+            case 24: done = unpack24(data, byteOffset, codes, count); break;
+            case 25: done = unpack25(data, byteOffset, codes, count); break;
+            case 26: done = unpack26(data, byteOffset, codes, count); break;
+            case 27: done = unpack27(data, byteOffset, codes, count); break;
+            case 28: done = unpack28(data, byteOffset, codes, count); break;
+            case 29: done = unpack29(data, byteOffset, codes, count); break;
+            case 30: done = unpack30(data, byteOffset, codes, count); break;
+            case 31: done = unpack31(data, byteOffset, codes, count); break;
+            case 32: done = unpack32(data, byteOffset, codes, count); break;
+            default: done = 0;
+        }
+        // The groups left are too close to the end of the data for whole-long loads
+        BitUnpacker.unpackScalar(data, byteOffset + done / 8 * bitsPerValue, bitsPerValue, codes, done, count - done);
+    }
+
+    private static int unpack1(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 8;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 1) {
+            long w0 = data.getLong(position);
+            codes[i] = (int) (w0 >>> 63);
+            codes[i + 1] = (int) ((w0 >>> 62) & 0x1L);
+            codes[i + 2] = (int) ((w0 >>> 61) & 0x1L);
+            codes[i + 3] = (int) ((w0 >>> 60) & 0x1L);
+            codes[i + 4] = (int) ((w0 >>> 59) & 0x1L);
+            codes[i + 5] = (int) ((w0 >>> 58) & 0x1L);
+            codes[i + 6] = (int) ((w0 >>> 57) & 0x1L);
+            codes[i + 7] = (int) ((w0 >>> 56) & 0x1L);
+        }
+        return i;
+    }
+
+    private static int unpack2(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 8;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 2) {
+            long w0 = data.getLong(position);
+            codes[i] = (int) (w0 >>> 62);
+            codes[i + 1] = (int) ((w0 >>> 60) & 0x3L);
+            codes[i + 2] = (int) ((w0 >>> 58) & 0x3L);
+            codes[i + 3] = (int) ((w0 >>> 56) & 0x3L);
+            codes[i + 4] = (int) ((w0 >>> 54) & 0x3L);
+            codes[i + 5] = (int) ((w0 >>> 52) & 0x3L);
+            codes[i + 6] = (int) ((w0 >>> 50) & 0x3L);
+            codes[i + 7] = (int) ((w0 >>> 48) & 0x3L);
+        }
+        return i;
+    }
+
+    private static int unpack3(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 8;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 3) {
+            long w0 = data.getLong(position);
+            codes[i] = (int) (w0 >>> 61);
+            codes[i + 1] = (int) ((w0 >>> 58) & 0x7L);
+            codes[i + 2] = (int) ((w0 >>> 55) & 0x7L);
+            codes[i + 3] = (int) ((w0 >>> 52) & 0x7L);
+            codes[i + 4] = (int) ((w0 >>> 49) & 0x7L);
+            codes[i + 5] = (int) ((w0 >>> 46) & 0x7L);
+            codes[i + 6] = (int) ((w0 >>> 43) & 0x7L);
+            codes[i + 7] = (int) ((w0 >>> 40) & 0x7L);
+        }
+        return i;
+    }
+
+    private static int unpack4(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 8;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 4) {
+            long w0 = data.getLong(position);
+            codes[i] = (int) (w0 >>> 60);
+            codes[i + 1] = (int) ((w0 >>> 56) & 0xfL);
+            codes[i + 2] = (int) ((w0 >>> 52) & 0xfL);
+            codes[i + 3] = (int) ((w0 >>> 48) & 0xfL);
+            codes[i + 4] = (int) ((w0 >>> 44) & 0xfL);
+            codes[i + 5] = (int) ((w0 >>> 40) & 0xfL);
+            codes[i + 6] = (int) ((w0 >>> 36) & 0xfL);
+            codes[i + 7] = (int) ((w0 >>> 32) & 0xfL);
+        }
+        return i;
+    }
+
+    private static int unpack5(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 8;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 5) {
+            long w0 = data.getLong(position);
+            codes[i] = (int) (w0 >>> 59);
+            codes[i + 1] = (int) ((w0 >>> 54) & 0x1fL);
+            codes[i + 2] = (int) ((w0 >>> 49) & 0x1fL);
+            codes[i + 3] = (int) ((w0 >>> 44) & 0x1fL);
+            codes[i + 4] = (int) ((w0 >>> 39) & 0x1fL);
+            codes[i + 5] = (int) ((w0 >>> 34) & 0x1fL);
+            codes[i + 6] = (int) ((w0 >>> 29) & 0x1fL);
+            codes[i + 7] = (int) ((w0 >>> 24) & 0x1fL);
+        }
+        return i;
+    }
+
+    private static int unpack6(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 8;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 6) {
+            long w0 = data.getLong(position);
+            codes[i] = (int) (w0 >>> 58);
+            codes[i + 1] = (int) ((w0 >>> 52) & 0x3fL);
+            codes[i + 2] = (int) ((w0 >>> 46) & 0x3fL);
+            codes[i + 3] = (int) ((w0 >>> 40) & 0x3fL);
+            codes[i + 4] = (int) ((w0 >>> 34) & 0x3fL);
+            codes[i + 5] = (int) ((w0 >>> 28) & 0x3fL);
+            codes[i + 6] = (int) ((w0 >>> 22) & 0x3fL);
+            codes[i + 7] = (int) ((w0 >>> 16) & 0x3fL);
+        }
+        return i;
+    }
+
+    private static int unpack7(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 8;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 7) {
+            long w0 = data.getLong(position);
+            codes[i] = (int) (w0 >>> 57);
+            codes[i + 1] = (int) ((w0 >>> 50) & 0x7fL);
+            codes[i + 2] = (int) ((w0 >>> 43) & 0x7fL);
+            codes[i + 3] = (int) ((w0 >>> 36) & 0x7fL);
+            codes[i + 4] = (int) ((w0 >>> 29) & 0x7fL);
+            codes[i + 5] = (int) ((w0 >>> 22) & 0x7fL);
+            codes[i + 6] = (int) ((w0 >>> 15) & 0x7fL);
+            codes[i + 7] = (int) ((w0 >>> 8) & 0x7fL);
+        }
+        return i;
+    }
+
+    private static int unpack8(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 8;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 8) {
+            long w0 = data.getLong(position);
+            codes[i] = (int) (w0 >>> 56);
+            codes[i + 1] = (int) ((w0 >>> 48) & 0xffL);
+            codes[i + 2] = (int) ((w0 >>> 40) & 0xffL);
+            codes[i + 3] = (int) ((w0 >>> 32) & 0xffL);
+            codes[i + 4] = (int) ((w0 >>> 24) & 0xffL);
+            codes[i + 5] = (int) ((w0 >>> 16) & 0xffL);
+            codes[i + 6] = (int) ((w0 >>> 8) & 0xffL);
+            codes[i + 7] = (int) ((w0) & 0xffL);
+        }
+        return i;
+    }
+
+    private static int unpack9(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 16;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 9) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            codes[i] = (int) (w0 >>> 55);
+            codes[i + 1] = (int) ((w0 >>> 46) & 0x1ffL);
+            codes[i + 2] = (int) ((w0 >>> 37) & 0x1ffL);
+            codes[i + 3] = (int) ((w0 >>> 28) & 0x1ffL);
+            codes[i + 4] = (int) ((w0 >>> 19) & 0x1ffL);
+            codes[i + 5] = (int) ((w0 >>> 10) & 0x1ffL);
+            codes[i + 6] = (int) ((w0 >>> 1) & 0x1ffL);
+            codes[i + 7] = (int) (((w0 << 8) | (w1 >>> 56)) & 0x1ffL);
+        }
+        return i;
+    }
+
+    private static int unpack10(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 16;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 10) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            codes[i] = (int) (w0 >>> 54);
+            codes[i + 1] = (int) ((w0 >>> 44) & 0x3ffL);
+            codes[i + 2] = (int) ((w0 >>> 34) & 0x3ffL);
+            codes[i + 3] = (int) ((w0 >>> 24) & 0x3ffL);
+            codes[i + 4] = (int) ((w0 >>> 14) & 0x3ffL);
+            codes[i + 5] = (int) ((w0 >>> 4) & 0x3ffL);
+            codes[i + 6] = (int) (((w0 << 6) | (w1 >>> 58)) & 0x3ffL);
+            codes[i + 7] = (int) ((w1 >>> 48) & 0x3ffL);
+        }
+        return i;
+    }
+
+    private static int unpack11(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 16;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 11) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            codes[i] = (int) (w0 >>> 53);
+            codes[i + 1] = (int) ((w0 >>> 42) & 0x7ffL);
+            codes[i + 2] = (int) ((w0 >>> 31) & 0x7ffL);
+            codes[i + 3] = (int) ((w0 >>> 20) & 0x7ffL);
+            codes[i + 4] = (int) ((w0 >>> 9) & 0x7ffL);
+            codes[i + 5] = (int) (((w0 << 2) | (w1 >>> 62)) & 0x7ffL);
+            codes[i + 6] = (int) ((w1 >>> 51) & 0x7ffL);
+            codes[i + 7] = (int) ((w1 >>> 40) & 0x7ffL);
+        }
+        return i;
+    }
+
+    private static int unpack12(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 16;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 12) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            codes[i] = (int) (w0 >>> 52);
+            codes[i + 1] = (int) ((w0 >>> 40) & 0xfffL);
+            codes[i + 2] = (int) ((w0 >>> 28) & 0xfffL);
+            codes[i + 3] = (int) ((w0 >>> 16) & 0xfffL);
+            codes[i + 4] = (int) ((w0 >>> 4) & 0xfffL);
+            codes[i + 5] = (int) (((w0 << 8) | (w1 >>> 56)) & 0xfffL);
+            codes[i + 6] = (int) ((w1 >>> 44) & 0xfffL);
+            codes[i + 7] = (int) ((w1 >>> 32) & 0xfffL);
+        }
+        return i;
+    }
+
+    private static int unpack13(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 16;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 13) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            codes[i] = (int) (w0 >>> 51);
+            codes[i + 1] = (int) ((w0 >>> 38) & 0x1fffL);
+            codes[i + 2] = (int) ((w0 >>> 25) & 0x1fffL);
+            codes[i + 3] = (int) ((w0 >>> 12) & 0x1fffL);
+            codes[i + 4] = (int) (((w0 << 1) | (w1 >>> 63)) & 0x1fffL);
+            codes[i + 5] = (int) ((w1 >>> 50) & 0x1fffL);
+            codes[i + 6] = (int) ((w1 >>> 37) & 0x1fffL);
+            codes[i + 7] = (int) ((w1 >>> 24) & 0x1fffL);
+        }
+        return i;
+    }
+
+    private static int unpack14(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 16;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 14) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            codes[i] = (int) (w0 >>> 50);
+            codes[i + 1] = (int) ((w0 >>> 36) & 0x3fffL);
+            codes[i + 2] = (int) ((w0 >>> 22) & 0x3fffL);
+            codes[i + 3] = (int) ((w0 >>> 8) & 0x3fffL);
+            codes[i + 4] = (int) (((w0 << 6) | (w1 >>> 58)) & 0x3fffL);
+            codes[i + 5] = (int) ((w1 >>> 44) & 0x3fffL);
+            codes[i + 6] = (int) ((w1 >>> 30) & 0x3fffL);
+            codes[i + 7] = (int) ((w1 >>> 16) & 0x3fffL);
+        }
+        return i;
+    }
+
+    private static int unpack15(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 16;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 15) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            codes[i] = (int) (w0 >>> 49);
+            codes[i + 1] = (int) ((w0 >>> 34) & 0x7fffL);
+            codes[i + 2] = (int) ((w0 >>> 19) & 0x7fffL);
+            codes[i + 3] = (int) ((w0 >>> 4) & 0x7fffL);
+            codes[i + 4] = (int) (((w0 << 11) | (w1 >>> 53)) & 0x7fffL);
+            codes[i + 5] = (int) ((w1 >>> 38) & 0x7fffL);
+            codes[i + 6] = (int) ((w1 >>> 23) & 0x7fffL);
+            codes[i + 7] = (int) ((w1 >>> 8) & 0x7fffL);
+        }
+        return i;
+    }
+
+    private static int unpack16(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 16;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 16) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            codes[i] = (int) (w0 >>> 48);
+            codes[i + 1] = (int) ((w0 >>> 32) & 0xffffL);
+            codes[i + 2] = (int) ((w0 >>> 16) & 0xffffL);
+            codes[i + 3] = (int) ((w0) & 0xffffL);
+            codes[i + 4] = (int) (w1 >>> 48);
+            codes[i + 5] = (int) ((w1 >>> 32) & 0xffffL);
+            codes[i + 6] = (int) ((w1 >>> 16) & 0xffffL);
+            codes[i + 7] = (int) ((w1) & 0xffffL);
+        }
+        return i;
+    }
+
+    private static int unpack17(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 24;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 17) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            codes[i] = (int) (w0 >>> 47);
+            codes[i + 1] = (int) ((w0 >>> 30) & 0x1ffffL);
+            codes[i + 2] = (int) ((w0 >>> 13) & 0x1ffffL);
+            codes[i + 3] = (int) (((w0 << 4) | (w1 >>> 60)) & 0x1ffffL);
+            codes[i + 4] = (int) ((w1 >>> 43) & 0x1ffffL);
+            codes[i + 5] = (int) ((w1 >>> 26) & 0x1ffffL);
+            codes[i + 6] = (int) ((w1 >>> 9) & 0x1ffffL);
+            codes[i + 7] = (int) (((w1 << 8) | (w2 >>> 56)) & 0x1ffffL);
+        }
+        return i;
+    }
+
+    private static int unpack18(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 24;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 18) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            codes[i] = (int) (w0 >>> 46);
+            codes[i + 1] = (int) ((w0 >>> 28) & 0x3ffffL);
+            codes[i + 2] = (int) ((w0 >>> 10) & 0x3ffffL);
+            codes[i + 3] = (int) (((w0 << 8) | (w1 >>> 56)) & 0x3ffffL);
+            codes[i + 4] = (int) ((w1 >>> 38) & 0x3ffffL);
+            codes[i + 5] = (int) ((w1 >>> 20) & 0x3ffffL);
+            codes[i + 6] = (int) ((w1 >>> 2) & 0x3ffffL);
+            codes[i + 7] = (int) (((w1 << 16) | (w2 >>> 48)) & 0x3ffffL);
+        }
+        return i;
+    }
+
+    private static int unpack19(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 24;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 19) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            codes[i] = (int) (w0 >>> 45);
+            codes[i + 1] = (int) ((w0 >>> 26) & 0x7ffffL);
+            codes[i + 2] = (int) ((w0 >>> 7) & 0x7ffffL);
+            codes[i + 3] = (int) (((w0 << 12) | (w1 >>> 52)) & 0x7ffffL);
+            codes[i + 4] = (int) ((w1 >>> 33) & 0x7ffffL);
+            codes[i + 5] = (int) ((w1 >>> 14) & 0x7ffffL);
+            codes[i + 6] = (int) (((w1 << 5) | (w2 >>> 59)) & 0x7ffffL);
+            codes[i + 7] = (int) ((w2 >>> 40) & 0x7ffffL);
+        }
+        return i;
+    }
+
+    private static int unpack20(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 24;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 20) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            codes[i] = (int) (w0 >>> 44);
+            codes[i + 1] = (int) ((w0 >>> 24) & 0xfffffL);
+            codes[i + 2] = (int) ((w0 >>> 4) & 0xfffffL);
+            codes[i + 3] = (int) (((w0 << 16) | (w1 >>> 48)) & 0xfffffL);
+            codes[i + 4] = (int) ((w1 >>> 28) & 0xfffffL);
+            codes[i + 5] = (int) ((w1 >>> 8) & 0xfffffL);
+            codes[i + 6] = (int) (((w1 << 12) | (w2 >>> 52)) & 0xfffffL);
+            codes[i + 7] = (int) ((w2 >>> 32) & 0xfffffL);
+        }
+        return i;
+    }
+
+    private static int unpack21(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 24;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 21) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            codes[i] = (int) (w0 >>> 43);
+            codes[i + 1] = (int) ((w0 >>> 22) & 0x1fffffL);
+            codes[i + 2] = (int) ((w0 >>> 1) & 0x1fffffL);
+            codes[i + 3] = (int) (((w0 << 20) | (w1 >>> 44)) & 0x1fffffL);
+            codes[i + 4] = (int) ((w1 >>> 23) & 0x1fffffL);
+            codes[i + 5] = (int) ((w1 >>> 2) & 0x1fffffL);
+            codes[i + 6] = (int) (((w1 << 19) | (w2 >>> 45)) & 0x1fffffL);
+            codes[i + 7] = (int) ((w2 >>> 24) & 0x1fffffL);
+        }
+        return i;
+    }
+
+    private static int unpack22(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 24;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 22) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            codes[i] = (int) (w0 >>> 42);
+            codes[i + 1] = (int) ((w0 >>> 20) & 0x3fffffL);
+            codes[i + 2] = (int) (((w0 << 2) | (w1 >>> 62)) & 0x3fffffL);
+            codes[i + 3] = (int) ((w1 >>> 40) & 0x3fffffL);
+            codes[i + 4] = (int) ((w1 >>> 18) & 0x3fffffL);
+            codes[i + 5] = (int) (((w1 << 4) | (w2 >>> 60)) & 0x3fffffL);
+            codes[i + 6] = (int) ((w2 >>> 38) & 0x3fffffL);
+            codes[i + 7] = (int) ((w2 >>> 16) & 0x3fffffL);
+        }
+        return i;
+    }
+
+    private static int unpack23(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 24;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 23) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            codes[i] = (int) (w0 >>> 41);
+            codes[i + 1] = (int) ((w0 >>> 18) & 0x7fffffL);
+            codes[i + 2] = (int) (((w0 << 5) | (w1 >>> 59)) & 0x7fffffL);
+            codes[i + 3] = (int) ((w1 >>> 36) & 0x7fffffL);
+            codes[i + 4] = (int) ((w1 >>> 13) & 0x7fffffL);
+            codes[i + 5] = (int) (((w1 << 10) | (w2 >>> 54)) & 0x7fffffL);
+            codes[i + 6] = (int) ((w2 >>> 31) & 0x7fffffL);
+            codes[i + 7] = (int) ((w2 >>> 8) & 0x7fffffL);
+        }
+        return i;
+    }
+
+    private static int unpack24(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 24;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 24) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            codes[i] = (int) (w0 >>> 40);
+            codes[i + 1] = (int) ((w0 >>> 16) & 0xffffffL);
+            codes[i + 2] = (int) (((w0 << 8) | (w1 >>> 56)) & 0xffffffL);
+            codes[i + 3] = (int) ((w1 >>> 32) & 0xffffffL);
+            codes[i + 4] = (int) ((w1 >>> 8) & 0xffffffL);
+            codes[i + 5] = (int) (((w1 << 16) | (w2 >>> 48)) & 0xffffffL);
+            codes[i + 6] = (int) ((w2 >>> 24) & 0xffffffL);
+            codes[i + 7] = (int) ((w2) & 0xffffffL);
+        }
+        return i;
+    }
+
+    private static int unpack25(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 32;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 25) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            long w3 = data.getLong(position + 24);
+            codes[i] = (int) (w0 >>> 39);
+            codes[i + 1] = (int) ((w0 >>> 14) & 0x1ffffffL);
+            codes[i + 2] = (int) (((w0 << 11) | (w1 >>> 53)) & 0x1ffffffL);
+            codes[i + 3] = (int) ((w1 >>> 28) & 0x1ffffffL);
+            codes[i + 4] = (int) ((w1 >>> 3) & 0x1ffffffL);
+            codes[i + 5] = (int) (((w1 << 22) | (w2 >>> 42)) & 0x1ffffffL);
+            codes[i + 6] = (int) ((w2 >>> 17) & 0x1ffffffL);
+            codes[i + 7] = (int) (((w2 << 8) | (w3 >>> 56)) & 0x1ffffffL);
+        }
+        return i;
+    }
+
+    private static int unpack26(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 32;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 26) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            long w3 = data.getLong(position + 24);
+            codes[i] = (int) (w0 >>> 38);
+            codes[i + 1] = (int) ((w0 >>> 12) & 0x3ffffffL);
+            codes[i + 2] = (int) (((w0 << 14) | (w1 >>> 50)) & 0x3ffffffL);
+            codes[i + 3] = (int) ((w1 >>> 24) & 0x3ffffffL);
+            codes[i + 4] = (int) (((w1 << 2) | (w2 >>> 62)) & 0x3ffffffL);
+            codes[i + 5] = (int) ((w2 >>> 36) & 0x3ffffffL);
+            codes[i + 6] = (int) ((w2 >>> 10) & 0x3ffffffL);
+            codes[i + 7] = (int) (((w2 << 16) | (w3 >>> 48)) & 0x3ffffffL);
+        }
+        return i;
+    }
+
+    private static int unpack27(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 32;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 27) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            long w3 = data.getLong(position + 24);
+            codes[i] = (int) (w0 >>> 37);
+            codes[i + 1] = (int) ((w0 >>> 10) & 0x7ffffffL);
+            codes[i + 2] = (int) (((w0 << 17) | (w1 >>> 47)) & 0x7ffffffL);
+            codes[i + 3] = (int) ((w1 >>> 20) & 0x7ffffffL);
+            codes[i + 4] = (int) (((w1 << 7) | (w2 >>> 57)) & 0x7ffffffL);
+            codes[i + 5] = (int) ((w2 >>> 30) & 0x7ffffffL);
+            codes[i + 6] = (int) ((w2 >>> 3) & 0x7ffffffL);
+            codes[i + 7] = (int) (((w2 << 24) | (w3 >>> 40)) & 0x7ffffffL);
+        }
+        return i;
+    }
+
+    private static int unpack28(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 32;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 28) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            long w3 = data.getLong(position + 24);
+            codes[i] = (int) (w0 >>> 36);
+            codes[i + 1] = (int) ((w0 >>> 8) & 0xfffffffL);
+            codes[i + 2] = (int) (((w0 << 20) | (w1 >>> 44)) & 0xfffffffL);
+            codes[i + 3] = (int) ((w1 >>> 16) & 0xfffffffL);
+            codes[i + 4] = (int) (((w1 << 12) | (w2 >>> 52)) & 0xfffffffL);
+            codes[i + 5] = (int) ((w2 >>> 24) & 0xfffffffL);
+            codes[i + 6] = (int) (((w2 << 4) | (w3 >>> 60)) & 0xfffffffL);
+            codes[i + 7] = (int) ((w3 >>> 32) & 0xfffffffL);
+        }
+        return i;
+    }
+
+    private static int unpack29(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 32;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 29) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            long w3 = data.getLong(position + 24);
+            codes[i] = (int) (w0 >>> 35);
+            codes[i + 1] = (int) ((w0 >>> 6) & 0x1fffffffL);
+            codes[i + 2] = (int) (((w0 << 23) | (w1 >>> 41)) & 0x1fffffffL);
+            codes[i + 3] = (int) ((w1 >>> 12) & 0x1fffffffL);
+            codes[i + 4] = (int) (((w1 << 17) | (w2 >>> 47)) & 0x1fffffffL);
+            codes[i + 5] = (int) ((w2 >>> 18) & 0x1fffffffL);
+            codes[i + 6] = (int) (((w2 << 11) | (w3 >>> 53)) & 0x1fffffffL);
+            codes[i + 7] = (int) ((w3 >>> 24) & 0x1fffffffL);
+        }
+        return i;
+    }
+
+    private static int unpack30(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 32;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 30) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            long w3 = data.getLong(position + 24);
+            codes[i] = (int) (w0 >>> 34);
+            codes[i + 1] = (int) ((w0 >>> 4) & 0x3fffffffL);
+            codes[i + 2] = (int) (((w0 << 26) | (w1 >>> 38)) & 0x3fffffffL);
+            codes[i + 3] = (int) ((w1 >>> 8) & 0x3fffffffL);
+            codes[i + 4] = (int) (((w1 << 22) | (w2 >>> 42)) & 0x3fffffffL);
+            codes[i + 5] = (int) ((w2 >>> 12) & 0x3fffffffL);
+            codes[i + 6] = (int) (((w2 << 18) | (w3 >>> 46)) & 0x3fffffffL);
+            codes[i + 7] = (int) ((w3 >>> 16) & 0x3fffffffL);
+        }
+        return i;
+    }
+
+    private static int unpack31(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 32;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 31) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            long w3 = data.getLong(position + 24);
+            codes[i] = (int) (w0 >>> 33);
+            codes[i + 1] = (int) ((w0 >>> 2) & 0x7fffffffL);
+            codes[i + 2] = (int) (((w0 << 29) | (w1 >>> 35)) & 0x7fffffffL);
+            codes[i + 3] = (int) ((w1 >>> 4) & 0x7fffffffL);
+            codes[i + 4] = (int) (((w1 << 27) | (w2 >>> 37)) & 0x7fffffffL);
+            codes[i + 5] = (int) ((w2 >>> 6) & 0x7fffffffL);
+            codes[i + 6] = (int) (((w2 << 25) | (w3 >>> 39)) & 0x7fffffffL);
+            codes[i + 7] = (int) ((w3 >>> 8) & 0x7fffffffL);
+        }
+        return i;
+    }
+
+    private static int unpack32(ByteBuffer data, int position, int[] codes, int count) {
+        int last = data.limit() - 32;
+        int i = 0;
+        for (; i + 8 <= count && position <= last; i += 8, position += 32) {
+            long w0 = data.getLong(position);
+            long w1 = data.getLong(position + 8);
+            long w2 = data.getLong(position + 16);
+            long w3 = data.getLong(position + 24);
+            codes[i] = (int) (w0 >>> 32);
+            codes[i + 1] = (int) ((w0) & 0xffffffffL);
+            codes[i + 2] = (int) (w1 >>> 32);
+            codes[i + 3] = (int) ((w1) & 0xffffffffL);
+            codes[i + 4] = (int) (w2 >>> 32);
+            codes[i + 5] = (int) ((w2) & 0xffffffffL);
+            codes[i + 6] = (int) (w3 >>> 32);
+            codes[i + 7] = (int) ((w3) & 0xffffffffL);
+        }
+        return i;
+    }
+}
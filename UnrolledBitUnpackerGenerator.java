@@ -0,0 +1,104 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Writes UnrolledBitUnpacker.java: one unpack loop per bit width from 1 to 32, each taking
+ * 8 codes per iteration with constant offsets, shifts and masks. Eight codes of w bits are
+ * exactly w bytes, so an iteration loads ceil(w / 8) big-endian longs at the group's first
+ * byte and cuts the codes out of them. Run it again after changing the layout:
+ *
+ *   java UnrolledBitUnpackerGenerator
+ */
+public class UnrolledBitUnpackerGenerator {
+    private static final int CODES_PER_GROUP = 8;
+
+    public static void main(String[] args) throws IOException {
+        Path target = Paths.get(args.length > 0 ? args[0] : "UnrolledBitUnpacker.java");
+        Files.write(target, generate().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Wrote " + target);
+    }
+
+    static String generate() {
+        StringBuilder out = new StringBuilder();
+        out.append("import java.nio.ByteBuffer;\n");
+        out.append("import java.nio.ByteOrder;\n\n");
+        out.append("/**\n");
+        out.append(" * BitUnpacker kernel with a fully unrolled loop per bit width, 8 codes per iteration with\n");
+        out.append(" * constant shifts. Each loop body is small enough for the JIT to compile it as straight-line\n");
+        out.append(" * code; the width is dispatched once per call rather than once per code.\n");
+        out.append(" *\n");
+        out.append(" * Generated by UnrolledBitUnpackerGenerator, do not edit.\n");
+        out.append(" */\n");
+        out.append("public class UnrolledBitUnpacker implements BitUnpacker.Kernel {\n");
+        out.append("    @Override\n");
+        out.append("    public void unpack(ByteBuffer data, int byteOffset, int bitsPerValue, int[] codes, int count) {\n");
+        out.append("        // Packed codes are big-endian; a duplicate of the buffer reads it that way\n");
+        out.append("        if (data.order() != ByteOrder.BIG_ENDIAN) {\n");
+        out.append("            data = data.duplicate();\n");
+        out.append("        }\n");
+        out.append("        int done;\n");
+        out.append("        switch (bitsPerValue) {\n");
+        for (int bits = 1; bits <= BitUnpacker.MAX_BITS; bits++) {
+            out.append("            case ").append(bits).append(": done = unpack").append(bits).append("(data, byteOffset, codes, count); break;\n");
+        }
+        out.append("            default: done = 0;\n");
+        out.append("        }\n");
+        out.append("        // The groups left are too close to the end of the data for whole-long loads\n");
+        out.append("        BitUnpacker.unpackScalar(data, byteOffset + done / 8 * bitsPerValue, bitsPerValue, codes, done, count - done);\n");
+        out.append("    }\n");
+        for (int bits = 1; bits <= BitUnpacker.MAX_BITS; bits++) {
+            appendWidth(out, bits);
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+
+    /**
+     * The loop for one width, returning how many codes it unpacked (a multiple of 8)
+     */
+    private static void appendWidth(StringBuilder out, int bits) {
+        int words = (bits + 7) / 8;
+        out.append("\n");
+        out.append("    private static int unpack").append(bits).append("(ByteBuffer data, int position, int[] codes, int count) {\n");
+        out.append("        int last = data.limit() - ").append(words * Long.BYTES).append(";\n");
+        out.append("        int i = 0;\n");
+        out.append("        for (; i + ").append(CODES_PER_GROUP).append(" <= count && position <= last; i += ")
+                .append(CODES_PER_GROUP).append(", position += ").append(bits).append(") {\n");
+        for (int w = 0; w < words; w++) {
+            out.append("            long w").append(w).append(" = data.getLong(position");
+            if (w > 0) {
+                out.append(" + ").append(w * Long.BYTES);
+            }
+            out.append(");\n");
+        }
+        String mask = "0x" + Long.toHexString((1L << bits) - 1) + "L";
+        for (int k = 0; k < CODES_PER_GROUP; k++) {
+            int bit = k * bits;
+            int word = bit / 64;
+            int shift = bit % 64;
+            out.append("            codes[i");
+            if (k > 0) {
+                out.append(" + ").append(k);
+            }
+            out.append("] = (int) ");
+            if (shift + bits <= 64) {
+                int right = 64 - shift - bits;
+                if (shift == 0) {
+                    out.append("(w").append(word).append(" >>> ").append(right).append(")");
+                } else {
+                    out.append("((w").append(word).append(right > 0 ? " >>> " + right : "").append(") & ").append(mask).append(")");
+                }
+            } else {
+                // The code continues in the top bits of the next word
+                int spill = shift + bits - 64;
+                out.append("(((w").append(word).append(" << ").append(spill).append(") | (w").append(word + 1)
+                        .append(" >>> ").append(64 - spill).append(")) & ").append(mask).append(")");
+            }
+            out.append(";\n");
+        }
+        out.append("        }\n");
+        out.append("        return i;\n");
+        out.append("    }\n");
+    }
+}
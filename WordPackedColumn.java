@@ -0,0 +1,181 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Dictionary codes packed into 64-bit words, for decoding with one shift and mask per value.
+ * A word holds 64 / bitsPerValue codes, lowest bits first, and no code is split across two
+ * words. The codes are grouped in blocks of blockRows rows (one zone of the zone map), each
+ * starting on a fresh word, so a block is found by arithmetic and decoded on its own.
+ * Big-endian ints and longs like the other .cmp layouts, with the record count at the same offset:
+ *
+ *   int magic, int recordCount, int bitsPerValue, int blockRows, per block: long[] words
+ */
+public class WordPackedColumn {
+    public static final int MAGIC = 0x57504B00; // "WPK\0"
+    private static final int HEADER_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int recordCount;
+    private final int bitsPerValue;
+    private final int blockRows;
+    // A column with a single value has 0-bit codes, laid out as 1-bit slots
+    private final int slotBits;
+    private final int valuesPerWord;
+    private final int wordsPerBlock;
+    private final long mask;
+
+    public WordPackedColumn(ByteBuffer buffer) throws IOException {
+        if (!isWordPacked(buffer)) {
+            throw new IOException("Column data is not word-packed");
+        }
+        this.buffer = buffer;
+        this.recordCount = buffer.getInt(4);
+        this.bitsPerValue = buffer.getInt(8);
+        this.blockRows = buffer.getInt(12);
+        this.slotBits = Math.max(1, bitsPerValue);
+        this.valuesPerWord = 64 / slotBits;
+        this.wordsPerBlock = wordCount(blockRows, bitsPerValue);
+        this.mask = bitsPerValue == 0 ? 0 : (1L << bitsPerValue) - 1;
+    }
+
+    /**
+     * Whether column data is word-packed rather than bit-packed or run-length encoded
+     */
+    public static boolean isWordPacked(ByteBuffer data) {
+        return data.limit() >= HEADER_BYTES && data.getInt(0) == MAGIC;
+    }
+
+    private static int wordCount(int rows, int bitsPerValue) {
+        int valuesPerWord = 64 / Math.max(1, bitsPerValue);
+        return (rows + valuesPerWord - 1) / valuesPerWord;
+    }
+
+    /**
+     * Size of the file for this many codes, to compare against the other code layouts
+     */
+    public static long encodedBytes(int recordCount, int bitsPerValue, int blockRows) {
+        long words = (long) (recordCount / blockRows) * wordCount(blockRows, bitsPerValue)
+                + wordCount(recordCount % blockRows, bitsPerValue);
+        return HEADER_BYTES + words * Long.BYTES;
+    }
+
+    /**
+     * Byte offset of a block's first word
+     */
+    public static long blockOffset(int block, int bitsPerValue, int blockRows) {
+        return HEADER_BYTES + (long) block * wordCount(blockRows, bitsPerValue) * Long.BYTES;
+    }
+
+    /**
+     * The whole file for these codes
+     */
+    public static byte[] encode(int[] codes, int bitsPerValue, int blockRows) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(codes.length).putInt(bitsPerValue).putInt(blockRows);
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) encodedBytes(codes.length, bitsPerValue, blockRows));
+        out.write(header.array());
+        out.write(encodeBlocks(codes, 0, codes.length, bitsPerValue, blockRows));
+        return out.toByteArray();
+    }
+
+    /**
+     * Words of the codes from (inclusive) to (exclusive), where from starts a block
+     */
+    public static byte[] encodeBlocks(int[] codes, int from, int to, int bitsPerValue, int blockRows) {
+        int slotBits = Math.max(1, bitsPerValue);
+        int valuesPerWord = 64 / slotBits;
+        int words = 0;
+        for (int start = from; start < to; start += blockRows) {
+            words += wordCount(Math.min(blockRows, to - start), bitsPerValue);
+        }
+        ByteBuffer out = ByteBuffer.allocate(words * Long.BYTES);
+        for (int start = from; start < to; start += blockRows) {
+            int end = Math.min(start + blockRows, to);
+            for (int wordStart = start; wordStart < end; wordStart += valuesPerWord) {
+                long word = 0;
+                int wordEnd = Math.min(wordStart + valuesPerWord, end);
+                for (int i = wordStart; i < wordEnd; i++) {
+                    word |= (long) codes[i] << ((i - wordStart) * slotBits);
+                }
+                out.putLong(word);
+            }
+        }
+        return out.array();
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    public int getBitsPerValue() {
+        return bitsPerValue;
+    }
+
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    /**
+     * Code of one row: its word found by arithmetic, then one shift and mask
+     */
+    public int getCode(int row) {
+        int block = row / blockRows;
+        int index = row - block * blockRows;
+        int word = index / valuesPerWord;
+        long bits = buffer.getLong(HEADER_BYTES + (block * wordsPerBlock + word) * Long.BYTES);
+        return (int) ((bits >>> ((index - word * valuesPerWord) * slotBits)) & mask);
+    }
+
+    public int[] decode() {
+        return decode(0, recordCount);
+    }
+
+    /**
+     * Codes of the rows from (inclusive) to (exclusive), reading each word once
+     */
+    public int[] decode(int from, int to) {
+        int[] codes = new int[to - from];
+        int row = from;
+        while (row < to) {
+            int block = row / blockRows;
+            int index = row - block * blockRows;
+            int word = index / valuesPerWord;
+            int slot = index - word * valuesPerWord;
+            long bits = buffer.getLong(HEADER_BYTES + (block * wordsPerBlock + word) * Long.BYTES) >>> (slot * slotBits);
+            int blockEnd = Math.min(to, (block + 1) * blockRows);
+            for (; slot < valuesPerWord && row < blockEnd; slot++, row++) {
+                codes[row - from] = (int) (bits & mask);
+                bits >>>= slotBits;
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Zone map with one zone per block; each zone's byte range is exactly its block's words
+     */
+    public List<ZoneMetadata> buildZones() {
+        return buildZones(0);
+    }
+
+    /**
+     * Zone map of the blocks from the given block on
+     */
+    public List<ZoneMetadata> buildZones(int firstBlock) {
+        List<ZoneMetadata> zones = new ArrayList<>();
+        for (int from = firstBlock * blockRows; from < recordCount; from += blockRows) {
+            int to = Math.min(from + blockRows, recordCount);
+            int minCode = Integer.MAX_VALUE;
+            int maxCode = Integer.MIN_VALUE;
+            for (int code : decode(from, to)) {
+                minCode = Math.min(minCode, code);
+                maxCode = Math.max(maxCode, code);
+            }
+            int block = from / blockRows;
+            long start = blockOffset(block, bitsPerValue, blockRows);
+            zones.add(new ZoneMetadata(minCode, maxCode, start, start + (long) wordCount(to - from, bitsPerValue) * Long.BYTES));
+        }
+        return zones;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.*;
+
+/**
+ * Collects zone statistics (min/max and byte range per zone) while a column is being written,
+ * so zone maps do not need a second pass over the column file.
+ * Values are either text (compared lexicographically), numbers or packed dictionary codes.
+ */
+public class ZoneMapBuilder {
+    private enum Kind { TEXT, NUMBER, CODE }
+
+    private final Kind kind;
+    private final int zoneSize;
+    private final int bitsPerValue;
+    private final List<ZoneMetadata> zones = new ArrayList<>();
+
+    private long byteStart;
+    private long zoneBytes;
+    private int valuesInZone;
+    private String minText, maxText;
+    private double minNumber, maxNumber;
+    private int minCode, maxCode;
+
+    private ZoneMapBuilder(Kind kind, int zoneSize, int bitsPerValue, long byteStart) {
+        this.kind = kind;
+        this.zoneSize = zoneSize;
+        this.bitsPerValue = bitsPerValue;
+        this.byteStart = byteStart;
+    }
+
+    /**
+     * Zones over a text column file; numeric columns keep their min/max as doubles
+     */
+    public static ZoneMapBuilder forColumn(boolean numeric, int zoneSize, long byteStart) {
+        return new ZoneMapBuilder(numeric ? Kind.NUMBER : Kind.TEXT, zoneSize, 0, byteStart);
+    }
+
+    /**
+     * Zones over bit-packed dictionary codes
+     */
+    public static ZoneMapBuilder forCodes(int bitsPerValue, int zoneSize, long byteStart) {
+        return new ZoneMapBuilder(Kind.CODE, zoneSize, bitsPerValue, byteStart);
+    }
+
+    public void addText(String value, long valueBytes) {
+        if (valuesInZone == 0 || minText.compareTo(value) > 0) minText = value;
+        if (valuesInZone == 0 || maxText.compareTo(value) < 0) maxText = value;
+        added(valueBytes);
+    }
+
+    public void addNumber(double value, long valueBytes) {
+        if (valuesInZone == 0 || minNumber > value) minNumber = value;
+        if (valuesInZone == 0 || maxNumber < value) maxNumber = value;
+        added(valueBytes);
+    }
+
+    public void addCode(int code) {
+        if (valuesInZone == 0 || minCode > code) minCode = code;
+        if (valuesInZone == 0 || maxCode < code) maxCode = code;
+        added(0);
+    }
+
+    private void added(long valueBytes) {
+        zoneBytes += valueBytes;
+        valuesInZone++;
+        if (valuesInZone == zoneSize) {
+            closeZone();
+        }
+    }
+
+    private void closeZone() {
+        if (kind == Kind.CODE) {
+            // Round the zone's bits up to whole bytes
+            zoneBytes = ((long) valuesInZone * bitsPerValue + 7) / 8;
+        }
+        long byteEnd = byteStart + zoneBytes;
+
+        switch (kind) {
+            case TEXT:
+                zones.add(new ZoneMetadata(minText, maxText, byteStart, byteEnd));
+                break;
+            case NUMBER:
+                zones.add(new ZoneMetadata(minNumber, maxNumber, byteStart, byteEnd));
+                break;
+            default:
+                zones.add(new ZoneMetadata(minCode, maxCode, byteStart, byteEnd));
+                break;
+        }
+
+        byteStart = byteEnd;
+        zoneBytes = 0;
+        valuesInZone = 0;
+    }
+
+    /**
+     * Close the last, partial zone and return all zones
+     */
+    public List<ZoneMetadata> finish() {
+        if (valuesInZone > 0) {
+            closeZone();
+        }
+        return zones;
+    }
+}
@@ -2,6 +2,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -63,7 +64,7 @@ public class ZoneMetadata implements Serializable {
 
         try (BufferedReader reader = Files.newBufferedReader(zoneMetadataFilePath)) {
             String line = reader.readLine();
-            if (line.equals("false")) {
+            if (line.split(",")[0].equals("false")) {
                 while ((line = reader.readLine()) != null) {
                     String[] parts = line.split(",");
                     String min = parts[0];
@@ -92,6 +93,20 @@ public class ZoneMetadata implements Serializable {
         return zoneMetadataList;
     }
 
+    /**
+     * Rows per zone, recorded after the numeric flag in the first line of a column's zone map
+     */
+    public static int readZoneRows(String columnName, String dataDirectory) throws IOException {
+        Path zoneMetadataFilePath = Paths.get(dataDirectory, columnName + "_zone_map.txt");
+        try (BufferedReader reader = Files.newBufferedReader(zoneMetadataFilePath)) {
+            String[] header = reader.readLine().split(",");
+            if (header.length < 2) {
+                throw new IOException("Zone map " + zoneMetadataFilePath + " does not record its zone size; generate the zone maps again");
+            }
+            return Integer.parseInt(header[1]);
+        }
+    }
+
     public static List<Integer> getRelevantZoneIndexes(List<ZoneMetadata> zones, String value) {
         List<Integer> relevantIndexes = new ArrayList<>();
 
@@ -108,7 +123,7 @@ public class ZoneMetadata implements Serializable {
                     relevantIndexes.add(i); // Add index of relevant zone
                 }                
             }
-            else if (zone.getMinValue() instanceof Double && zone.getMaxValue() instanceof Double && isDouble(value)) {
+            else if (zone.getMinValue() instanceof Double && zone.getMaxValue() instanceof Double && ColumnType.isNumericText(value)) {
                 Double min = (Double) zone.getMinValue();
                 Double max = (Double) zone.getMaxValue();
                 Double doubleValue = Double.parseDouble(value);
@@ -122,16 +137,6 @@ public class ZoneMetadata implements Serializable {
         return relevantIndexes;
     }
 
-    // Utility method to check if a string is a valid Double
-    private static boolean isDouble(String s) {
-        try {
-            Double.parseDouble(s);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
-    }
-
     public static List<Integer> getIntersection(List<List<Integer>> lists) {
         if (lists == null || lists.size() == 0) {
             return new ArrayList<>();
@@ -151,7 +156,11 @@ public class ZoneMetadata implements Serializable {
         return new ArrayList<>(intersection);
     }
 
-    public static Map<String, List<Integer>> getDataFromRelevantZones(String yearMonth, String town, String dataDirectory) throws IOException {        
+    /**
+     * Rows of a normal store matching the month, town and floor area, testing only the rows of
+     * zones whose zone maps allow a match
+     */
+    public static SelectionVector getRowsFromRelevantZones(String yearMonth, String town, String dataDirectory) throws IOException {        
         // Calculate the next month for the range (manually, without using YearMonth)
         String nextMonthStr = CompressionTestMain.getNextMonthStr(yearMonth);
 
@@ -171,8 +180,10 @@ public class ZoneMetadata implements Serializable {
         List<Integer> filteredZones = getIntersection(allRelevantZones);
         Collections.sort(filteredZones);
 
-        List<String> columns = Arrays.asList("month", "town", "floor_area_sqm");
+        List<String> columns = Arrays.asList("month", "town");
         Map<String, List<String>> relevantData = new HashMap<>();
+        // Row count of each filtered zone, taken from the month column
+        List<Integer> zoneRowCounts = new ArrayList<>();
 
         for (String columnName : columns) {
             // Iterate through the zones and read the relevant data from the file
@@ -201,81 +212,65 @@ public class ZoneMetadata implements Serializable {
                     for (String row : rows) {
                         relevantColumnData.add(row.trim());
                     }
+                    if (columnName.equals("month")) {
+                        zoneRowCounts.add(rows.length);
+                    }
                 }
             }
         }
 
+        // floor_area_sqm is read from its binary column by absolute row, without parsing
+        MappedNumericColumn floorAreaSqm = new MappedNumericColumn(TableSchema.binaryColumnPath(dataDirectory, "floor_area_sqm"),
+                TableSchema.load(dataDirectory).getType("floor_area_sqm"));
+        int zoneCount = yearMonthZones.size();
+        int[] zoneStartRows = new int[filteredZones.size()];
+        for (int z = 0; z < filteredZones.size(); z++) {
+            // Every zone but the last holds the same number of rows, so the last one ends the column
+            int zoneIndex = filteredZones.get(z);
+            zoneStartRows[z] = zoneIndex == zoneCount - 1
+                    ? floorAreaSqm.size() - zoneRowCounts.get(z)
+                    : zoneIndex * zoneRowCounts.get(z);
+        }
+
         List<String> monthRelevantData = relevantData.get("month");
         List<String> townRelevantData = relevantData.get("town");
-        List<String> floor_area_sqmRelevantData = relevantData.get("floor_area_sqm");
-        List<Integer> filteredIndices = new ArrayList<>();
+        IntColumnVector matchingRows = new IntColumnVector();
+        int zone = 0;
+        int zoneEnd = zoneRowCounts.isEmpty() ? 0 : zoneRowCounts.get(0);
         for (int i=0; i<monthRelevantData.size(); i++) {
+            while (i >= zoneEnd) {
+                zone++;
+                zoneEnd += zoneRowCounts.get(zone);
+            }
+            int row = zoneStartRows[zone] + i - (zoneEnd - zoneRowCounts.get(zone));
             if (monthRelevantData.get(i).equals(yearMonth) || monthRelevantData.get(i).equals(nextMonthStr)) {
                 if (townRelevantData.get(i).equals(town)) {
-                    if (Double.parseDouble(floor_area_sqmRelevantData.get(i)) >= 80) {
-                        filteredIndices.add(i);
+                    if (floorAreaSqm.getDouble(row) >= 80) {
+                        matchingRows.add(row);
                     }
                 }
             }
             // break;
         }
 
-        System.out.println("Found " + filteredIndices.size() + " matching transactions");
-
-        Map<String, List<Integer>> result = new HashMap<>();
-        result.put("zones", filteredZones);
-        result.put("indices", filteredIndices);
-        return result;
+        System.out.println("Found " + matchingRows.size() + " matching transactions");
+        return SelectionVector.fromRows(matchingRows, floorAreaSqm.size());
     }
 
-    public static List<Double> readDoubleColumnDataInZones(String columnName, List<Integer> filteredZones, List<Integer> indices, String dataDirectory) throws IOException {
-        List<String> tempValues = new ArrayList<>();
-        List<Double> finalValues = new ArrayList<>();
-
-        // Iterate through the zones and read the relevant data from the file
-        List<ZoneMetadata> columnZones = ZoneMetadata.readZoneMetadata(columnName, dataDirectory);
-        Path columnFilePath = Paths.get(dataDirectory, columnName + ".col");
-
-        try (RandomAccessFile file = new RandomAccessFile(columnFilePath.toFile(), "r")) {
-            for (Integer zoneIndex : filteredZones) {
-                ZoneMetadata zoneMetadata = columnZones.get(zoneIndex);
-
-                // We know the byte positions of the zone, so let's seek to the start byte position
-                file.seek(zoneMetadata.getStartByte());
-
-                // Read data from the zone (between start and end byte positions)
-                long bytesToRead = zoneMetadata.getEndByte() - zoneMetadata.getStartByte();
-                byte[] dataBuffer = new byte[(int) bytesToRead];
-                file.readFully(dataBuffer);
-
-                // Convert the byte data to a string
-                String columnData = new String(dataBuffer);
-
-                // Split the data by line and filter by condition
-                String[] rows = columnData.split("\n");
-                for (String row : rows) {
-                    tempValues.add(row.trim());
-                }
-            }
-        }
-
-        for (Integer index: indices) {
-            finalValues.add(Double.parseDouble(tempValues.get(index)));
-        }
-
-        return finalValues;
-    }
-
-    public static Map<String, List<Integer>> getCompressedZonesIndicesFromRelevantZones(int yearMonthIndex, int nextMonthIndex, int townIndex, int floor_area_sqmIndex, String dataDirectory) throws IOException {        
+    /**
+     * Rows of a compressed store matching the month, town and floor area codes, testing only
+     * the rows of zones whose zone maps allow a match
+     */
+    public static SelectionVector getCompressedZonesIndicesFromRelevantZones(int yearMonthIndex, int nextMonthIndex, int townIndex, int floor_area_sqmIndex, CompressedColumnStore store) throws IOException {        
         // Calculate the next month for the range (manually, without using YearMonth)
 
-        List<ZoneMetadata> yearMonthZones = readZoneMetadata("month", dataDirectory);
+        List<ZoneMetadata> yearMonthZones = store.getZoneMaps("month");
         Set<Integer> unionSet = new HashSet<>();
         unionSet.addAll(getRelevantZoneIndexes(yearMonthZones, String.valueOf(yearMonthIndex)));
         unionSet.addAll(getRelevantZoneIndexes(yearMonthZones, String.valueOf(nextMonthIndex)));
         List<Integer> yearMonthRelevantZones = new ArrayList<>(unionSet);
 
-        List<ZoneMetadata> townZones = readZoneMetadata("town", dataDirectory);
+        List<ZoneMetadata> townZones = store.getZoneMaps("town");
         List<Integer> townRelevantZones = getRelevantZoneIndexes(townZones, String.valueOf(townIndex));
 
         List<List<Integer>> allRelevantZones = new ArrayList<>();
@@ -285,85 +280,68 @@ public class ZoneMetadata implements Serializable {
         List<Integer> filteredZones = getIntersection(allRelevantZones);
         Collections.sort(filteredZones);
 
-        List<String> columns = Arrays.asList("month", "town", "floor_area_sqm");
-        Map<String, List<Integer>> relevantData = new HashMap<>();
-
-        for (String columnName : columns) {
-            // Iterate through the zones and read the relevant data from the file
-            List<ZoneMetadata> columnZones = readZoneMetadata(columnName, dataDirectory);
-            Path columnFilePath = Paths.get(dataDirectory, columnName + ".cmp");
-            List<Integer> relevantColumnData = new ArrayList<>();
-
-            try (RandomAccessFile file = new RandomAccessFile(columnFilePath.toFile(), "r")) {
-                int bitsPerValue = file.readInt();
-                int expectedCount = file.readInt();
-                for (Integer zoneIndex : filteredZones) {
-                    ZoneMetadata zoneMetadata = columnZones.get(zoneIndex);
-
-                    // We know the byte positions of the zone, so let's seek to the start byte position
-                    file.seek(zoneMetadata.getStartByte());
-
-                    // Read data from the zone (between start and end byte positions)
-                    long bytesToRead = zoneMetadata.getEndByte() - zoneMetadata.getStartByte();
-                    byte[] dataBuffer = new byte[(int) bytesToRead];
-                    file.readFully(dataBuffer);
-
-                    List<Integer> compressedData = CompressedColumnStore.readCompressedData(dataBuffer, bitsPerValue, expectedCount);
-
-                    relevantColumnData.addAll(compressedData);
+        List<ZoneMetadata> floor_area_sqmZones = store.getZoneMaps("floor_area_sqm");
+        ByteBuffer monthData = store.getColumnBuffer("month");
+        ByteBuffer townData = store.getColumnBuffer("town");
+        ByteBuffer floor_area_sqmData = store.getColumnBuffer("floor_area_sqm");
+        IntRangeDecoder monthDecoder = zoneDecoder(monthData, store.getColumnEncoding("month"));
+        IntRangeDecoder townDecoder = zoneDecoder(townData, store.getColumnEncoding("town"));
+        IntRangeDecoder floor_area_sqmDecoder = zoneDecoder(floor_area_sqmData, store.getColumnEncoding("floor_area_sqm"));
+
+        // Test one zone of the three columns at a time, keeping the global row ids that match
+        IntColumnVector matchingRows = new IntColumnVector();
+        for (int zoneIndex : filteredZones) {
+            int firstRow = zoneIndex * CompressedColumnStore.ZONE_SIZE;
+            int[] monthCodes = readZoneCodes(monthData, monthDecoder, yearMonthZones.get(zoneIndex), zoneIndex, CompressedColumnStore.ZONE_SIZE);
+            int[] townCodes = readZoneCodes(townData, townDecoder, townZones.get(zoneIndex), zoneIndex, CompressedColumnStore.ZONE_SIZE);
+            int[] floor_area_sqmCodes = readZoneCodes(floor_area_sqmData, floor_area_sqmDecoder, floor_area_sqmZones.get(zoneIndex), zoneIndex, CompressedColumnStore.ZONE_SIZE);
+            for (int i = 0; i < monthCodes.length; i++) {
+                int monthCode = monthCodes[i];
+                if ((monthCode == yearMonthIndex || monthCode == nextMonthIndex)
+                        && townCodes[i] == townIndex
+                        && floor_area_sqmCodes[i] >= floor_area_sqmIndex) {
+                    matchingRows.add(firstRow + i);
                 }
             }
-            relevantData.put(columnName, relevantColumnData);
         }
 
-        List<Integer> monthRelevantData = relevantData.get("month");
-        List<Integer> townRelevantData = relevantData.get("town");
-        List<Integer> floor_area_sqmRelevantData = relevantData.get("floor_area_sqm");
-        List<Integer> filteredIndices = new ArrayList<>();
-        for (int i=0; i<monthRelevantData.size(); i++) {
-            if (monthRelevantData.get(i).equals(yearMonthIndex) || monthRelevantData.get(i).equals(nextMonthIndex)) {
-                if (townRelevantData.get(i).equals(townIndex)) {
-                    if (floor_area_sqmRelevantData.get(i) >= floor_area_sqmIndex) {
-                        filteredIndices.add(i);
-                    }
-                }
-            }
-            // break;
-        }
-
-        System.out.println("Found " + filteredIndices.size() + " matching transactions");
-
-        Map<String, List<Integer>> result = new HashMap<>();
-        result.put("zones", filteredZones);
-        result.put("indices", filteredIndices);
-        return result;
+        System.out.println("Found " + matchingRows.size() + " matching transactions");
+        return SelectionVector.fromRows(matchingRows, store.openDictionary("month").getRecordCount());
     }
 
-    public static List<Integer> readFilteredCompressedZones(Path columnCmpPath, List<ZoneMetadata> columnZones, List<Integer> filteredZones, List<Integer> indices, int valuesPerZone) throws IOException {
-        List<Integer> relevantZonesColumnData = new ArrayList<>();
-
-        try (RandomAccessFile file = new RandomAccessFile(columnCmpPath.toFile(), "r")) {
-            int bitsPerValue = file.readInt();
-            for (Integer zoneIndex : filteredZones) {
-                ZoneMetadata zoneMetadata = columnZones.get(zoneIndex);
-
-                long bytesToRead = zoneMetadata.getEndByte() - zoneMetadata.getStartByte();
-                file.seek(zoneMetadata.getStartByte());
-
-                byte[] dataBuffer = new byte[(int) bytesToRead];
-                file.readFully(dataBuffer);
-
-                // Decompress the buffer to get actual values
-                List<Integer> values = CompressedColumnStore.readCompressedData(dataBuffer, bitsPerValue, valuesPerZone);
+    /**
+     * Codes of a range of rows, for the code layouts that can decode any range directly
+     */
+    private interface IntRangeDecoder {
+        int[] decode(int from, int to);
+    }
 
-                relevantZonesColumnData.addAll(values); // optionally filter values based on your predicate here
-            }
-        }
-        List<Integer> relevantColumnData = new ArrayList<>();
-        for (int index : indices) {
-            relevantColumnData.add(relevantZonesColumnData.get(index));
+    /**
+     * Range decoder of a run-length or word-packed column, or null for a bit-packed one,
+     * whose zones are unpacked from their bytes
+     */
+    private static IntRangeDecoder zoneDecoder(ByteBuffer columnData, ColumnEncoding encoding) throws IOException {
+        switch (encoding) {
+            case RUN_LENGTH:
+                return RunLengthColumn.read(columnData)::decode;
+            case WORD_PACKED:
+                return new WordPackedColumn(columnData)::decode;
+            default:
+                return null;
         }
+    }
 
-        return relevantColumnData;
+    /**
+     * Codes of exactly the rows in one zone of a compressed column, taken from its runs or
+     * its word-aligned block when the layout allows, and unpacked from the zone's bytes otherwise
+     */
+    private static int[] readZoneCodes(ByteBuffer columnData, IntRangeDecoder decoder, ZoneMetadata zone, int zoneIndex, int valuesPerZone) {
+        int from = zoneIndex * valuesPerZone;
+        int to = Math.min(from + valuesPerZone, columnData.getInt(4));
+        if (decoder == null) {
+            // Zones start on a byte boundary, so they unpack in place from the mapped data
+            return BitUnpacker.unpack(columnData, (int) zone.getStartByte(), columnData.getInt(0), to - from);
+        }
+        return decoder.decode(from, to);
     }
 }
@@ -0,0 +1,121 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import jdk.incubator.vector.*;
+
+/**
+ * BitUnpacker kernel on the incubating Vector API. Kept out of the main source directory so
+ * `javac *.java` builds without the incubator module; build it next to the other classes with
+ *
+ *   javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorBitUnpacker.java
+ *
+ * and run with --add-modules jdk.incubator.vector for BitUnpacker to pick it up.
+ *
+ * The packed bytes are read as big-endian 64-bit words. A code of w bits at bit b sits in word
+ * b / 64 at shift b % 64, spilling into the next word when shift + w > 64. The positions repeat
+ * every 64 codes (w words), so the word indexes and shifts of one cycle are computed once per
+ * width. A group of lanes loads the words its codes fall in as one contiguous vector, shuffles
+ * each lane's word and spill word into place, and shifts and merges them in registers. (Index
+ * gathers would be simpler, but crash C2 on-stack replacement on JDK 17.)
+ */
+public class VectorBitUnpacker implements BitUnpacker.Kernel {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    // Same lane count as LONGS, so a vector of codes narrows straight into ints
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+    private static final int CYCLE = 64;
+
+    private final Cycle[] cycles = new Cycle[BitUnpacker.MAX_BITS + 1];
+
+    /**
+     * Per group of lanes in one cycle at one width: the first word its codes fall in, the
+     * shuffles picking each lane's word and spill word from the words loaded from there,
+     * and each code's shift and spill shift
+     */
+    private static class Cycle {
+        final int[] groupWords = new int[CYCLE / LONGS.length()];
+        final VectorShuffle<Long>[] wordShuffles;
+        final VectorShuffle<Long>[] nextShuffles;
+        final long[] shifts = new long[CYCLE];
+        final long[] spillShifts = new long[CYCLE];
+
+        Cycle(int bitsPerValue) {
+            int lanes = LONGS.length();
+            wordShuffles = newShuffles(groupWords.length);
+            nextShuffles = newShuffles(groupWords.length);
+            for (int group = 0; group < groupWords.length; group++) {
+                groupWords[group] = group * lanes * bitsPerValue >>> 6;
+                int[] word = new int[lanes];
+                int[] next = new int[lanes];
+                for (int lane = 0; lane < lanes; lane++) {
+                    word[lane] = ((group * lanes + lane) * bitsPerValue >>> 6) - groupWords[group];
+                    next[lane] = word[lane] + 1;
+                }
+                wordShuffles[group] = VectorShuffle.fromArray(LONGS, word, 0);
+                nextShuffles[group] = VectorShuffle.fromArray(LONGS, next, 0);
+            }
+            for (int i = 0; i < CYCLE; i++) {
+                int bit = i * bitsPerValue;
+                shifts[i] = bit & 63;
+                // (next >>> 1) >>> (127 - shift - w) is next >>> (128 - shift - w) when the code
+                // spills; when it does not, a shift of 63 clears it, as shift counts wrap at 64
+                spillShifts[i] = Math.min(63, 127 - shifts[i] - bitsPerValue);
+            }
+        }
+
+        // Arrays of a generic type can only be created unparameterized
+        @SuppressWarnings("unchecked")
+        private static VectorShuffle<Long>[] newShuffles(int length) {
+            return (VectorShuffle<Long>[]) new VectorShuffle<?>[length];
+        }
+    }
+
+    public VectorBitUnpacker() {
+        // With 4 or more lanes the words of a group's codes, spill words included, fit in one vector
+        if (LONGS.length() < 4 || CYCLE % LONGS.length() != 0) {
+            throw new UnsupportedOperationException("No usable vector shape: " + LONGS);
+        }
+        for (int bits = 1; bits <= BitUnpacker.MAX_BITS; bits++) {
+            cycles[bits] = new Cycle(bits);
+        }
+    }
+
+    @Override
+    public void unpack(ByteBuffer data, int byteOffset, int bitsPerValue, int[] codes, int count) {
+        int fullCycles = bitsPerValue == 0 ? 0 : count / CYCLE;
+        if (fullCycles == 0) {
+            BitUnpacker.unpackScalar(data, byteOffset, bitsPerValue, codes, count);
+            return;
+        }
+
+        // A cycle of 64 codes is exactly bitsPerValue words; a vector of zero words after them
+        // lets the last group load its words without a bounds check
+        int wordCount = fullCycles * bitsPerValue;
+        long[] words = new long[wordCount + LONGS.length()];
+        ByteBuffer source = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        source.position(byteOffset);
+        source.limit(byteOffset + wordCount * Long.BYTES);
+        source.asLongBuffer().get(words, 0, wordCount);
+
+        Cycle cycle = cycles[bitsPerValue];
+        LongVector rightShift = LongVector.broadcast(LONGS, CYCLE - bitsPerValue);
+        int lanes = LONGS.length();
+        for (int c = 0; c < fullCycles; c++) {
+            int firstWord = c * bitsPerValue;
+            int firstCode = c * CYCLE;
+            for (int group = 0, i = 0; i < CYCLE; group++, i += lanes) {
+                LongVector loaded = LongVector.fromArray(LONGS, words, firstWord + cycle.groupWords[group]);
+                LongVector word = loaded.rearrange(cycle.wordShuffles[group]);
+                LongVector next = loaded.rearrange(cycle.nextShuffles[group]);
+                LongVector shift = LongVector.fromArray(LONGS, cycle.shifts, i);
+                LongVector spillShift = LongVector.fromArray(LONGS, cycle.spillShifts, i);
+                LongVector code = word.lanewise(VectorOperators.LSHL, shift)
+                        .lanewise(VectorOperators.LSHR, rightShift)
+                        .or(next.lanewise(VectorOperators.LSHR, 1).lanewise(VectorOperators.LSHR, spillShift));
+                ((IntVector) code.convertShape(VectorOperators.L2I, INTS, 0)).intoArray(codes, firstCode + i);
+            }
+        }
+
+        // The codes after the last whole cycle start on a byte boundary: 64 codes are 8 * w bytes
+        int done = fullCycles * CYCLE;
+        BitUnpacker.unpackScalar(data, byteOffset + wordCount * Long.BYTES, bitsPerValue, codes, done, count - done);
+    }
+}